@@ -0,0 +1,41 @@
+package org.smart4j.benchmarks;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 发布前执行的基准测试
+ *      同时输出吞吐量(ops/us)、延迟分布(SampleTime的p50/p99/p999)和每次操作的分配量(gc.alloc.rate.norm),
+ *      结果写入target/jmh-result.json,便于与上一版本对比
+ *
+ *      java -cp target/benchmarks.jar org.smart4j.benchmarks.BenchmarkRunner [基准类名正则...]
+ */
+public final class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .mode(Mode.Throughput)
+                .mode(Mode.SampleTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-result.json");
+        if (args.length == 0) {
+            builder.include(DatabaseHelperBenchmark.class.getSimpleName())
+                    .include(SqlTemplateBenchmark.class.getSimpleName())
+                    .include(CastUtilBenchmark.class.getSimpleName());
+        } else {
+            for (String include : args) {
+                builder.include(include);
+            }
+        }
+        new Runner(builder.build()).run();
+    }
+}
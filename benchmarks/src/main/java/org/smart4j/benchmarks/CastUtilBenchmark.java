@@ -0,0 +1,90 @@
+package org.smart4j.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smart4j.chapter2.util.CastUtil;
+import org.smart4j.chapter2.util.StringUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 类型转换:原先的 String.valueOf + parseXxx + 异常(legacy) vs TypeConverter(CastUtil)
+ *      input: 合法字符串、非法字符串、Integer对象
+ *
+ *      java -jar target/benchmarks.jar CastUtilBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CastUtilBenchmark {
+
+    @Param({"valid", "invalid", "number"})
+    private String input;
+
+    private Object longValue;
+    private Object doubleValue;
+
+    @Setup
+    public void setup() {
+        if ("valid".equals(input)) {
+            longValue = "1234567";
+            doubleValue = "1234.567";
+        } else if ("invalid".equals(input)) {
+            longValue = "12ab";
+            doubleValue = "abc";
+        } else {
+            longValue = Integer.valueOf(1234567);
+            doubleValue = Long.valueOf(1234567);
+        }
+    }
+
+    @Benchmark
+    public long legacyLong() {
+        long longValue = 0;
+        String strValue = CastUtil.castString(this.longValue);
+        if (StringUtil.isNotEmpty(strValue)) {
+            try {
+                longValue = Long.parseLong(strValue);
+            } catch (NumberFormatException e) {
+                longValue = 0;
+            }
+        }
+        return longValue;
+    }
+
+    @Benchmark
+    public long castLong() {
+        return CastUtil.castLong(longValue);
+    }
+
+    @Benchmark
+    public double legacyDouble() {
+        double doubleValue = 0;
+        String strValue = CastUtil.castString(this.doubleValue);
+        if (StringUtil.isNotEmpty(strValue)) {
+            try {
+                doubleValue = Double.parseDouble(strValue);
+            } catch (NumberFormatException e) {
+                doubleValue = 0;
+            }
+        }
+        return doubleValue;
+    }
+
+    @Benchmark
+    public double castDouble() {
+        return CastUtil.castDouble(doubleValue);
+    }
+}
@@ -0,0 +1,124 @@
+package org.smart4j.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.model.Customer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DatabaseHelper数据访问基准测试(H2内存数据库,MySQL兼容模式)
+ *
+ *      java -jar target/benchmarks.jar DatabaseHelperBenchmark -prof gc
+ *      java -cp target/benchmarks.jar org.smart4j.benchmarks.BenchmarkRunner DatabaseHelperBenchmark
+ *
+ *      每个基准线程持有自己的Connection(与请求内多次访问数据库的情况一致),不包含连接池借还的开销
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseHelperBenchmark {
+
+    private static final String SELECT_BY_ID = "SELECT * FROM customer WHERE id = ?";
+
+    private static final String SELECT_PAGE = "SELECT * FROM customer WHERE id > ? ORDER BY id LIMIT ?";
+
+    /**
+     * 数据表(每个Fork初始化一次)
+     */
+    @State(Scope.Benchmark)
+    public static class Table {
+
+        @Param({"10000"})
+        public int rows;
+
+        @Param({"20"})
+        public int pageSize;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            DatabaseHelper.executeSqlFile("sql/benchmark_schema.sql");
+            List<Map<String, Object>> fieldMapList = new ArrayList<Map<String, Object>>(rows);
+            for (int i = 1; i <= rows; i++) {
+                fieldMapList.add(newFieldMap(i));
+            }
+            DatabaseHelper.insertEntities(Customer.class, fieldMapList);
+            DatabaseHelper.closeConnection();
+        }
+
+        long randomId() {
+            return ThreadLocalRandom.current().nextLong(1, rows + 1);
+        }
+    }
+
+    /**
+     * 基准线程的Connection
+     */
+    @State(Scope.Thread)
+    public static class Session {
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            DatabaseHelper.closeConnection();
+        }
+    }
+
+    static Map<String, Object> newFieldMap(long i) {
+        Map<String, Object> fieldMap = new LinkedHashMap<String, Object>();
+        fieldMap.put("name", "customer" + i);
+        fieldMap.put("contact", "contact" + i);
+        fieldMap.put("telephone", "136" + (10000000 + i));
+        fieldMap.put("email", "customer" + i + "@example.com");
+        fieldMap.put("remark", null);
+        return fieldMap;
+    }
+
+    @Benchmark
+    public Customer queryEntity(Table table, Session session) {
+        return DatabaseHelper.queryEntity(Customer.class, SELECT_BY_ID, table.randomId());
+    }
+
+    @Benchmark
+    public List<Customer> queryEntityList(Table table, Session session) {
+        long afterId = Math.max(0, table.randomId() - table.pageSize);
+        return DatabaseHelper.queryEntityList(Customer.class, SELECT_PAGE, afterId, table.pageSize);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> executeQuery(Table table, Session session) {
+        long afterId = Math.max(0, table.randomId() - table.pageSize);
+        return DatabaseHelper.executeQuery(SELECT_PAGE, afterId, table.pageSize);
+    }
+
+    @Benchmark
+    public boolean insertEntity(Table table, Session session) {
+        return DatabaseHelper.insertEntity(Customer.class, newFieldMap(ThreadLocalRandom.current().nextLong()));
+    }
+
+    @Benchmark
+    public boolean updateEntity(Table table, Session session) {
+        Map<String, Object> fieldMap = new LinkedHashMap<String, Object>();
+        fieldMap.put("contact", "updated");
+        fieldMap.put("remark", "updated by benchmark");
+        return DatabaseHelper.updateEntity(Customer.class, table.randomId(), fieldMap);
+    }
+}
@@ -0,0 +1,89 @@
+package org.smart4j.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.smart4j.chapter2.helper.SqlTemplateHelper;
+import org.smart4j.chapter2.model.Customer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * INSERT/UPDATE语句生成:逐次拼装(legacy) vs SqlTemplateHelper缓存模板(cached)
+ *
+ *      java -jar target/benchmarks.jar SqlTemplateBenchmark -prof gc
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlTemplateBenchmark {
+
+    private Map<String, Object> fieldMap;
+
+    @Setup
+    public void setup() {
+        fieldMap = new LinkedHashMap<String, Object>();
+        fieldMap.put("name", "customer1");
+        fieldMap.put("contact", "Brave");
+        fieldMap.put("telephone", "13600000000");
+        fieldMap.put("email", "Brave@126.com");
+    }
+
+    @Benchmark
+    public void legacyInsert(Blackhole bh) {
+        String sql = "insert into " + Customer.class.getSimpleName();
+        StringBuilder columns = new StringBuilder("(");
+        StringBuilder values = new StringBuilder("(");
+        for (String fieldName : fieldMap.keySet()) {
+            columns.append(fieldName).append(", ");
+            values.append("?, ");
+        }
+        columns.replace(columns.lastIndexOf(", "), columns.length(), ")");
+        values.replace(values.lastIndexOf(", "), values.length(), ")");
+        sql += columns + " VALUES " + values;
+        bh.consume(sql);
+        bh.consume(fieldMap.values().toArray());
+    }
+
+    @Benchmark
+    public void cachedInsert(Blackhole bh) {
+        bh.consume(SqlTemplateHelper.getInsertSql(Customer.class, fieldMap.keySet()));
+        bh.consume(SqlTemplateHelper.getInsertParams(fieldMap));
+    }
+
+    @Benchmark
+    public void legacyUpdate(Blackhole bh) {
+        String sql = "UPDATE " + Customer.class.getSimpleName() + " SET ";
+        StringBuilder columns = new StringBuilder();
+        for (String fieldName : fieldMap.keySet()) {
+            columns.append(fieldName).append(" = ?, ");
+        }
+        sql += columns.substring(0, columns.lastIndexOf(", ")) + " WHERE id = ?";
+        List<Object> paramList = new ArrayList<Object>();
+        paramList.addAll(fieldMap.values());
+        paramList.add(1L);
+        bh.consume(sql);
+        bh.consume(paramList.toArray());
+    }
+
+    @Benchmark
+    public void cachedUpdate(Blackhole bh) {
+        bh.consume(SqlTemplateHelper.getUpdateSql(Customer.class, fieldMap.keySet()));
+        bh.consume(SqlTemplateHelper.getUpdateParams(1L, fieldMap));
+    }
+}
@@ -0,0 +1,12 @@
+-- 基准测试数据表(H2 MySQL兼容模式)
+DROP TABLE IF EXISTS customer;
+CREATE TABLE customer (
+  id BIGINT NOT NULL AUTO_INCREMENT,
+  name VARCHAR(255) DEFAULT NULL,
+  contact VARCHAR(255) DEFAULT NULL,
+  telephone VARCHAR(255) DEFAULT NULL,
+  email VARCHAR(255) DEFAULT NULL,
+  remark TEXT,
+  version BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (id)
+);
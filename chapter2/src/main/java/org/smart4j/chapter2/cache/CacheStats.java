@@ -0,0 +1,75 @@
+package org.smart4j.chapter2.cache;
+
+/**
+ * 缓存统计快照
+ */
+public final class CacheStats {
+
+    private final String name;
+    private final long hits;            // 命中次数
+    private final long misses;          // 未命中次数(含过期)
+    private final long evictions;       // 超出容量被淘汰的条目数
+    private final long expirations;     // 过期被移除的条目数
+    private final long invalidations;   // 写入导致失效的次数
+    private final int size;             // 当前条目数
+    private final int maxSize;          // 容量上限
+
+    public CacheStats(String name, long hits, long misses, long evictions, long expirations,
+                      long invalidations, int size, int maxSize) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.invalidations = invalidations;
+        this.size = size;
+        this.maxSize = maxSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 命中率
+     */
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{name=" + name + ", hits=" + hits + ", misses=" + misses
+                + ", evictions=" + evictions + ", expirations=" + expirations
+                + ", invalidations=" + invalidations + ", size=" + size + ", maxSize=" + maxSize + "}";
+    }
+}
@@ -0,0 +1,272 @@
+package org.smart4j.chapter2.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界LRU缓存
+ *      按key的hash分段加锁,每段是一个按访问顺序排列的LinkedHashMap,超出容量时淘汰最久未访问的条目;
+ *      条目超过ttl后视为未命中并移除;容量和ttl可在运行时调整(分段数在创建时确定)
+ *
+ *      读穿透时使用stamp(key)避免把失效前读到的旧值写回缓存:
+ *
+ *      long stamp = cache.stamp(key);
+ *      V value = load(key);
+ *      cache.put(key, value, stamp);   // 期间该key(或同一条带的key)失效过或缓存被清空则放弃写入
+ *
+ *      失效戳按key的hash分为STAMP_STRIPES个条带,其他key的失效不影响本次写入
+ */
+public class LruCache<K, V> {
+
+    // 失效戳条带数(2的幂)
+    private static final int STAMP_STRIPES = 256;
+
+    private final String name;
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+    private volatile int maxSize;
+    private volatile long ttlNanos;
+
+    // 按key的hash分条带的失效计数,以及清空次数,用于判断读穿透期间是否发生过写入
+    private final AtomicLongArray stripeInvalidations = new AtomicLongArray(STAMP_STRIPES);
+    private final AtomicLong clearCount = new AtomicLong();
+
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    /**
+     * @param maxSize    最大条目数
+     * @param ttlSeconds 过期时间(秒),小于等于0表示不过期
+     */
+    public LruCache(String name, int maxSize, long ttlSeconds) {
+        this.name = name;
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlNanos = ttlSeconds > 0 ? TimeUnit.SECONDS.toNanos(ttlSeconds) : 0;
+        // 容量较小时不分段,保证LRU顺序准确
+        int segmentCount = this.maxSize >= 1024 ? 16 : 1;
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] segments = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        this.segments = segments;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<K, V>(this, segmentCapacity(this.maxSize, segmentCount));
+        }
+        this.segmentMask = segmentCount - 1;
+    }
+
+    /**
+     * 获取缓存(未命中或已过期时返回null)
+     */
+    public V get(K key) {
+        V value = segmentFor(key).get(key, System.nanoTime());
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * key当前的失效戳,读穿透前获取
+     */
+    public long stamp(K key) {
+        // 两个计数都只增不减,和不变说明期间没有失效
+        return stripeInvalidations.get(stripeFor(key)) + clearCount.get();
+    }
+
+    /**
+     * 放入缓存
+     */
+    public void put(K key, V value) {
+        if (value != null) {
+            segmentFor(key).put(key, value, expireAt());
+        }
+    }
+
+    /**
+     * 放入缓存(自stamp以来发生过失效则放弃)
+     */
+    public void put(K key, V value, long stamp) {
+        if (value != null) {
+            segmentFor(key).putIfStamp(key, value, expireAt(), stamp);
+        }
+    }
+
+    /**
+     * 使缓存失效
+     */
+    public void remove(K key) {
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        // 先递增再清空:之后的putIfStamp都会放弃写入
+        clearCount.incrementAndGet();
+        invalidations.increment();
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * 调整容量,缩小时立即淘汰超出的最久未访问条目
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+        int capacity = segmentCapacity(this.maxSize, segments.length);
+        for (Segment<K, V> segment : segments) {
+            segment.setCapacity(capacity);
+        }
+    }
+
+    /**
+     * 调整过期时间(秒),小于等于0表示不过期;只影响之后放入的条目
+     */
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlNanos = ttlSeconds > 0 ? TimeUnit.SECONDS.toNanos(ttlSeconds) : 0;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 获取统计快照
+     */
+    public CacheStats getStats() {
+        return new CacheStats(name, hits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+                invalidations.sum(), size(), maxSize);
+    }
+
+    private long expireAt() {
+        long ttlNanos = this.ttlNanos;
+        return ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0;
+    }
+
+    private static int segmentCapacity(int maxSize, int segmentCount) {
+        return (maxSize + segmentCount - 1) / segmentCount;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        return segments[hash(key) & segmentMask];
+    }
+
+    private static int stripeFor(Object key) {
+        return hash(key) & (STAMP_STRIPES - 1);
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class Entry<V> {
+
+        private final V value;
+        private final long expireAt;
+
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 缓存分段
+     */
+    private static final class Segment<K, V> {
+
+        private final LruCache<K, V> cache;
+        private final LinkedHashMap<K, Entry<V>> map;
+
+        // 只在持有段锁时读写
+        private int capacity;
+
+        private Segment(final LruCache<K, V> cache, int capacity) {
+            this.cache = cache;
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > Segment.this.capacity) {
+                        cache.evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        private synchronized V get(K key, long now) {
+            Entry<V> entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            // System.nanoTime()可能溢出,用差值比较;expireAt为0表示放入时不过期
+            if (entry.expireAt != 0 && entry.expireAt - now < 0) {
+                map.remove(key);
+                cache.expirations.increment();
+                return null;
+            }
+            return entry.value;
+        }
+
+        private synchronized void put(K key, V value, long expireAt) {
+            map.put(key, new Entry<V>(value, expireAt));
+        }
+
+        private synchronized void putIfStamp(K key, V value, long expireAt, long stamp) {
+            // 同一key的失效计数在持有段锁时递增,这里检查后写入不会与该key的失效交错
+            if (cache.stamp(key) == stamp) {
+                map.put(key, new Entry<V>(value, expireAt));
+            }
+        }
+
+        private synchronized void remove(K key) {
+            cache.stripeInvalidations.incrementAndGet(stripeFor(key));
+            cache.invalidations.increment();
+            map.remove(key);
+        }
+
+        private synchronized void clear() {
+            map.clear();
+        }
+
+        private synchronized void setCapacity(int capacity) {
+            this.capacity = capacity;
+            // 按访问顺序从最久未访问的条目开始淘汰
+            Iterator<K> iterator = map.keySet().iterator();
+            while (map.size() > capacity && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+                cache.evictions.increment();
+            }
+        }
+
+        private synchronized int size() {
+            return map.size();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.smart4j.chapter2.cache;
+
+import org.smart4j.chapter2.util.SqlUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询结果缓存
+ *      以"规范化SQL + 结果类型 + 绑定参数"为key,每个条目记录所读取的表及查询前各表的写入代数;
+ *      写入某张表时只递增该表的代数,读取时代数不一致的条目视为失效并移除,其他表的条目不受影响
+ *
+ *      无法识别表名的写入语句会使全部条目失效;无法识别表名的查询语句及加锁读取不缓存
+ */
+public final class QueryCache {
+
+    // 最多记录的不同SQL数量(超出后不再缓存新的SQL)
+    private static final int MAX_STATEMENTS = 1000;
+
+    private final LruCache<QueryKey, CachedResult> cache;
+
+    // 原始SQL -> 解析结果
+    private final ConcurrentMap<String, StatementInfo> statementMap = new ConcurrentHashMap<String, StatementInfo>();
+
+    // 表名 -> 写入代数
+    private final ConcurrentMap<String, AtomicLong> tableGenerationMap = new ConcurrentHashMap<String, AtomicLong>();
+
+    // 全局写入代数(无法识别表名的写入时递增)
+    private final AtomicLong globalGeneration = new AtomicLong();
+
+    public QueryCache(int maxSize, long ttlSeconds) {
+        this.cache = new LruCache<QueryKey, CachedResult>("query", maxSize, ttlSeconds);
+    }
+
+    /**
+     * 调整容量和过期时间(运行时修改配置)
+     */
+    public void resize(int maxSize, long ttlSeconds) {
+        cache.setMaxSize(maxSize);
+        cache.setTtlSeconds(ttlSeconds);
+    }
+
+    /**
+     * 查找缓存,未命中时返回的Lookup用于在查询完成后put
+     */
+    public Lookup lookup(Class<?> resultType, String sql, Object[] params) {
+        StatementInfo info = getStatementInfo(sql);
+        if (info == null || info.readTables.length == 0) {
+            return null;
+        }
+        QueryKey key = new QueryKey(info.normalizedSql, resultType, params);
+        // 先记录代数再查询数据库,查询期间发生的写入会使本次结果在下次读取时失效
+        long[] generations = new long[info.readTables.length];
+        for (int i = 0; i < generations.length; i++) {
+            generations[i] = getTableGeneration(info.readTables[i]).get();
+        }
+        Lookup lookup = new Lookup(info, key, generations, globalGeneration.get());
+        CachedResult cached = cache.get(key);
+        if (cached != null && isValid(cached.info, cached.generations, cached.globalGeneration)) {
+            info.hits.increment();
+            lookup.value = cached.value;
+        } else {
+            if (cached != null) {
+                cache.remove(key);
+            }
+            info.misses.increment();
+        }
+        return lookup;
+    }
+
+    /**
+     * 缓存查询结果
+     */
+    public void put(Lookup lookup, Object value) {
+        if (value != null && isValid(lookup.info, lookup.generations, lookup.globalGeneration)) {
+            cache.put(lookup.key, new CachedResult(lookup.info, value, lookup.generations, lookup.globalGeneration));
+        }
+    }
+
+    /**
+     * 写入后使相关表的缓存失效
+     */
+    public void invalidate(String sql) {
+        StatementInfo info = getStatementInfo(sql);
+        if (info != null && info.writeTable != null) {
+            getTableGeneration(info.writeTable).incrementAndGet();
+        } else if (info == null || !info.normalizedSql.startsWith("select")) {
+            globalGeneration.incrementAndGet();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        globalGeneration.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * 缓存整体统计
+     */
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * 每条SQL的命中统计
+     */
+    public List<QueryStats> getQueryStats() {
+        List<QueryStats> statsList = new ArrayList<QueryStats>();
+        for (StatementInfo info : statementMap.values()) {
+            long hits = info.hits.sum();
+            long misses = info.misses.sum();
+            if (hits + misses > 0) {
+                statsList.add(new QueryStats(info.normalizedSql, hits, misses));
+            }
+        }
+        return statsList;
+    }
+
+    private boolean isValid(StatementInfo info, long[] generations, long global) {
+        if (global != globalGeneration.get()) {
+            return false;
+        }
+        for (int i = 0; i < generations.length; i++) {
+            if (generations[i] != getTableGeneration(info.readTables[i]).get()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private AtomicLong getTableGeneration(String table) {
+        AtomicLong generation = tableGenerationMap.get(table);
+        if (generation == null) {
+            generation = new AtomicLong();
+            AtomicLong existing = tableGenerationMap.putIfAbsent(table, generation);
+            if (existing != null) {
+                generation = existing;
+            }
+        }
+        return generation;
+    }
+
+    private StatementInfo getStatementInfo(String sql) {
+        StatementInfo info = statementMap.get(sql);
+        if (info == null) {
+            info = new StatementInfo(sql);
+            if (statementMap.size() >= MAX_STATEMENTS) {
+                // 不缓存,但写入语句仍需正确失效
+                return info.writeTable != null ? info : null;
+            }
+            StatementInfo existing = statementMap.putIfAbsent(sql, info);
+            if (existing != null) {
+                info = existing;
+            }
+        }
+        return info;
+    }
+
+    /**
+     * 查找结果
+     */
+    public static final class Lookup {
+
+        private final StatementInfo info;
+        private final QueryKey key;
+        private final long[] generations;
+        private final long globalGeneration;
+        private Object value;
+
+        private Lookup(StatementInfo info, QueryKey key, long[] generations, long globalGeneration) {
+            this.info = info;
+            this.key = key;
+            this.generations = generations;
+            this.globalGeneration = globalGeneration;
+        }
+
+        public boolean isHit() {
+            return value != null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <T> T getValue() {
+            return (T) value;
+        }
+    }
+
+    /**
+     * 单条SQL的命中统计
+     */
+    public static final class QueryStats {
+
+        private final String sql;
+        private final long hits;
+        private final long misses;
+
+        private QueryStats(String sql, long hits, long misses) {
+            this.sql = sql;
+            this.hits = hits;
+            this.misses = misses;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public double getHitRatio() {
+            return (double) hits / (hits + misses);
+        }
+    }
+
+    /**
+     * SQL解析结果
+     */
+    private static final class StatementInfo {
+
+        private final String normalizedSql;
+        private final String[] readTables;
+        private final String writeTable;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        private StatementInfo(String sql) {
+            this.normalizedSql = SqlUtil.normalize(sql);
+            this.writeTable = SqlUtil.getWriteTable(normalizedSql);
+            // 加锁读取不缓存
+            boolean locking = normalizedSql.endsWith(" for update") || normalizedSql.endsWith(" lock in share mode");
+            if (normalizedSql.startsWith("select") && !locking) {
+                Set<String> tables = SqlUtil.getReadTables(normalizedSql);
+                this.readTables = tables.toArray(new String[tables.size()]);
+            } else {
+                this.readTables = new String[0];
+            }
+        }
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class CachedResult {
+
+        private final StatementInfo info;
+        private final Object value;
+        private final long[] generations;
+        private final long globalGeneration;
+
+        private CachedResult(StatementInfo info, Object value, long[] generations, long globalGeneration) {
+            this.info = info;
+            this.value = value;
+            this.generations = generations;
+            this.globalGeneration = globalGeneration;
+        }
+    }
+
+    /**
+     * 缓存key
+     */
+    private static final class QueryKey {
+
+        private final String sql;
+        private final Class<?> resultType;
+        private final Object[] params;
+        private final int hash;
+
+        private QueryKey(String sql, Class<?> resultType, Object[] params) {
+            this.sql = sql;
+            this.resultType = resultType;
+            this.params = params != null ? params.clone() : new Object[0];
+            this.hash = 31 * (31 * sql.hashCode() + (resultType != null ? resultType.hashCode() : 0))
+                    + Arrays.deepHashCode(this.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) obj;
+            return hash == other.hash && sql.equals(other.sql) && resultType == other.resultType
+                    && Arrays.deepEquals(params, other.params);
+        }
+    }
+}
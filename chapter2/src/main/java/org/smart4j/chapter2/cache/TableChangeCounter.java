@@ -0,0 +1,105 @@
+package org.smart4j.chapter2.cache;
+
+import org.smart4j.chapter2.util.SqlUtil;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 表修改计数
+ *      每次写入(及事务结束)时递增写入表的计数并记录修改时间,用于生成列表的ETag/Last-Modified,
+ *      判断表是否变化不需要查询数据库;无法识别表名的写入递增全局计数,使所有表都视为已修改
+ *
+ *      计数只在当前进程内有效:启动时间(epoch)参与ETag,重启后旧的ETag全部失效;
+ *      与客户缓存一样,多实例部署或绕过应用直接修改数据库时无法感知
+ */
+public final class TableChangeCounter {
+
+    // 最多缓存的SQL -> 表名解析结果
+    private static final int MAX_STATEMENTS = 1000;
+
+    // 进程启动时间,也是尚未写入过的表的修改时间
+    private static final long EPOCH = System.currentTimeMillis();
+
+    private static final ConcurrentMap<String, TableCounter> TABLE_MAP = new ConcurrentHashMap<String, TableCounter>();
+
+    // 原始SQL -> 写入的表名(无法识别时为空字符串)
+    private static final ConcurrentMap<String, String> WRITE_TABLE_MAP = new ConcurrentHashMap<String, String>();
+
+    private static final TableCounter GLOBAL = new TableCounter();
+
+    /**
+     * 执行写入语句后调用
+     */
+    public static void onWrite(String sql) {
+        String table = WRITE_TABLE_MAP.get(sql);
+        if (table == null) {
+            table = SqlUtil.getWriteTable(SqlUtil.normalize(sql));
+            if (table == null) {
+                table = "";
+            }
+            if (WRITE_TABLE_MAP.size() < MAX_STATEMENTS) {
+                WRITE_TABLE_MAP.putIfAbsent(sql, table);
+            }
+        }
+        if (table.isEmpty()) {
+            GLOBAL.increment();
+        } else {
+            getCounter(table).increment();
+        }
+    }
+
+    /**
+     * 可能写入了任意表(例如执行SQL脚本)
+     */
+    public static void onWriteAll() {
+        GLOBAL.increment();
+    }
+
+    /**
+     * 表的修改计数(包括全局计数)
+     */
+    public static long getCount(String table) {
+        return getCounter(table).count.get() + GLOBAL.count.get();
+    }
+
+    /**
+     * 表的最后修改时间(毫秒),启动后没有写入时为启动时间
+     */
+    public static long getLastModified(String table) {
+        return Math.max(getCounter(table).lastModified, GLOBAL.lastModified);
+    }
+
+    public static long getEpoch() {
+        return EPOCH;
+    }
+
+    private static TableCounter getCounter(String table) {
+        String key = table.toLowerCase();
+        TableCounter counter = TABLE_MAP.get(key);
+        if (counter == null) {
+            counter = new TableCounter();
+            TableCounter existing = TABLE_MAP.putIfAbsent(key, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * 单张表的计数
+     */
+    private static final class TableCounter {
+
+        private final AtomicLong count = new AtomicLong();
+        private volatile long lastModified = EPOCH;
+
+        private void increment() {
+            // 先更新时间再递增计数:读到新计数时一定能读到新时间
+            lastModified = Math.max(lastModified, System.currentTimeMillis());
+            count.incrementAndGet();
+        }
+    }
+}
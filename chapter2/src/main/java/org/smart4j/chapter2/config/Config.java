@@ -0,0 +1,230 @@
+package org.smart4j.chapter2.config;
+
+import org.smart4j.chapter2.util.TypeConverter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 配置快照(不可变)
+ *      创建时把每个配置项预先解析为字符串、long、double和boolean,读取时只有一次HashMap查找;
+ *      数值忽略首尾空白,无法解析时返回调用方给出的默认值
+ *
+ *      连接池参数(*.pool.*)及从库、分片路由的数值参数有类型要求,加载时由validate()校验,
+ *      不合法的配置在启动时拒绝启动,在线修改时不生效
+ */
+public final class Config {
+
+    // 有类型要求的配置项(按最后两段名称匹配,如jdbc.replica.1.pool.maxTotal匹配.pool.maxTotal)
+    private static final Map<String, Type> TYPED_KEYS = new HashMap<String, Type>();
+
+    static {
+        for (String name : new String[]{"maxTotal", "maxIdle", "validationQueryTimeout", "maxOpenPreparedStatements"}) {
+            TYPED_KEYS.put(".pool." + name, Type.INT);
+        }
+        for (String name : new String[]{"initialSize", "minIdle", "queryTimeoutSeconds"}) {
+            TYPED_KEYS.put(".pool." + name, Type.NON_NEGATIVE_INT);
+        }
+        for (String name : new String[]{"maxWaitMillis", "timeBetweenEvictionRunsMillis", "minEvictableIdleTimeMillis",
+                "maxConnLifetimeMillis"}) {
+            TYPED_KEYS.put(".pool." + name, Type.LONG);
+        }
+        for (String name : new String[]{"testOnBorrow", "testWhileIdle", "poolPreparedStatements"}) {
+            TYPED_KEYS.put(".pool." + name, Type.BOOLEAN);
+        }
+        TYPED_KEYS.put(".replica.readYourWritesMillis", Type.NON_NEGATIVE_LONG);
+        TYPED_KEYS.put(".shard.timeoutMillis", Type.NON_NEGATIVE_LONG);
+        TYPED_KEYS.put(".shard.nodeId", Type.NON_NEGATIVE_LONG);
+        TYPED_KEYS.put(".shard.executorSize", Type.NON_NEGATIVE_INT);
+    }
+
+    private final Map<String, Value> valueMap;
+
+    // 第几次加载(从1开始)
+    private final long version;
+
+    public Config(Properties props, long version) {
+        Map<String, Value> valueMap = new HashMap<String, Value>();
+        for (String key : props.stringPropertyNames()) {
+            valueMap.put(key, new Value(props.getProperty(key)));
+        }
+        this.valueMap = valueMap;
+        this.version = version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean containsKey(String key) {
+        return valueMap.containsKey(key);
+    }
+
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(valueMap.keySet());
+    }
+
+    /**
+     * 获取字符型配置(默认值为空字符串)
+     */
+    public String getString(String key) {
+        return getString(key, "");
+    }
+
+    public String getString(String key, String defaultValue) {
+        Value value = valueMap.get(key);
+        return value != null ? value.raw : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        Value value = valueMap.get(key);
+        return value != null && value.isLong && (int) value.longValue == value.longValue
+                ? (int) value.longValue : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        Value value = valueMap.get(key);
+        return value != null && value.isLong ? value.longValue : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        Value value = valueMap.get(key);
+        return value != null && value.isDouble ? value.doubleValue : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        Value value = valueMap.get(key);
+        return value != null ? value.booleanValue : defaultValue;
+    }
+
+    /**
+     * 转为Properties(副本)
+     */
+    public Properties toProperties() {
+        Properties props = new Properties();
+        for (Map.Entry<String, Value> entry : valueMap.entrySet()) {
+            props.setProperty(entry.getKey(), entry.getValue().raw);
+        }
+        return props;
+    }
+
+    /**
+     * 校验有类型要求的配置项
+     *
+     * @return 不合法的配置项及原因(按名称排序),全部合法时为空
+     */
+    public List<String> validate() {
+        List<String> errors = new ArrayList<String>();
+        for (String key : new TreeSet<String>(valueMap.keySet())) {
+            Type type = getType(key);
+            Value value = valueMap.get(key);
+            if (type != null && !type.accepts(value)) {
+                errors.add(key + "=" + value.raw + " (expected " + type.description + ")");
+            }
+        }
+        return errors;
+    }
+
+    private static Type getType(String key) {
+        int last = key.lastIndexOf('.');
+        int secondLast = last > 0 ? key.lastIndexOf('.', last - 1) : -1;
+        return secondLast >= 0 ? TYPED_KEYS.get(key.substring(secondLast)) : null;
+    }
+
+    /**
+     * 与另一个快照相比新增、删除或修改的配置项(按名称排序)
+     */
+    public Set<String> diff(Config other) {
+        Set<String> changedKeys = new TreeSet<String>();
+        for (Map.Entry<String, Value> entry : valueMap.entrySet()) {
+            Value otherValue = other.valueMap.get(entry.getKey());
+            if (otherValue == null || !otherValue.raw.equals(entry.getValue().raw)) {
+                changedKeys.add(entry.getKey());
+            }
+        }
+        for (String key : other.valueMap.keySet()) {
+            if (!valueMap.containsKey(key)) {
+                changedKeys.add(key);
+            }
+        }
+        return changedKeys;
+    }
+
+    /**
+     * 配置项类型
+     */
+    private enum Type {
+
+        INT("int") {
+            @Override
+            boolean accepts(Value value) {
+                return value.isLong && (int) value.longValue == value.longValue;
+            }
+        },
+        NON_NEGATIVE_INT("int >= 0") {
+            @Override
+            boolean accepts(Value value) {
+                return INT.accepts(value) && value.longValue >= 0;
+            }
+        },
+        LONG("long") {
+            @Override
+            boolean accepts(Value value) {
+                return value.isLong;
+            }
+        },
+        NON_NEGATIVE_LONG("long >= 0") {
+            @Override
+            boolean accepts(Value value) {
+                return value.isLong && value.longValue >= 0;
+            }
+        },
+        BOOLEAN("true or false") {
+            @Override
+            boolean accepts(Value value) {
+                String trimmed = value.raw.trim();
+                return "true".equalsIgnoreCase(trimmed) || "false".equalsIgnoreCase(trimmed);
+            }
+        };
+
+        private final String description;
+
+        Type(String description) {
+            this.description = description;
+        }
+
+        abstract boolean accepts(Value value);
+    }
+
+    /**
+     * 配置项的原始值及预先解析的结果
+     */
+    private static final class Value {
+
+        private final String raw;
+        private final boolean isLong;
+        private final long longValue;
+        private final boolean isDouble;
+        private final double doubleValue;
+        private final boolean booleanValue;
+
+        private Value(String raw) {
+            this.raw = raw;
+            String trimmed = raw.trim();
+            // 用两个不同的默认值区分"0"和无法解析
+            long longValue = TypeConverter.parseLong(trimmed, 0);
+            this.isLong = longValue != 0 || TypeConverter.parseLong(trimmed, 1) == 0;
+            this.longValue = longValue;
+            double doubleValue = TypeConverter.parseDouble(trimmed, 0);
+            this.isDouble = doubleValue != 0 || TypeConverter.parseDouble(trimmed, 1) == 0;
+            this.doubleValue = doubleValue;
+            this.booleanValue = TypeConverter.toBoolean(trimmed, false);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.smart4j.chapter2.config;
+
+import org.smart4j.chapter2.util.PropsUtil;
+import org.smart4j.chapter2.util.StringUtil;
+
+import java.io.File;
+import java.util.Properties;
+
+/**
+ * 配置助手类
+ *      类路径中的config.properties为基础配置;系统属性或基础配置中的config.file指定外部配置文件时,
+ *      外部文件中的配置项覆盖基础配置,修改后由后台线程自动重新加载(间隔config.watch.intervalMillis)
+ *
+ *      读取配置使用get()返回的快照;可以在线修改的配置(连接池大小、超时、缓存容量、慢查询阈值等)
+ *      由各组件通过addListener注册的监听器应用,其余配置重启后生效
+ */
+public final class ConfigHelper {
+
+    private static final ConfigWatcher WATCHER;
+
+    static {
+        Properties props = PropsUtil.loadProps("config.properties");
+        if (props == null) {
+            props = new Properties();
+        }
+        String path = System.getProperty("config.file", props.getProperty("config.file"));
+        File file = StringUtil.isNotEmpty(path) ? new File(path.trim()) : null;
+        WATCHER = new ConfigWatcher(props, file, PropsUtil.getLong(props, "config.watch.intervalMillis", 2000));
+        WATCHER.start();
+    }
+
+    /**
+     * 获取当前配置快照
+     */
+    public static Config get() {
+        return WATCHER.getConfig();
+    }
+
+    /**
+     * 注册配置变化监听器
+     */
+    public static void addListener(ConfigListener listener) {
+        WATCHER.addListener(listener);
+    }
+
+    /**
+     * 立即重新加载外部配置文件
+     *
+     * @return 配置是否变化
+     */
+    public static boolean reload() {
+        return WATCHER.reload();
+    }
+
+    /**
+     * 停止监视外部配置文件
+     */
+    public static void shutdown() {
+        WATCHER.close();
+    }
+}
@@ -0,0 +1,15 @@
+package org.smart4j.chapter2.config;
+
+import java.util.Set;
+
+/**
+ * 配置变化回调,在配置监视线程中执行,只应用可以在线修改的配置项
+ */
+public interface ConfigListener {
+
+    /**
+     * @param config      新的配置快照
+     * @param changedKeys 新增、删除或修改的配置项
+     */
+    void onChange(Config config, Set<String> changedKeys);
+}
@@ -0,0 +1,173 @@
+package org.smart4j.chapter2.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 配置监视器
+ *      配置由类路径中的基础配置和外部配置文件(覆盖同名配置项)合并而成;后台线程定期检查外部文件的修改时间和大小,
+ *      连续两次检查结果相同(文件已写完)且与上次加载时不同,才重新加载并通知监听器
+ *
+ *      外部文件不存在或读取失败时保留当前配置;配置不合法(见Config.validate)时启动失败,重新加载时保留当前配置
+ */
+public final class ConfigWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigWatcher.class);
+
+    private final Properties baseProps;
+    private final File file;
+    private final long intervalMillis;
+    private final List<ConfigListener> listeners = new CopyOnWriteArrayList<ConfigListener>();
+
+    private volatile Config config;
+
+    // 上次加载时和上次检查时的文件状态(修改时间, 大小),只在监视线程和reload中访问
+    private long loadedModified = -1;
+    private long loadedLength = -1;
+    private long checkedModified = -1;
+    private long checkedLength = -1;
+
+    private volatile Thread thread;
+
+    /**
+     * @param file           外部配置文件,为null时只使用基础配置
+     * @param intervalMillis 检查间隔(毫秒)
+     * @throws IllegalArgumentException 配置不合法
+     */
+    public ConfigWatcher(Properties baseProps, File file, long intervalMillis) {
+        this.baseProps = baseProps;
+        this.file = file;
+        this.intervalMillis = Math.max(10, intervalMillis);
+        Properties props = load();
+        Config config = new Config(props != null ? props : baseProps, 1);
+        List<String> errors = config.validate();
+        if (!errors.isEmpty()) {
+            LOGGER.error("invalid config: {}", errors);
+            throw new IllegalArgumentException("invalid config: " + errors);
+        }
+        this.config = config;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void addListener(ConfigListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 立即重新加载,配置有变化且合法时通知监听器
+     *
+     * @return 配置是否变化
+     */
+    public synchronized boolean reload() {
+        Properties props = load();
+        if (props == null) {
+            return false;
+        }
+        Config previous = config;
+        Config current = new Config(props, previous.getVersion() + 1);
+        List<String> errors = current.validate();
+        if (!errors.isEmpty()) {
+            LOGGER.error("invalid config in {} ignored, keeping the current config: {}", file, errors);
+            return false;
+        }
+        Set<String> changedKeys = current.diff(previous);
+        if (changedKeys.isEmpty()) {
+            return false;
+        }
+        config = current;
+        LOGGER.info("config reloaded from {}, changed keys: {} (settings that are not applied live take effect after restart)",
+                file, changedKeys);
+        for (ConfigListener listener : listeners) {
+            try {
+                listener.onChange(current, changedKeys);
+            } catch (RuntimeException e) {
+                LOGGER.error("apply config change failure", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 启动后台监视线程(没有外部配置文件时不启动)
+     */
+    public synchronized void start() {
+        if (file == null || thread != null) {
+            return;
+        }
+        Thread watcherThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        Thread.sleep(intervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    check();
+                }
+            }
+        }, "config-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        thread = watcherThread;
+    }
+
+    /**
+     * 停止后台监视线程
+     */
+    public synchronized void close() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private synchronized void check() {
+        long modified = file.lastModified();
+        long length = file.length();
+        boolean stable = modified == checkedModified && length == checkedLength;
+        checkedModified = modified;
+        checkedLength = length;
+        if (stable && modified != 0 && (modified != loadedModified || length != loadedLength)) {
+            reload();
+        }
+    }
+
+    /**
+     * 读取基础配置并用外部文件覆盖,外部文件读取失败时返回null
+     */
+    private Properties load() {
+        Properties props = new Properties();
+        props.putAll(baseProps);
+        if (file == null) {
+            return props;
+        }
+        long modified = file.lastModified();
+        long length = file.length();
+        try (InputStream is = new FileInputStream(file)) {
+            props.load(is);
+        } catch (IOException e) {
+            LOGGER.error("load config file " + file + " failure", e);
+            return null;
+        }
+        loadedModified = modified;
+        loadedLength = length;
+        return props;
+    }
+}
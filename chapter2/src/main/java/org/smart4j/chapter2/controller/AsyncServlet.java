@@ -0,0 +1,190 @@
+package org.smart4j.chapter2.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.helper.DbExecutor;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步Servlet基类
+ *      请求线程只负责startAsync和提交任务,数据库操作在DbExecutor中执行,
+ *      执行完毕后转发到视图(或直接完成响应),容器线程不会被慢SQL阻塞
+ *
+ *      子类需在@WebServlet中声明asyncSupported = true
+ *
+ *      任务与超时监听器通过state竞争处理请求,先得到的一方负责写出响应并结束请求,另一方不能再结束请求:
+ *      任务还在排队时超时,由监听器返回503,任务开始时发现已超时直接放弃;
+ *      任务已开始执行时超时,监听器最多等待db.executor.timeoutGraceMillis,任务仍未结束则返回503,
+ *      任务结束后不再转发或结束请求(语句超时jdbc.pool.queryTimeoutSeconds小于异步超时,慢SQL通常在此之前结束)
+ */
+public abstract class AsyncServlet extends HttpServlet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncServlet.class);
+
+    // 请求状态:等待执行、任务执行中、已由任务结束、已由超时监听器或拒绝处理结束
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int ABANDONED = 3;
+
+    /**
+     * 异步操作
+     */
+    protected interface AsyncAction {
+
+        /**
+         * 执行操作
+         *
+         * @return 需要转发的视图路径,已直接写出响应(例如重定向)时返回null
+         */
+        String execute(HttpServletRequest req, HttpServletResponse resp) throws Exception;
+    }
+
+    /**
+     * 在DbExecutor中异步执行操作
+     */
+    protected void executeAsync(final HttpServletRequest req, final HttpServletResponse resp, final AsyncAction action)
+            throws IOException {
+        final AsyncContext asyncContext = req.startAsync(req, resp);
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final String uri = req.getRequestURI();
+        asyncContext.setTimeout(DbExecutor.getTimeoutMillis());
+        asyncContext.addListener(new TimeoutListener(state, finished, DbExecutor.getTimeoutGraceMillis()));
+        try {
+            DbExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!state.compareAndSet(QUEUED, RUNNING)) {
+                        // 排队期间已超时,监听器已返回503并结束请求
+                        LOGGER.warn("async request timed out before execution: {}", uri);
+                        return;
+                    }
+                    try {
+                        executeAction(asyncContext, req, resp, action, state, uri);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 数据库任务已积压,快速失败
+            LOGGER.warn("db executor is saturated, reject request {}", uri);
+            if (state.compareAndSet(QUEUED, ABANDONED)) {
+                sendError(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                asyncContext.complete();
+            }
+        }
+    }
+
+    private static void executeAction(AsyncContext asyncContext, HttpServletRequest req, HttpServletResponse resp,
+                                      AsyncAction action, AtomicInteger state, String uri) {
+        String view = null;
+        int errorStatus = 0;
+        try {
+            view = action.execute(req, resp);
+        } catch (RejectedExecutionException e) {
+            // 延迟写入缓冲区已满
+            LOGGER.warn("async action rejected: {}", e.getMessage());
+            errorStatus = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+        } catch (Exception e) {
+            LOGGER.error("execute async action failure", e);
+            errorStatus = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        }
+        if (!state.compareAndSet(RUNNING, DONE)) {
+            // 超过等待时间,监听器已返回503并结束请求
+            LOGGER.warn("async request timed out during execution: {}", uri);
+            return;
+        }
+        if (errorStatus != 0) {
+            view = null;
+            sendError(resp, errorStatus);
+        }
+        try {
+            if (view != null) {
+                asyncContext.dispatch(view);
+            } else {
+                asyncContext.complete();
+            }
+        } catch (IllegalStateException e) {
+            // 客户端断开等原因导致请求已结束
+            LOGGER.warn("async request already completed: {}", e.getMessage());
+        }
+    }
+
+    private static void sendError(HttpServletResponse resp, int status) {
+        if (!resp.isCommitted()) {
+            try {
+                resp.sendError(status);
+            } catch (IOException e) {
+                LOGGER.error("send error failure", e);
+            }
+        }
+    }
+
+    /**
+     * 异步请求超时:任务还未开始时返回503;任务执行中时最多等待graceMillis,仍未结束则返回503
+     */
+    private static final class TimeoutListener implements AsyncListener {
+
+        private final AtomicInteger state;
+        private final CountDownLatch finished;
+        private final long graceMillis;
+
+        private TimeoutListener(AtomicInteger state, CountDownLatch finished, long graceMillis) {
+            this.state = state;
+            this.finished = finished;
+            this.graceMillis = graceMillis;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            if (state.compareAndSet(QUEUED, ABANDONED)) {
+                sendUnavailable(event);
+                return;
+            }
+            // 任务正在执行:监听器返回后容器会结束请求并回收req/resp,先等待任务结束请求,但不能长时间占用容器线程
+            try {
+                if (finished.await(graceMillis, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                if (state.compareAndSet(RUNNING, ABANDONED)) {
+                    sendUnavailable(event);
+                    return;
+                }
+                // 任务刚执行完,正在转发或结束请求
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private static void sendUnavailable(AsyncEvent event) {
+            sendError((HttpServletResponse) event.getSuppliedResponse(), HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            event.getAsyncContext().complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+    }
+}
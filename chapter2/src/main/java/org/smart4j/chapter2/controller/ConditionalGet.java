@@ -0,0 +1,87 @@
+package org.smart4j.chapter2.controller;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 条件GET
+ *      设置ETag/Last-Modified响应头,请求的If-None-Match(优先)或If-Modified-Since表明客户端缓存仍然有效时返回304
+ *      ETag由调用方根据版本号拼出,不需要加载和序列化实体
+ */
+final class ConditionalGet {
+
+    private ConditionalGet() {
+    }
+
+    /**
+     * 拼装强ETag: "part1-part2-..."
+     */
+    static String etag(Object... parts) {
+        StringBuilder etag = new StringBuilder(32).append('"');
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                etag.append('-');
+            }
+            etag.append(parts[i]);
+        }
+        return etag.append('"').toString();
+    }
+
+    /**
+     * 响应的表示形式(ETag的一部分):同一URL的JSON、gzip压缩的JSON和HTML是不同的表示
+     */
+    static String variant(HttpServletRequest req, boolean json) {
+        if (!json) {
+            return "html";
+        }
+        return JsonResponse.isGzipAccepted(req) ? "json.gz" : "json";
+    }
+
+    /**
+     * 设置ETag/Last-Modified,客户端缓存仍有效时返回304并返回true
+     *
+     * @param lastModified 最后修改时间(毫秒),小于等于0时不设置
+     */
+    static boolean checkNotModified(HttpServletRequest req, HttpServletResponse resp, String etag, long lastModified) {
+        resp.setHeader("ETag", etag);
+        resp.setHeader("Vary", JsonResponse.VARY);
+        // 每次使用前都要向服务端确认
+        resp.setHeader("Cache-Control", "no-cache");
+        if (lastModified > 0) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+        if (isNotModified(req, etag, lastModified)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // 有If-None-Match时忽略If-Modified-Since;GET使用弱比较,忽略W/前缀
+            for (String candidate : ifNoneMatch.split(",")) {
+                candidate = candidate.trim();
+                if (candidate.startsWith("W/")) {
+                    candidate = candidate.substring(2);
+                }
+                if (candidate.equals("*") || candidate.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (lastModified <= 0) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        // HTTP日期精确到秒
+        return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+}
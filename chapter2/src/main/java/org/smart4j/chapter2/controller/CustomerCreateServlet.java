@@ -1,34 +1,68 @@
 package org.smart4j.chapter2.controller;
 
+import org.smart4j.chapter2.helper.EntityBinder;
+import org.smart4j.chapter2.model.Customer;
+import org.smart4j.chapter2.service.CustomerService;
+
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * Created by Brave on 18/5/22.
  * 创建客户
  */
-@WebServlet("/customer_create")
-public class CustomerCreateServlet extends HttpServlet{
+@WebServlet(value = "/customer_create", asyncSupported = true)
+public class CustomerCreateServlet extends AsyncServlet {
+
+    // 客户表单参数绑定器
+    private static final EntityBinder<Customer> CUSTOMER_BINDER = EntityBinder.get(Customer.class);
+
+    private final CustomerService customerService;
+
+    public CustomerCreateServlet() {
+        this(new CustomerService());
+    }
+
+    public CustomerCreateServlet(CustomerService customerService) {
+        this.customerService = customerService;
+    }
 
     /**
-     * 进入 创建客户 界面
+     * 进入 创建客户 界面(不访问数据库,直接转发)
      */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-        // TODO
+        req.getRequestDispatcher("/WEB-INF/view/customer_create.jsp").forward(req, resp);
     }
 
     /**
-     * 处理 创建客户 请求
+     * 处理 创建客户 请求(包含未知参数或参数值非法时返回400)
      */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-        // TODO
+        final Map<String, Object> fieldMap;
+        try {
+            fieldMap = CUSTOMER_BINDER.bind(req.getParameterMap());
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        executeAsync(req, resp, new AsyncAction() {
+            @Override
+            public String execute(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                if (customerService.createCustomer(fieldMap)) {
+                    resp.sendRedirect(req.getContextPath() + "/customer");
+                } else {
+                    resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                }
+                return null;
+            }
+        });
     }
 }
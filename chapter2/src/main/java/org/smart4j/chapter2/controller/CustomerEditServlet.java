@@ -1,18 +1,36 @@
 package org.smart4j.chapter2.controller;
 
+import org.smart4j.chapter2.helper.EntityBinder;
+import org.smart4j.chapter2.model.Customer;
+import org.smart4j.chapter2.service.CustomerService;
+import org.smart4j.chapter2.util.CastUtil;
+
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Map;
 
 /**
  * Created by Brave on 18/5/22.
  * 编辑客户
  */
-@WebServlet("/customer_edit")
-public class CustomerEditServlet extends HttpServlet{
+@WebServlet(value = "/customer_edit", asyncSupported = true)
+public class CustomerEditServlet extends AsyncServlet {
+
+    // 客户表单参数绑定器
+    private static final EntityBinder<Customer> CUSTOMER_BINDER = EntityBinder.get(Customer.class);
+
+    private final CustomerService customerService;
+
+    public CustomerEditServlet() {
+        this(new CustomerService());
+    }
+
+    public CustomerEditServlet(CustomerService customerService) {
+        this.customerService = customerService;
+    }
 
     /**
      * 进入 编辑客户 界面
@@ -20,15 +38,45 @@ public class CustomerEditServlet extends HttpServlet{
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-        // TODO
+        final long id = CastUtil.castLong(req.getParameter("id"));
+        executeAsync(req, resp, new AsyncAction() {
+            @Override
+            public String execute(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                Customer customer = customerService.getCustomer(id);
+                if (customer == null) {
+                    resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                    return null;
+                }
+                req.setAttribute("customer", customer);
+                return "/WEB-INF/view/customer_edit.jsp";
+            }
+        });
     }
 
     /**
-     * 处理 编辑客户 请求
+     * 处理 编辑客户 请求(包含未知参数或参数值非法时返回400)
      */
     @Override
     protected void doPost(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-        // TODO
+        final long id = CastUtil.castLong(req.getParameter("id"));
+        final Map<String, Object> fieldMap;
+        try {
+            fieldMap = CUSTOMER_BINDER.bind(req.getParameterMap());
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        executeAsync(req, resp, new AsyncAction() {
+            @Override
+            public String execute(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                if (customerService.updateCustomer(id, fieldMap)) {
+                    resp.sendRedirect(req.getContextPath() + "/customer_show?id=" + id);
+                } else {
+                    resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                }
+                return null;
+            }
+        });
     }
 }
@@ -1,22 +1,101 @@
 package org.smart4j.chapter2.controller;
 
+import org.smart4j.chapter2.cache.TableChangeCounter;
+import org.smart4j.chapter2.helper.EntityJsonWriter;
+import org.smart4j.chapter2.model.Customer;
+import org.smart4j.chapter2.model.Page;
+import org.smart4j.chapter2.service.CustomerService;
+import org.smart4j.chapter2.util.CastUtil;
+import org.smart4j.chapter2.util.CursorUtil;
+
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.stream.Stream;
 
 /**
  * Created by Brave on 18/5/22.
  * 客户列表
  */
-@WebServlet("/customer")
-public class CustomerServlet extends HttpServlet{
+@WebServlet(value = "/customer", asyncSupported = true)
+public class CustomerServlet extends AsyncServlet {
+
+    // 默认每页条数
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private final CustomerService customerService;
+
+    public CustomerServlet() {
+        this(new CustomerService());
+    }
+
+    public CustomerServlet(CustomerService customerService) {
+        this.customerService = customerService;
+    }
 
+    /**
+     * 进入 客户列表 界面
+     *      参数cursor为上一页返回的游标(第一页不传),limit为每页条数
+     *      要求JSON时返回 {"items":[...],"nextCursor":...};未传cursor和limit时从流式结果集逐行输出全部客户
+     *      ETag由customer表的修改计数生成,客户端缓存有效时直接返回304,不查询数据库
+     */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-        // TODO
+        final long afterId;
+        try {
+            afterId = CursorUtil.decode(req.getParameter("cursor"), 0);
+        } catch (IllegalArgumentException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        }
+        final int limit = CastUtil.castInt(req.getParameter("limit"), DEFAULT_PAGE_SIZE);
+        final boolean json = JsonResponse.isRequested(req);
+        final boolean all = req.getParameter("cursor") == null && req.getParameter("limit") == null;
+        // 查询前读取计数:查询期间发生的写入会使下一次请求的ETag变化
+        String etag = ConditionalGet.etag("t" + Long.toString(TableChangeCounter.getEpoch(), 36),
+                TableChangeCounter.getCount("customer"), ConditionalGet.variant(req, json));
+        if (ConditionalGet.checkNotModified(req, resp, etag, TableChangeCounter.getLastModified("customer"))) {
+            return;
+        }
+
+        executeAsync(req, resp, new AsyncAction() {
+            @Override
+            public String execute(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                if (json && all) {
+                    writeAll(req, resp);
+                    return null;
+                }
+                Page<Customer> customerPage = customerService.getCustomerPage(afterId, limit);
+                if (json) {
+                    writePage(req, resp, customerPage.getItems().iterator(), customerPage.getNextCursor());
+                    return null;
+                }
+                req.setAttribute("customerList", customerPage.getItems());
+                req.setAttribute("nextCursor", customerPage.getNextCursor());
+                return "/WEB-INF/view/customer.jsp";
+            }
+        });
+    }
+
+    private void writeAll(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        try (Stream<Customer> customerStream = customerService.streamCustomerList()) {
+            writePage(req, resp, customerStream.iterator(), null);
+        }
+    }
+
+    private static void writePage(HttpServletRequest req, HttpServletResponse resp, Iterator<Customer> customers,
+                                  String nextCursor) throws IOException {
+        try (Writer out = JsonResponse.open(req, resp)) {
+            out.write("{\"items\":");
+            EntityJsonWriter.get(Customer.class).writeArray(customers, out);
+            out.write(",\"nextCursor\":");
+            EntityJsonWriter.writeString(nextCursor, out);
+            out.write('}');
+        }
     }
 }
@@ -1,22 +1,99 @@
 package org.smart4j.chapter2.controller;
 
+import org.smart4j.chapter2.cache.TableChangeCounter;
+import org.smart4j.chapter2.helper.EntityJsonWriter;
+import org.smart4j.chapter2.model.Customer;
+import org.smart4j.chapter2.service.CustomerService;
+import org.smart4j.chapter2.util.CastUtil;
+
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.Writer;
 
 /**
  * Created by Brave on 18/5/22.
  * 显示客户基本信息
  */
-@WebServlet("/customer_show")
-public class CustomerShowServlet extends HttpServlet{
+@WebServlet(value = "/customer_show", asyncSupported = true)
+public class CustomerShowServlet extends AsyncServlet {
+
+    private final CustomerService customerService;
+
+    public CustomerShowServlet() {
+        this(new CustomerService());
+    }
+
+    public CustomerShowServlet(CustomerService customerService) {
+        this.customerService = customerService;
+    }
 
+    /**
+     * 进入 客户详情 界面(要求JSON时返回客户对象)
+     *      ETag由客户版本号生成;带If-None-Match时先只查询版本号,匹配则返回304,不加载客户
+     *      customer表还没有version列时,与客户列表一样由表修改计数生成ETag(任一客户修改后全部失效)
+     */
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp)
             throws ServletException, IOException {
-        // TODO
+        final long id = CastUtil.castLong(req.getParameter("id"));
+        final boolean json = JsonResponse.isRequested(req);
+        executeAsync(req, resp, new AsyncAction() {
+            @Override
+            public String execute(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+                String variant = ConditionalGet.variant(req, json);
+                long lastModified = TableChangeCounter.getLastModified("customer");
+                if (!customerService.isVersioned()) {
+                    // 查询前读取计数:查询期间发生的写入会使下一次请求的ETag变化
+                    String etag = ConditionalGet.etag("c" + id, "t" + Long.toString(TableChangeCounter.getEpoch(), 36),
+                            TableChangeCounter.getCount("customer"), variant);
+                    if (ConditionalGet.checkNotModified(req, resp, etag, lastModified)) {
+                        return null;
+                    }
+                    return render(req, resp, customerService.getCustomer(id), json);
+                }
+                if (req.getHeader("If-None-Match") != null) {
+                    Long version = customerService.getCustomerVersion(id);
+                    if (version == null) {
+                        resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                        return null;
+                    }
+                    if (ConditionalGet.checkNotModified(req, resp, etag(id, version, variant), lastModified)) {
+                        return null;
+                    }
+                }
+                Customer customer = customerService.getCustomer(id);
+                if (customer == null) {
+                    resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                    return null;
+                }
+                if (ConditionalGet.checkNotModified(req, resp, etag(id, customer.getVersion(), variant), lastModified)) {
+                    return null;
+                }
+                return render(req, resp, customer, json);
+            }
+        });
+    }
+
+    private static String render(HttpServletRequest req, HttpServletResponse resp, Customer customer, boolean json)
+            throws IOException {
+        if (customer == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+        if (json) {
+            try (Writer out = JsonResponse.open(req, resp)) {
+                EntityJsonWriter.get(Customer.class).write(customer, out);
+            }
+            return null;
+        }
+        req.setAttribute("customer", customer);
+        return "/WEB-INF/view/customer_show.jsp";
+    }
+
+    private static String etag(long id, long version, String variant) {
+        return ConditionalGet.etag("c" + id, "v" + version, variant);
     }
 }
@@ -0,0 +1,71 @@
+package org.smart4j.chapter2.controller;
+
+import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.helper.EntityJsonWriter;
+import org.smart4j.chapter2.helper.PoolMetrics;
+import org.smart4j.chapter2.metrics.StartupMetrics;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * 就绪检查(用于负载均衡和容器编排的readiness探测)
+ *      数据源预热完成后返回200,启动中或失败时返回503;只读取启动状态和连接池计数,不访问数据库
+ */
+@WebServlet("/health")
+public class HealthServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        boolean ready = StartupMetrics.isReady();
+        resp.setStatus(ready ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        resp.setContentType("application/json; charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+        PrintWriter writer = resp.getWriter();
+        writer.write("{\"state\":\"");
+        writer.write(StartupMetrics.getState().name());
+        writer.write("\",\"uptimeMillis\":");
+        writer.print(toMillis(StartupMetrics.getUptimeNanos()));
+        writer.write(",\"readyMillis\":");
+        writer.print(toMillis(StartupMetrics.getReadyNanos()));
+        writer.write(",\"warmUpMillis\":");
+        writer.print(toMillis(StartupMetrics.getWarmUpNanos()));
+        writer.write(",\"warmUpAttempts\":");
+        writer.print(StartupMetrics.getWarmUpAttempts());
+        writer.write(",\"preparedStatements\":");
+        writer.print(StartupMetrics.getPreparedStatements());
+        writer.write(",\"firstRequestMillis\":");
+        writer.print(toMillis(StartupMetrics.getFirstRequestNanos()));
+        if (ready) {
+            // 就绪前不访问DatabaseHelper,避免在探测线程中触发数据源初始化
+            PoolMetrics pool = DatabaseHelper.getPoolMetrics();
+            writer.write(",\"pool\":{\"active\":");
+            writer.print(pool.getActive());
+            writer.write(",\"idle\":");
+            writer.print(pool.getIdle());
+            writer.write(",\"maxTotal\":");
+            writer.print(pool.getMaxTotal());
+            writer.write('}');
+        }
+        String error = StartupMetrics.getError();
+        if (error != null) {
+            writer.write(",\"error\":");
+            EntityJsonWriter.writeString(error, writer);
+        }
+        writer.write('}');
+        writer.flush();
+    }
+
+    /**
+     * 纳秒转为毫秒(保留3位小数),未记录(-1)时为null
+     */
+    private static String toMillis(long nanos) {
+        return nanos < 0 ? "null" : String.valueOf(Math.round(nanos / 1000.0) / 1000.0);
+    }
+}
@@ -0,0 +1,104 @@
+package org.smart4j.chapter2.controller;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * JSON响应
+ *      按Accept协商:application/json的质量值高于text/html时返回JSON(浏览器仍得到JSP页面);
+ *      按Accept-Encoding协商gzip,响应经缓冲写出,不在内存中拼装完整的响应体
+ */
+final class JsonResponse {
+
+    private static final String JSON = "application/json";
+    private static final String HTML = "text/html";
+
+    // 响应随Accept和Accept-Encoding变化
+    static final String VARY = "Accept, Accept-Encoding";
+
+    // 响应写出缓冲区大小
+    private static final int BUFFER_SIZE = 8192;
+
+    private JsonResponse() {
+    }
+
+    /**
+     * 客户端是否要求JSON
+     */
+    static boolean isRequested(HttpServletRequest req) {
+        String accept = req.getHeader("Accept");
+        if (accept == null) {
+            return false;
+        }
+        return getQuality(accept, JSON) > getQuality(accept, HTML);
+    }
+
+    /**
+     * 设置响应头并打开Writer(使用完毕必须关闭,gzip在关闭时写出结尾)
+     */
+    static Writer open(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("application/json; charset=UTF-8");
+        resp.setHeader("Vary", VARY);
+        OutputStream out = resp.getOutputStream();
+        if (isGzipAccepted(req)) {
+            resp.setHeader("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * 客户端是否接受gzip
+     */
+    static boolean isGzipAccepted(HttpServletRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        return acceptEncoding != null && getQuality(acceptEncoding, "gzip") > 0;
+    }
+
+    /**
+     * 头部值中token的质量值:精确匹配优先,其次为类型通配和全通配,都不存在时为0
+     */
+    static double getQuality(String header, String token) {
+        int slash = token.indexOf('/');
+        String typeWildcard = slash > 0 ? token.substring(0, slash) + "/*" : null;
+        double exact = -1;
+        double type = -1;
+        double any = -1;
+        for (String part : header.split(",")) {
+            String[] params = part.split(";");
+            String value = params[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (value.equals(token)) {
+                exact = Math.max(exact, quality);
+            } else if (value.equals(typeWildcard)) {
+                type = Math.max(type, quality);
+            } else if (value.equals("*/*") || value.equals("*")) {
+                any = Math.max(any, quality);
+            }
+        }
+        if (exact >= 0) {
+            return exact;
+        }
+        if (type >= 0) {
+            return type;
+        }
+        return Math.max(any, 0);
+    }
+}
@@ -0,0 +1,234 @@
+package org.smart4j.chapter2.controller;
+
+import org.smart4j.chapter2.cache.CacheStats;
+import org.smart4j.chapter2.cache.QueryCache;
+import org.smart4j.chapter2.helper.BatchLoader;
+import org.smart4j.chapter2.helper.ConnectionScope;
+import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.helper.DbExecutor;
+import org.smart4j.chapter2.helper.PoolMetrics;
+import org.smart4j.chapter2.helper.ShardRouter;
+import org.smart4j.chapter2.helper.WriteBehindBuffer;
+import org.smart4j.chapter2.metrics.LatencyHistogram;
+import org.smart4j.chapter2.metrics.SlowQueryLog;
+import org.smart4j.chapter2.metrics.StatementMetrics;
+import org.smart4j.chapter2.metrics.SqlMetrics;
+import org.smart4j.chapter2.metrics.StartupMetrics;
+import org.smart4j.chapter2.model.Customer;
+import org.smart4j.chapter2.service.CustomerService;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 监控指标(Prometheus文本格式)
+ *      SQL耗时分位数(p50/p99/p999)、行数、错误数,以及连接池、ConnectionScope、缓存、DbExecutor和启动状态
+ */
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        resp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        StringBuilder out = new StringBuilder(4096);
+        writeSqlMetrics(out);
+        writeShardMetrics(out);
+        writePoolMetrics(out);
+        List<CacheStats> cacheStatsList = new ArrayList<CacheStats>();
+        if (CustomerService.getCacheStats() != null) {
+            cacheStatsList.add(CustomerService.getCacheStats());
+        }
+        QueryCache queryCache = DatabaseHelper.getQueryCache();
+        if (queryCache != null) {
+            cacheStatsList.add(queryCache.getStats());
+        }
+        writeCacheStats(out, cacheStatsList);
+        writeLoaderMetrics(out);
+        writeWriteBehindMetrics(out);
+        writeExecutorMetrics(out);
+        writeStartupMetrics(out);
+        PrintWriter writer = resp.getWriter();
+        writer.write(out.toString());
+        writer.flush();
+    }
+
+    private static void writeSqlMetrics(StringBuilder out) {
+        out.append("# HELP smart4j_sql_duration_seconds SQL execution time by normalized statement\n");
+        out.append("# TYPE smart4j_sql_duration_seconds summary\n");
+        StringBuilder rows = new StringBuilder();
+        StringBuilder errors = new StringBuilder();
+        for (StatementMetrics metrics : SqlMetrics.getStatementMetricsList()) {
+            String label = "sql=\"" + escape(metrics.getSql()) + "\"";
+            LatencyHistogram latency = metrics.getLatency();
+            for (double quantile : QUANTILES) {
+                out.append("smart4j_sql_duration_seconds{").append(label)
+                        .append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(toSeconds(latency.getPercentile(quantile))).append('\n');
+            }
+            out.append("smart4j_sql_duration_seconds_sum{").append(label).append("} ")
+                    .append(toSeconds(latency.getSum())).append('\n');
+            out.append("smart4j_sql_duration_seconds_count{").append(label).append("} ")
+                    .append(latency.getCount()).append('\n');
+            rows.append("smart4j_sql_rows_total{").append(label).append("} ").append(metrics.getRows()).append('\n');
+            errors.append("smart4j_sql_errors_total{").append(label).append("} ").append(metrics.getErrors()).append('\n');
+        }
+        out.append("# HELP smart4j_sql_rows_total Rows returned or affected\n");
+        out.append("# TYPE smart4j_sql_rows_total counter\n");
+        out.append(rows);
+        out.append("# HELP smart4j_sql_errors_total Failed executions\n");
+        out.append("# TYPE smart4j_sql_errors_total counter\n");
+        out.append(errors);
+        counter(out, "smart4j_sql_slow_queries_total", SlowQueryLog.getTotalRecorded());
+    }
+
+    private static void writeShardMetrics(StringBuilder out) {
+        ShardRouter shardRouter = DatabaseHelper.getShardRouter();
+        if (shardRouter == null) {
+            return;
+        }
+        out.append("# HELP smart4j_shard_duration_seconds SQL execution time by shard\n");
+        out.append("# TYPE smart4j_shard_duration_seconds summary\n");
+        for (int i = 0; i < shardRouter.getShardCount(); i++) {
+            String label = "shard=\"" + (i + 1) + "\"";
+            LatencyHistogram latency = shardRouter.getLatency(i);
+            for (double quantile : QUANTILES) {
+                out.append("smart4j_shard_duration_seconds{").append(label)
+                        .append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(toSeconds(latency.getPercentile(quantile))).append('\n');
+            }
+            out.append("smart4j_shard_duration_seconds_sum{").append(label).append("} ")
+                    .append(toSeconds(latency.getSum())).append('\n');
+            out.append("smart4j_shard_duration_seconds_count{").append(label).append("} ")
+                    .append(latency.getCount()).append('\n');
+        }
+    }
+
+    private static void writePoolMetrics(StringBuilder out) {
+        PoolMetrics pool = DatabaseHelper.getPoolMetrics();
+        gauge(out, "smart4j_pool_active_connections", pool.getActive());
+        gauge(out, "smart4j_pool_idle_connections", pool.getIdle());
+        gauge(out, "smart4j_pool_waiting_threads", pool.getWaiting());
+        gauge(out, "smart4j_pool_max_connections", pool.getMaxTotal());
+        counter(out, "smart4j_pool_borrowed_total", pool.getBorrowedCount());
+        gauge(out, "smart4j_pool_borrow_wait_mean_seconds", pool.getMeanBorrowWaitMillis() / 1000.0);
+        gauge(out, "smart4j_pool_borrow_wait_max_seconds", pool.getMaxBorrowWaitMillis() / 1000.0);
+        List<PoolMetrics> replicaMetricsList = DatabaseHelper.getReplicaPoolMetrics();
+        if (!replicaMetricsList.isEmpty()) {
+            out.append("# TYPE smart4j_replica_pool_active_connections gauge\n");
+            for (int i = 0; i < replicaMetricsList.size(); i++) {
+                out.append("smart4j_replica_pool_active_connections{replica=\"").append(i + 1).append("\"} ")
+                        .append(replicaMetricsList.get(i).getActive()).append('\n');
+            }
+            out.append("# TYPE smart4j_replica_pool_waiting_threads gauge\n");
+            for (int i = 0; i < replicaMetricsList.size(); i++) {
+                out.append("smart4j_replica_pool_waiting_threads{replica=\"").append(i + 1).append("\"} ")
+                        .append(replicaMetricsList.get(i).getWaiting()).append('\n');
+            }
+        }
+        counter(out, "smart4j_connection_scope_borrowed_total", ConnectionScope.getTotalBorrowed());
+        counter(out, "smart4j_connection_scope_returned_total", ConnectionScope.getTotalReturned());
+        counter(out, "smart4j_connection_scope_leaked_total", ConnectionScope.getTotalLeaked());
+        gauge(out, "smart4j_connection_scope_outstanding", ConnectionScope.getOutstanding());
+    }
+
+    /**
+     * 同一指标的各缓存数据需要连续输出
+     */
+    private static void writeCacheStats(StringBuilder out, List<CacheStats> statsList) {
+        String[] names = {"hits_total", "misses_total", "evictions_total", "expirations_total",
+                "invalidations_total", "size", "max_size"};
+        for (int i = 0; i < names.length; i++) {
+            String name = "smart4j_cache_" + names[i];
+            out.append("# TYPE ").append(name).append(i < 5 ? " counter\n" : " gauge\n");
+            for (CacheStats stats : statsList) {
+                long[] values = {stats.getHits(), stats.getMisses(), stats.getEvictions(), stats.getExpirations(),
+                        stats.getInvalidations(), stats.getSize(), stats.getMaxSize()};
+                out.append(name).append("{cache=\"").append(escape(stats.getName())).append("\"} ")
+                        .append(values[i]).append('\n');
+            }
+        }
+    }
+
+    private static void writeLoaderMetrics(StringBuilder out) {
+        BatchLoader<Long, Customer> loader = CustomerService.getCustomerLoader();
+        counter(out, "smart4j_customer_loader_batches_total", loader.getBatchCount());
+        counter(out, "smart4j_customer_loader_keys_total", loader.getLoadedKeyCount());
+        counter(out, "smart4j_customer_loader_shared_total", loader.getSharedLoadCount());
+    }
+
+    private static void writeWriteBehindMetrics(StringBuilder out) {
+        WriteBehindBuffer buffer = CustomerService.getCustomerWriteBehind();
+        if (buffer == null) {
+            return;
+        }
+        String prefix = "smart4j_write_behind_" + buffer.getName();
+        counter(out, prefix + "_submitted_total", buffer.getSubmittedCount());
+        counter(out, prefix + "_coalesced_total", buffer.getCoalescedCount());
+        counter(out, prefix + "_written_total", buffer.getWrittenCount());
+        counter(out, prefix + "_batches_total", buffer.getBatchCount());
+        counter(out, prefix + "_failures_total", buffer.getFailureCount());
+        gauge(out, prefix + "_pending", buffer.getPendingCount());
+    }
+
+    private static void writeExecutorMetrics(StringBuilder out) {
+        gauge(out, "smart4j_db_executor_active_threads", DbExecutor.getActiveCount());
+        gauge(out, "smart4j_db_executor_pool_size", DbExecutor.getPoolSize());
+        gauge(out, "smart4j_db_executor_queue_size", DbExecutor.getQueueSize());
+    }
+
+    /**
+     * 启动状态:就绪前smart4j_startup_ready为0;未就绪或还没有业务请求时不输出对应的耗时
+     */
+    private static void writeStartupMetrics(StringBuilder out) {
+        gauge(out, "smart4j_startup_ready", StartupMetrics.isReady() ? 1 : 0);
+        counter(out, "smart4j_startup_warm_up_attempts_total", StartupMetrics.getWarmUpAttempts());
+        if (StartupMetrics.getReadyNanos() >= 0) {
+            gauge(out, "smart4j_startup_ready_seconds", toSeconds(StartupMetrics.getReadyNanos()));
+            gauge(out, "smart4j_startup_warm_up_seconds", toSeconds(StartupMetrics.getWarmUpNanos()));
+            gauge(out, "smart4j_startup_prepared_statements", StartupMetrics.getPreparedStatements());
+        }
+        if (StartupMetrics.getFirstRequestNanos() >= 0) {
+            gauge(out, "smart4j_startup_first_request_seconds", toSeconds(StartupMetrics.getFirstRequestNanos()));
+        }
+    }
+
+    private static void gauge(StringBuilder out, String name, double value) {
+        out.append("# TYPE ").append(name).append(" gauge\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(name).append(" counter\n").append(name).append(' ').append(value).append('\n');
+    }
+
+    private static double toSeconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    /**
+     * 转义标签值中的反斜杠、双引号和换行
+     */
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                escaped.append('\\').append(c);
+            } else if (c == '\n') {
+                escaped.append("\\n");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
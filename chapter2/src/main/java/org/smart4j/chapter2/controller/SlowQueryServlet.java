@@ -0,0 +1,56 @@
+package org.smart4j.chapter2.controller;
+
+import org.smart4j.chapter2.metrics.SlowQuery;
+import org.smart4j.chapter2.metrics.SlowQueryLog;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 慢查询日志
+ *      默认由新到旧输出,sort=duration时按耗时由高到低输出
+ */
+@WebServlet("/slow_queries")
+public class SlowQueryServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+            throws ServletException, IOException {
+        List<SlowQuery> slowQueries = SlowQueryLog.getSlowQueries();
+        if ("duration".equals(req.getParameter("sort"))) {
+            Collections.sort(slowQueries, new Comparator<SlowQuery>() {
+                @Override
+                public int compare(SlowQuery q1, SlowQuery q2) {
+                    return Long.compare(q2.getDurationNanos(), q1.getDurationNanos());
+                }
+            });
+        }
+        resp.setContentType("text/plain; charset=UTF-8");
+        PrintWriter writer = resp.getWriter();
+        writer.printf("# threshold=%dms recorded=%d buffered=%d%n",
+                SlowQueryLog.getThresholdMillis(), SlowQueryLog.getTotalRecorded(), slowQueries.size());
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        for (SlowQuery slowQuery : slowQueries) {
+            writer.printf("%n%s %.3fms rows=%d%s thread=%s caller=%s%n",
+                    dateFormat.format(new Date(slowQuery.getTimestamp())), slowQuery.getDurationMillis(),
+                    slowQuery.getRows(), slowQuery.isError() ? " ERROR" : "",
+                    slowQuery.getThread(), slowQuery.getCaller());
+            writer.println(slowQuery.getSql());
+            writer.println("params: " + slowQuery.getParams());
+            if (slowQuery.getPlan() != null) {
+                writer.print("plan:\n" + slowQuery.getPlan());
+            }
+        }
+        writer.flush();
+    }
+}
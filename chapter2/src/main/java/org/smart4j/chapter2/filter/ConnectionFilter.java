@@ -0,0 +1,79 @@
+package org.smart4j.chapter2.filter;
+
+import org.smart4j.chapter2.helper.ConnectionScope;
+import org.smart4j.chapter2.metrics.StartupMetrics;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * 请求级Connection管理
+ *      每个请求开启一个ConnectionScope,请求结束(包括抛出异常)时将Connection归还连接池,
+ *      避免Connection被Tomcat工作线程长期占用
+ *
+ *      同时记录启动后第一个业务请求(不包括/health、/metrics探测)的响应时间,异步请求在完成时记录
+ */
+@WebFilter(urlPatterns = "/*", asyncSupported = true)
+public class ConnectionFilter implements Filter {
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (!StartupMetrics.isFirstRequestPending() || isProbe(request)) {
+            try (ConnectionScope scope = ConnectionScope.open()) {
+                chain.doFilter(request, response);
+            }
+            return;
+        }
+        final long begin = System.nanoTime();
+        final String uri = ((HttpServletRequest) request).getRequestURI();
+        try (ConnectionScope scope = ConnectionScope.open()) {
+            chain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        StartupMetrics.recordFirstRequest(uri, begin);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                StartupMetrics.recordFirstRequest(uri, begin);
+            }
+        }
+    }
+
+    private static boolean isProbe(ServletRequest request) {
+        String path = ((HttpServletRequest) request).getServletPath();
+        return "/health".equals(path) || "/metrics".equals(path);
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,15 @@
+package org.smart4j.chapter2.helper;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量加载函数
+ */
+public interface BatchLoadFunction<K, V> {
+
+    /**
+     * 一次加载多个key(keys不重复),不存在的key在结果中没有对应的条目
+     */
+    Map<K, V> loadAll(List<K> keys);
+}
@@ -0,0 +1,223 @@
+package org.smart4j.chapter2.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 合并加载器(DataLoader)
+ *      并发的单个load合并为一次loadAll:第一个调用者成为本批的发起者,等待windowMicros或凑满maxBatchSize个key后
+ *      在自己的线程中执行loadAll,其余调用者等待结果;同一个key正在加载时,后来的调用者直接等待同一个结果(single-flight)
+ *
+ *      没有其他调用者正在load,且上一个窗口内也没有其他线程调用过load时(无竞争),发起者不等待窗口直接执行,
+ *      避免给每次单独的加载增加windowMicros的延迟
+ *
+ *      windowMicros为0时不等待,只合并正在加载的相同key
+ */
+public final class BatchLoader<K, V> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchLoader.class);
+
+    private final BatchLoadFunction<K, V> function;
+    private final long windowNanos;
+    private final int maxBatchSize;
+
+    // 正在加载(已加入批次但尚未返回)的key
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlightMap = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    // 正在收集key的批次(由发起者关闭)
+    private Batch<K, V> current;
+
+    // 正在执行load的调用者数
+    private final AtomicInteger activeLoads = new AtomicInteger();
+
+    // 最近一次load的开始时间和线程id(只用于判断是否有竞争,不要求两者一致)
+    private volatile long lastLoadNanos;
+    private volatile long lastLoadThreadId = -1;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder loadedKeys = new LongAdder();
+    private final LongAdder sharedLoads = new LongAdder();
+
+    public BatchLoader(BatchLoadFunction<K, V> function, long windowMicros, int maxBatchSize) {
+        this.function = function;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, windowMicros));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.lastLoadNanos = System.nanoTime() - windowNanos;
+    }
+
+    /**
+     * 加载key对应的值(不存在时返回null)
+     */
+    public V load(K key) {
+        long now = System.nanoTime();
+        long threadId = Thread.currentThread().getId();
+        boolean contended = activeLoads.incrementAndGet() > 1
+                || (lastLoadThreadId != threadId && now - lastLoadNanos < windowNanos);
+        lastLoadNanos = now;
+        lastLoadThreadId = threadId;
+        try {
+            CompletableFuture<V> future = inFlightMap.get(key);
+            if (future == null) {
+                CompletableFuture<V> created = new CompletableFuture<V>();
+                future = inFlightMap.putIfAbsent(key, created);
+                if (future == null) {
+                    return enqueue(key, created, contended);
+                }
+            }
+            sharedLoads.increment();
+            return await(future);
+        } finally {
+            activeLoads.decrementAndGet();
+        }
+    }
+
+    /**
+     * 放弃key正在进行的加载:之后的load重新查询(写入后调用,避免读到写入前发起的加载结果)
+     */
+    public void forget(K key) {
+        inFlightMap.remove(key);
+    }
+
+    /**
+     * 执行过的loadAll次数
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * 通过loadAll加载的key数
+     */
+    public long getLoadedKeyCount() {
+        return loadedKeys.sum();
+    }
+
+    /**
+     * 直接复用其他调用者正在进行的加载的次数
+     */
+    public long getSharedLoadCount() {
+        return sharedLoads.sum();
+    }
+
+    private V enqueue(K key, CompletableFuture<V> future, boolean contended) {
+        Batch<K, V> batch;
+        boolean leader = false;
+        synchronized (this) {
+            if (current == null) {
+                current = new Batch<K, V>(maxBatchSize);
+                leader = true;
+            }
+            batch = current;
+            batch.add(key, future);
+            if (batch.size() >= maxBatchSize) {
+                // 凑满一批,唤醒发起者立即执行
+                current = null;
+                batch.closed = true;
+                notifyAll();
+            }
+        }
+        if (leader) {
+            awaitWindow(batch, contended ? windowNanos : 0);
+            dispatch(batch);
+        }
+        return await(future);
+    }
+
+    /**
+     * 发起者等待收集窗口结束或批次凑满
+     */
+    private void awaitWindow(Batch<K, V> batch, long windowNanos) {
+        synchronized (this) {
+            long deadline = System.nanoTime() + windowNanos;
+            long remaining = windowNanos;
+            try {
+                while (!batch.closed && remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!batch.closed) {
+                current = null;
+                batch.closed = true;
+            }
+        }
+    }
+
+    private void dispatch(Batch<K, V> batch) {
+        batches.increment();
+        loadedKeys.add(batch.keys.size());
+        try {
+            Map<K, V> valueMap = function.loadAll(Collections.unmodifiableList(batch.keys));
+            for (int i = 0; i < batch.keys.size(); i++) {
+                K key = batch.keys.get(i);
+                complete(key, batch.futures.get(i), valueMap.get(key), null);
+            }
+        } catch (Throwable e) {
+            // 任何异常都必须完成全部等待者,否则它们会一直阻塞
+            LOGGER.error("batch load failure", e);
+            for (int i = 0; i < batch.keys.size(); i++) {
+                complete(batch.keys.get(i), batch.futures.get(i), null, e);
+            }
+        }
+    }
+
+    private void complete(K key, CompletableFuture<V> future, V value, Throwable error) {
+        // 先移出再完成:完成后到达的调用者不会再复用这次加载
+        inFlightMap.remove(key, future);
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            future.complete(value);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 一批待加载的key
+     */
+    private static final class Batch<K, V> {
+
+        private final List<K> keys;
+        private final List<CompletableFuture<V>> futures;
+        private boolean closed;
+
+        private Batch(int capacity) {
+            this.keys = new ArrayList<K>(capacity);
+            this.futures = new ArrayList<CompletableFuture<V>>(capacity);
+        }
+
+        private void add(K key, CompletableFuture<V> future) {
+            keys.add(key);
+            futures.add(future);
+        }
+
+        private int size() {
+            return keys.size();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.smart4j.chapter2.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接作用域
+ *      在作用域内第一次访问数据库时才从连接池借出Connection(由DatabaseHelper.getConnection()完成),
+ *      作用域结束时(包括异常退出)保证将Connection归还连接池
+ *
+ *      try (ConnectionScope scope = ConnectionScope.open()) {
+ *          customerService.getCustomerList();
+ *      }
+ *
+ *      作用域可嵌套,只有最外层作用域关闭时才归还Connection
+ */
+public final class ConnectionScope implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConnectionScope.class);
+
+    // 当前线程的最外层作用域
+    private static final ThreadLocal<ConnectionScope> SCOPE_HOLDER = new ThreadLocal<ConnectionScope>();
+
+    // 全局计数:借出/归还/泄漏的Connection数量
+    private static final AtomicLong TOTAL_BORROWED = new AtomicLong();
+    private static final AtomicLong TOTAL_RETURNED = new AtomicLong();
+    private static final AtomicLong TOTAL_LEAKED = new AtomicLong();
+
+    // 是否为最外层作用域(嵌套作用域关闭时不归还Connection)
+    private final boolean outermost;
+
+    // 本作用域(即本次请求)内的计数
+    private int borrowed;
+    private int returned;
+    private int leaked;
+
+    private boolean closed;
+
+    private ConnectionScope(boolean outermost) {
+        this.outermost = outermost;
+    }
+
+    /**
+     * 开启作用域
+     */
+    public static ConnectionScope open() {
+        if (SCOPE_HOLDER.get() != null) {
+            return new ConnectionScope(false);
+        }
+        ConnectionScope scope = new ConnectionScope(true);
+        SCOPE_HOLDER.set(scope);
+        return scope;
+    }
+
+    /**
+     * 获取当前线程的作用域(不存在时返回null)
+     */
+    public static ConnectionScope current() {
+        return SCOPE_HOLDER.get();
+    }
+
+    /**
+     * 关闭作用域,归还当前线程的Connection
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!outermost) {
+            return;
+        }
+        try {
+            DatabaseHelper.closeConnection();
+        } catch (RuntimeException e) {
+            // closeConnection已记录泄漏,这里不能让归还失败掩盖业务异常
+            LOGGER.error("release connection failure", e);
+        } finally {
+            SCOPE_HOLDER.remove();
+        }
+        if (leaked > 0 || borrowed != returned) {
+            LOGGER.warn("connection scope finished: borrowed={}, returned={}, leaked={}", borrowed, returned, leaked);
+        } else {
+            LOGGER.debug("connection scope finished: borrowed={}, returned={}", borrowed, returned);
+        }
+    }
+
+    public int getBorrowed() {
+        return borrowed;
+    }
+
+    public int getReturned() {
+        return returned;
+    }
+
+    public int getLeaked() {
+        return leaked;
+    }
+
+    /**
+     * 记录借出Connection
+     */
+    static void onBorrow() {
+        TOTAL_BORROWED.incrementAndGet();
+        ConnectionScope scope = SCOPE_HOLDER.get();
+        if (scope != null) {
+            scope.borrowed++;
+        } else {
+            LOGGER.warn("connection borrowed outside of ConnectionScope, it will not be returned automatically");
+        }
+    }
+
+    /**
+     * 记录归还Connection
+     */
+    static void onReturn() {
+        TOTAL_RETURNED.incrementAndGet();
+        ConnectionScope scope = SCOPE_HOLDER.get();
+        if (scope != null) {
+            scope.returned++;
+        }
+    }
+
+    /**
+     * 记录无法归还的Connection
+     */
+    static void onLeak() {
+        TOTAL_LEAKED.incrementAndGet();
+        ConnectionScope scope = SCOPE_HOLDER.get();
+        if (scope != null) {
+            scope.leaked++;
+        }
+    }
+
+    public static long getTotalBorrowed() {
+        return TOTAL_BORROWED.get();
+    }
+
+    public static long getTotalReturned() {
+        return TOTAL_RETURNED.get();
+    }
+
+    public static long getTotalLeaked() {
+        return TOTAL_LEAKED.get();
+    }
+
+    /**
+     * 当前借出未归还的Connection数量
+     */
+    public static long getOutstanding() {
+        return TOTAL_BORROWED.get() - TOTAL_RETURNED.get() - TOTAL_LEAKED.get();
+    }
+}
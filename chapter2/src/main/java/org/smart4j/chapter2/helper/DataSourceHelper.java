@@ -0,0 +1,158 @@
+package org.smart4j.chapter2.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.util.StringUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 数据源助手类
+ *      根据配置文件创建DBCP连接池,配置项以prefix开头,例如prefix为"jdbc"时:
+ *
+ *      jdbc.driver / jdbc.url / jdbc.username / jdbc.password / jdbc.connectionProperties(k1=v1;k2=v2)
+ *      jdbc.pool.initialSize / jdbc.pool.maxTotal / jdbc.pool.maxIdle / jdbc.pool.minIdle / jdbc.pool.maxWaitMillis
+ *      jdbc.pool.testOnBorrow / jdbc.pool.testWhileIdle / jdbc.pool.validationQuery / jdbc.pool.validationQueryTimeout
+ *      jdbc.pool.timeBetweenEvictionRunsMillis / jdbc.pool.minEvictableIdleTimeMillis / jdbc.pool.maxConnLifetimeMillis
+ *      jdbc.pool.poolPreparedStatements / jdbc.pool.maxOpenPreparedStatements / jdbc.pool.queryTimeoutSeconds
+ *
+ *      连接池大小、maxWaitMillis及空闲检测参数可以通过updateDataSource在线调整;
+ *      配置从已校验的Config快照读取(数值类型不合法的配置在加载时已被拒绝)
+ */
+public final class DataSourceHelper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataSourceHelper.class);
+
+    /**
+     * 创建继承上级配置的连接池(用于从库、分片等):
+     *      先复制parentPrefix.*的配置(不包括其他从库/分片的配置),再用prefix.*的配置覆盖
+     */
+    public static PooledDataSource createDataSource(Config conf, String parentPrefix, String prefix) {
+        return createDataSource(inherit(conf, parentPrefix, prefix), prefix);
+    }
+
+    /**
+     * 在线调整连接池(parentPrefix为null时不继承上级配置):只修改连接池大小、等待超时和空闲检测参数,
+     *      已借出的Connection不受影响,缩小后超出的Connection在归还或空闲检测时关闭
+     */
+    public static void updateDataSource(PooledDataSource dataSource, Config conf, String parentPrefix, String prefix) {
+        if (parentPrefix != null) {
+            conf = inherit(conf, parentPrefix, prefix);
+        }
+        setPoolSettings(dataSource, conf, prefix + ".pool.");
+    }
+
+    /**
+     * 预热连接池:同时借出minIdle个(至少1个,不超过maxTotal)Connection,提前完成驱动加载和建立连接、认证,
+     *      在每个Connection上预编译statements(poolPreparedStatements开启时关闭后留在该Connection的语句缓存中),
+     *      然后全部归还为空闲Connection;预编译失败的语句只记录警告
+     *
+     * @return 预编译成功的语句数(所有Connection合计)
+     * @throws SQLException 无法获取Connection
+     */
+    public static int warmUp(PooledDataSource dataSource, Collection<String> statements) throws SQLException {
+        int maxTotal = dataSource.getMaxTotal();
+        int count = Math.max(1, maxTotal > 0 ? Math.min(dataSource.getMinIdle(), maxTotal) : dataSource.getMinIdle());
+        List<Connection> connList = new ArrayList<Connection>(count);
+        int prepared = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                connList.add(dataSource.getConnection());
+            }
+            for (Connection conn : connList) {
+                for (String sql : statements) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        prepared++;
+                    } catch (SQLException e) {
+                        LOGGER.warn("prepare statement failure: {} ({})", sql, e.getMessage());
+                    }
+                }
+            }
+        } finally {
+            for (Connection conn : connList) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    LOGGER.warn("return connection failure", e);
+                }
+            }
+        }
+        return prepared;
+    }
+
+    private static Config inherit(Config conf, String parentPrefix, String prefix) {
+        Properties childProps = new Properties();
+        for (String key : conf.keySet()) {
+            if (key.startsWith(parentPrefix + ".") && !isGroupKey(key, parentPrefix)) {
+                childProps.setProperty(prefix + key.substring(parentPrefix.length()), conf.getString(key));
+            }
+        }
+        for (String key : conf.keySet()) {
+            if (key.startsWith(prefix + ".")) {
+                childProps.setProperty(key, conf.getString(key));
+            }
+        }
+        return new Config(childProps, conf.getVersion());
+    }
+
+    private static boolean isGroupKey(String key, String parentPrefix) {
+        return key.startsWith(parentPrefix + ".replica.") || key.startsWith(parentPrefix + ".shard.");
+    }
+
+    /**
+     * 创建连接池
+     */
+    public static PooledDataSource createDataSource(Config conf, String prefix) {
+        PooledDataSource dataSource = new PooledDataSource();
+        dataSource.setDriverClassName(conf.getString(prefix + ".driver", null));
+        dataSource.setUrl(conf.getString(prefix + ".url", null));
+        dataSource.setUsername(conf.getString(prefix + ".username", null));
+        dataSource.setPassword(conf.getString(prefix + ".password", null));
+        String connectionProperties = conf.getString(prefix + ".connectionProperties");
+        if (StringUtil.isNotEmpty(connectionProperties)) {
+            dataSource.setConnectionProperties(connectionProperties);
+        }
+
+        // 连接池大小、连接校验与空闲回收
+        String pool = prefix + ".pool.";
+        dataSource.setInitialSize(conf.getInt(pool + "initialSize", 0));
+        setPoolSettings(dataSource, conf, pool);
+        String validationQuery = conf.getString(pool + "validationQuery");
+        if (StringUtil.isNotEmpty(validationQuery)) {
+            dataSource.setValidationQuery(validationQuery);
+            dataSource.setValidationQueryTimeout(conf.getInt(pool + "validationQueryTimeout", -1));
+        }
+        dataSource.setMaxConnLifetimeMillis(conf.getLong(pool + "maxConnLifetimeMillis", -1));
+        // 每条语句的超时时间(Statement.setQueryTimeout),0表示不限制
+        int queryTimeoutSeconds = conf.getInt(pool + "queryTimeoutSeconds", 0);
+        if (queryTimeoutSeconds > 0) {
+            dataSource.setDefaultQueryTimeout(queryTimeoutSeconds);
+        }
+
+        // 每个Connection缓存PreparedStatement,相同SQL不再重复预编译
+        dataSource.setPoolPreparedStatements(conf.getBoolean(pool + "poolPreparedStatements", true));
+        dataSource.setMaxOpenPreparedStatements(conf.getInt(pool + "maxOpenPreparedStatements", 100));
+        return dataSource;
+    }
+
+    /**
+     * 可以在连接池创建后修改的参数(DBCP直接作用于底层对象池)
+     */
+    private static void setPoolSettings(PooledDataSource dataSource, Config conf, String pool) {
+        dataSource.setMaxTotal(conf.getInt(pool + "maxTotal", 8));
+        dataSource.setMaxIdle(conf.getInt(pool + "maxIdle", 8));
+        dataSource.setMinIdle(conf.getInt(pool + "minIdle", 0));
+        dataSource.setMaxWaitMillis(conf.getLong(pool + "maxWaitMillis", -1));
+        dataSource.setTestOnBorrow(conf.getBoolean(pool + "testOnBorrow", true));
+        dataSource.setTestWhileIdle(conf.getBoolean(pool + "testWhileIdle", false));
+        dataSource.setTimeBetweenEvictionRunsMillis(conf.getLong(pool + "timeBetweenEvictionRunsMillis", -1));
+        dataSource.setMinEvictableIdleTimeMillis(conf.getLong(pool + "minEvictableIdleTimeMillis", 1000L * 60 * 30));
+    }
+}
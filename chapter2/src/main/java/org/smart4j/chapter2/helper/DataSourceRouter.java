@@ -0,0 +1,248 @@
+package org.smart4j.chapter2.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.util.SqlUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离数据源路由
+ *      一个主库(jdbc.*)和N个从库(jdbc.replica.1.*、jdbc.replica.2.* ...),从库未配置的项沿用主库配置:
+ *
+ *      jdbc.replica.1.url=jdbc:mysql://replica1:3306/demo
+ *      jdbc.replica.balance=round_robin | least_busy
+ *      jdbc.replica.readYourWritesMillis=1000
+ *
+ *      写入和事务由调用方路由到主库;读取时从从库中选择一个,读取的表在readYourWritesMillis内写入过时读主库,
+ *      保证能读到刚写入的数据(readYourWritesMillis应大于从库的复制延迟)
+ *
+ *      写入时间按表在进程内记录,不绑定线程:异步请求在任意线程执行,POST之后重定向的GET通常不在同一个线程,
+ *      刚写入的表仍然读主库,从库的旧数据不会进入客户缓存、查询缓存,也不会对应到按主库修改计数生成的ETag;
+ *      无法识别表名的写入(如SQL脚本)使所有读取在窗口期内读主库
+ */
+public final class DataSourceRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataSourceRouter.class);
+
+    /**
+     * 从库负载均衡策略
+     */
+    public enum Balance {
+
+        // 轮询
+        ROUND_ROBIN,
+
+        // 选择活跃和等待Connection最少的从库
+        LEAST_BUSY
+    }
+
+    private static final String REPLICA_PREFIX = ".replica.";
+
+    private final PooledDataSource primary;
+    private final List<PooledDataSource> replicas;
+    private final Balance balance;
+    private final long readYourWritesNanos;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    // 最多缓存的SQL -> 表名解析结果
+    private static final int MAX_STATEMENTS = 1000;
+
+    // 表名 -> 最近一次写入的时间(System.nanoTime)
+    private final ConcurrentMap<String, Long> lastWriteMap = new ConcurrentHashMap<String, Long>();
+
+    // 最近一次写入任意表的时间,以及最近一次无法识别表名的写入的时间
+    private volatile long lastWriteNanos;
+    private volatile long lastWriteAllNanos;
+
+    // 原始SQL -> 读取的表 / 写入的表(无法识别时为空数组 / 空字符串)
+    private final ConcurrentMap<String, String[]> readTablesMap = new ConcurrentHashMap<String, String[]>();
+    private final ConcurrentMap<String, String> writeTableMap = new ConcurrentHashMap<String, String>();
+
+    public DataSourceRouter(PooledDataSource primary, List<PooledDataSource> replicas, Balance balance,
+                            long readYourWritesMillis) {
+        this.primary = primary;
+        this.replicas = Collections.unmodifiableList(new ArrayList<PooledDataSource>(replicas));
+        this.balance = balance;
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+        // 初始为已过期
+        this.lastWriteNanos = System.nanoTime() - readYourWritesNanos;
+        this.lastWriteAllNanos = lastWriteNanos;
+    }
+
+    /**
+     * 根据配置创建路由(没有配置从库时所有读写都使用主库)
+     */
+    public static DataSourceRouter create(Config conf, String prefix) {
+        PooledDataSource primary = DataSourceHelper.createDataSource(conf, prefix);
+        List<PooledDataSource> replicas = new ArrayList<PooledDataSource>();
+        for (int i = 1; conf.containsKey(prefix + REPLICA_PREFIX + i + ".url"); i++) {
+            String replicaPrefix = prefix + REPLICA_PREFIX + i;
+            replicas.add(DataSourceHelper.createDataSource(conf, prefix, replicaPrefix));
+        }
+        Balance balance = Balance.valueOf(conf.getString(prefix + REPLICA_PREFIX + "balance",
+                Balance.ROUND_ROBIN.name()).toUpperCase());
+        long readYourWritesMillis = conf.getLong(prefix + REPLICA_PREFIX + "readYourWritesMillis", 1000);
+        return new DataSourceRouter(primary, replicas, balance, readYourWritesMillis);
+    }
+
+    public PooledDataSource getPrimary() {
+        return primary;
+    }
+
+    public List<PooledDataSource> getReplicas() {
+        return replicas;
+    }
+
+    public boolean hasReplicas() {
+        return !replicas.isEmpty();
+    }
+
+    /**
+     * 记录可能写入任意表的操作(用于read-your-writes)
+     */
+    public void markWrite() {
+        if (readYourWritesNanos > 0 && hasReplicas()) {
+            long now = System.nanoTime();
+            lastWriteAllNanos = now;
+            lastWriteNanos = now;
+        }
+    }
+
+    /**
+     * 记录写入语句(用于read-your-writes)
+     */
+    public void markWrite(String sql) {
+        if (readYourWritesNanos <= 0 || !hasReplicas()) {
+            return;
+        }
+        String table = getWriteTable(sql);
+        if (table.isEmpty()) {
+            markWrite();
+            return;
+        }
+        long now = System.nanoTime();
+        lastWriteMap.put(table, now);
+        lastWriteNanos = now;
+    }
+
+    /**
+     * 选择读取使用的数据源(不知道读取哪些表):没有从库或窗口期内写入过任意表时返回主库
+     */
+    public PooledDataSource getReadDataSource() {
+        if (replicas.isEmpty() || isRecent(lastWriteNanos)) {
+            return primary;
+        }
+        return selectReplica();
+    }
+
+    /**
+     * 选择执行查询语句的数据源:没有从库或窗口期内写入过查询的表时返回主库
+     */
+    public PooledDataSource getReadDataSource(String sql) {
+        if (replicas.isEmpty()) {
+            return primary;
+        }
+        // 窗口期内没有任何写入时不需要解析SQL
+        if (!isRecent(lastWriteNanos)) {
+            return selectReplica();
+        }
+        String[] tables = getReadTables(sql);
+        if (tables.length == 0 || isRecent(lastWriteAllNanos)) {
+            return primary;
+        }
+        for (String table : tables) {
+            Long lastWrite = lastWriteMap.get(table);
+            if (lastWrite != null && isRecent(lastWrite)) {
+                return primary;
+            }
+        }
+        return selectReplica();
+    }
+
+    private PooledDataSource selectReplica() {
+        if (replicas.size() == 1) {
+            return replicas.get(0);
+        }
+        if (balance == Balance.LEAST_BUSY) {
+            return selectLeastBusy();
+        }
+        return replicas.get((nextReplica.getAndIncrement() & Integer.MAX_VALUE) % replicas.size());
+    }
+
+    private boolean isRecent(long writeNanos) {
+        return System.nanoTime() - writeNanos < readYourWritesNanos;
+    }
+
+    private String[] getReadTables(String sql) {
+        String[] tables = readTablesMap.get(sql);
+        if (tables == null) {
+            Set<String> tableSet = SqlUtil.getReadTables(SqlUtil.normalize(sql));
+            tables = tableSet.toArray(new String[tableSet.size()]);
+            if (readTablesMap.size() < MAX_STATEMENTS) {
+                readTablesMap.putIfAbsent(sql, tables);
+            }
+        }
+        return tables;
+    }
+
+    private String getWriteTable(String sql) {
+        String table = writeTableMap.get(sql);
+        if (table == null) {
+            table = SqlUtil.getWriteTable(SqlUtil.normalize(sql));
+            if (table == null) {
+                table = "";
+            }
+            if (writeTableMap.size() < MAX_STATEMENTS) {
+                writeTableMap.putIfAbsent(sql, table);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 负载相同时从轮询位置开始选择,避免总是选中第一个从库
+     */
+    private PooledDataSource selectLeastBusy() {
+        int size = replicas.size();
+        int start = (nextReplica.getAndIncrement() & Integer.MAX_VALUE) % size;
+        PooledDataSource selected = null;
+        int minLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            PooledDataSource replica = replicas.get((start + i) % size);
+            int load = replica.getNumActive() + replica.getNumWaiters();
+            if (load < minLoad) {
+                minLoad = load;
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 关闭全部连接池
+     */
+    public void close() {
+        closeQuietly(primary);
+        for (PooledDataSource replica : replicas) {
+            closeQuietly(replica);
+        }
+    }
+
+    private static void closeQuietly(PooledDataSource dataSource) {
+        try {
+            dataSource.close();
+        } catch (Exception e) {
+            LOGGER.error("close data source failure", e);
+        }
+    }
+}
@@ -1,25 +1,42 @@
 package org.smart4j.chapter2.helper;
 
-import org.apache.commons.dbcp2.BasicDataSource;
 import org.apache.commons.dbutils.QueryRunner;
-import org.apache.commons.dbutils.handlers.BeanHandler;
-import org.apache.commons.dbutils.handlers.BeanListHandler;
 import org.apache.commons.dbutils.handlers.MapListHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.cache.QueryCache;
+import org.smart4j.chapter2.cache.TableChangeCounter;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.config.ConfigHelper;
+import org.smart4j.chapter2.config.ConfigListener;
+import org.smart4j.chapter2.metrics.SlowQueryLog;
+import org.smart4j.chapter2.metrics.SqlMetrics;
 import org.smart4j.chapter2.util.CollectionUtil;
-import org.smart4j.chapter2.util.PropsUtil;
+import org.smart4j.chapter2.util.SqlScriptReader;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 /**
  * 数据库助手类
@@ -34,8 +51,35 @@ public final class DatabaseHelper {
     // 隔离线程:用于保存当前线程的Connection对象
     private static final ThreadLocal<Connection> CONNECTION_HOLDER;
 
-    // DBCP数据库连接池
-    private static final BasicDataSource DATA_SOURCE;
+    // 当前线程的事务状态(未开启事务时为null)
+    private static final ThreadLocal<Transaction> TRANSACTION_HOLDER = new ThreadLocal<Transaction>();
+
+    // 已检查过表中是否有version列的实体类
+    private static final Set<Class<?>> VERSION_CHECKED = ConcurrentHashMap.newKeySet();
+
+    // 隔离线程:当前线程读取从库使用的Connection
+    private static final ThreadLocal<Connection> REPLICA_CONNECTION_HOLDER = new ThreadLocal<Connection>();
+
+    // 读写分离路由(未配置从库时只有主库)
+    private static final DataSourceRouter ROUTER;
+
+    // DBCP数据库连接池(主库)
+    private static final PooledDataSource DATA_SOURCE;
+
+    // 分片路由(未配置jdbc.shard.N.*时为null)
+    private static final ShardRouter SHARD_ROUTER;
+
+    // 批量写入时每批(executeBatch)包含的行数(可在线修改)
+    private static volatile int BATCH_SIZE;
+
+    // 流式查询每次从数据库读取的行数(MySQL行流模式时为Integer.MIN_VALUE)
+    private static final int STREAM_FETCH_SIZE;
+
+    // 执行SQL文件时每个事务包含的语句数
+    private static final int SCRIPT_COMMIT_SIZE;
+
+    // 查询结果缓存(jdbc.queryCache.enabled开启时才创建)
+    private static final QueryCache QUERY_CACHE;
 
     /**
      * 静态初始化
@@ -45,18 +89,160 @@ public final class DatabaseHelper {
         CONNECTION_HOLDER = new ThreadLocal<Connection>();
         QUERY_RUNNER = new QueryRunner();
 
-        Properties conf = PropsUtil.loadProps("config.properties");
-        String driver = conf.getProperty("jdbc.driver");
-        String url = conf.getProperty("jdbc.url");
-        String username = conf.getProperty("jdbc.username");
-        String password = conf.getProperty("jdbc.password");
+        // 初始化DBCP(连接信息及jdbc.pool.*连接池参数),jdbc.replica.N.*为从库
+        Config conf = ConfigHelper.get();
+        Config jdbcConf = conf;
+        if (!conf.containsKey("jdbc.pool.queryTimeoutSeconds")) {
+            // 默认比异步请求超时少1秒,使慢SQL在超时监听器返回503之前结束,DbExecutor的线程不会一直被占用
+            long timeoutSeconds = conf.getLong("db.executor.timeoutMillis", 30000) / 1000 - 1;
+            Properties props = conf.toProperties();
+            props.setProperty("jdbc.pool.queryTimeoutSeconds", String.valueOf(Math.max(1, timeoutSeconds)));
+            jdbcConf = new Config(props, conf.getVersion());
+        }
+        ROUTER = DataSourceRouter.create(jdbcConf, "jdbc");
+        DATA_SOURCE = ROUTER.getPrimary();
+        SHARD_ROUTER = ShardRouter.create(jdbcConf, "jdbc");
+        BATCH_SIZE = Math.max(1, conf.getInt("jdbc.batch.size", 500));
+        SCRIPT_COMMIT_SIZE = Math.max(1, conf.getInt("jdbc.script.commitSize", 5000));
+
+        // MySQL驱动默认一次读取全部结果,只有fetchSize为Integer.MIN_VALUE(行流模式)或开启useCursorFetch时才逐批读取
+        String url = conf.getString("jdbc.url");
+        boolean mysqlStreaming = url.startsWith("jdbc:mysql:") && !url.contains("useCursorFetch=true");
+        if (conf.getBoolean("jdbc.stream.mysqlStreaming", mysqlStreaming)) {
+            STREAM_FETCH_SIZE = Integer.MIN_VALUE;
+        } else {
+            STREAM_FETCH_SIZE = conf.getInt("jdbc.stream.fetchSize", 1000);
+        }
+
+        if (conf.getBoolean("jdbc.queryCache.enabled", false)) {
+            QUERY_CACHE = new QueryCache(conf.getInt("jdbc.queryCache.maxSize", 1000),
+                    conf.getLong("jdbc.queryCache.ttlSeconds", 60));
+        } else {
+            QUERY_CACHE = null;
+        }
+        if (SHARD_ROUTER != null) {
+            SHARD_ROUTER.setQueryCache(QUERY_CACHE);
+        }
+
+        ConfigHelper.addListener(new ConfigListener() {
+            @Override
+            public void onChange(Config config, Set<String> changedKeys) {
+                applyConfig(config);
+            }
+        });
+    }
+
+    /**
+     * 在线应用配置:各连接池(主库、从库、分片)的大小、等待超时和空闲检测,批量大小,查询缓存容量
+     */
+    private static void applyConfig(Config conf) {
+        DataSourceHelper.updateDataSource(DATA_SOURCE, conf, null, "jdbc");
+        List<PooledDataSource> replicas = ROUTER.getReplicas();
+        for (int i = 0; i < replicas.size(); i++) {
+            DataSourceHelper.updateDataSource(replicas.get(i), conf, "jdbc", "jdbc.replica." + (i + 1));
+        }
+        if (SHARD_ROUTER != null) {
+            List<PooledDataSource> shards = SHARD_ROUTER.getShards();
+            for (int i = 0; i < shards.size(); i++) {
+                DataSourceHelper.updateDataSource(shards.get(i), conf, "jdbc", "jdbc.shard." + (i + 1));
+            }
+        }
+        BATCH_SIZE = Math.max(1, conf.getInt("jdbc.batch.size", 500));
+        if (QUERY_CACHE != null) {
+            QUERY_CACHE.resize(conf.getInt("jdbc.queryCache.maxSize", 1000), conf.getLong("jdbc.queryCache.ttlSeconds", 60));
+        }
+        LOGGER.info("jdbc config applied: maxTotal={}, maxIdle={}, minIdle={}, maxWaitMillis={}, batchSize={}",
+                DATA_SOURCE.getMaxTotal(), DATA_SOURCE.getMaxIdle(), DATA_SOURCE.getMinIdle(),
+                DATA_SOURCE.getMaxWaitMillis(), BATCH_SIZE);
+    }
+
+    /**
+     * 预热所有连接池(主库、从库、分片):每个连接池打开minIdle个Connection并预编译statements
+     *
+     * @return 预编译成功的语句数(所有连接池合计)
+     */
+    public static int warmUp(Collection<String> statements) {
+        List<PooledDataSource> dataSources = new ArrayList<PooledDataSource>();
+        dataSources.add(DATA_SOURCE);
+        dataSources.addAll(ROUTER.getReplicas());
+        if (SHARD_ROUTER != null) {
+            dataSources.addAll(SHARD_ROUTER.getShards());
+        }
+        int prepared = 0;
+        try {
+            for (PooledDataSource dataSource : dataSources) {
+                prepared += DataSourceHelper.warmUp(dataSource, statements);
+            }
+        } catch (SQLException e) {
+            LOGGER.error("warm up data source failure", e);
+            throw new RuntimeException(e);
+        }
+        return prepared;
+    }
+
+    /**
+     * 已打开的Connection数(所有连接池的活跃和空闲Connection合计)
+     */
+    public static int getOpenConnectionCount() {
+        int count = DATA_SOURCE.getNumActive() + DATA_SOURCE.getNumIdle();
+        for (PooledDataSource replica : ROUTER.getReplicas()) {
+            count += replica.getNumActive() + replica.getNumIdle();
+        }
+        if (SHARD_ROUTER != null) {
+            for (PooledDataSource shard : SHARD_ROUTER.getShards()) {
+                count += shard.getNumActive() + shard.getNumIdle();
+            }
+        }
+        return count;
+    }
 
-        // 初始化DBCP
-        DATA_SOURCE = new BasicDataSource();
-        DATA_SOURCE.setDriverClassName(driver);
-        DATA_SOURCE.setUrl(url);
-        DATA_SOURCE.setUsername(username);
-        DATA_SOURCE.setPassword(password);
+    /**
+     * 应用停止时关闭分片路由(执行器和分片连接池)以及主库和从库连接池
+     */
+    public static void shutdown() {
+        if (SHARD_ROUTER != null) {
+            SHARD_ROUTER.close();
+        }
+        ROUTER.close();
+    }
+
+    /**
+     * 获取连接池状态(活跃/空闲/等待数及借出等待时间)
+     */
+    public static PoolMetrics getPoolMetrics() {
+        return DATA_SOURCE.getMetrics();
+    }
+
+    /**
+     * 获取各从库连接池状态(未配置从库时为空)
+     */
+    public static List<PoolMetrics> getReplicaPoolMetrics() {
+        List<PoolMetrics> metricsList = new ArrayList<PoolMetrics>();
+        for (PooledDataSource replica : ROUTER.getReplicas()) {
+            metricsList.add(replica.getMetrics());
+        }
+        return metricsList;
+    }
+
+    /**
+     * 获取分片路由(未配置分片时返回null)
+     */
+    public static ShardRouter getShardRouter() {
+        return SHARD_ROUTER;
+    }
+
+    /**
+     * 实体对应的表是否分片
+     */
+    public static boolean isSharded(Class<?> entityClass) {
+        return SHARD_ROUTER != null && SHARD_ROUTER.isSharded(entityClass);
+    }
+
+    /**
+     * 获取查询结果缓存(未开启时返回null)
+     */
+    public static QueryCache getQueryCache() {
+        return QUERY_CACHE;
     }
 
     /**
@@ -67,9 +253,10 @@ public final class DatabaseHelper {
         Connection conn = CONNECTION_HOLDER.get();
         if(conn == null){
             try {
-                LOGGER.info("创建Connection");
+                LOGGER.debug("创建Connection");
                 // 从数据库连接池中获取数据库连接
                 conn = DATA_SOURCE.getConnection();
+                ConnectionScope.onBorrow();
             } catch (SQLException e) {
                 LOGGER.error("get connection failure", e);
                 throw new RuntimeException(e);
@@ -82,16 +269,53 @@ public final class DatabaseHelper {
     }
 
     /**
-     * 关闭数据库连接
+     * 获取执行查询语句的Connection
+     *      事务中、未配置从库或查询的表刚写入过(read-your-writes,不限于当前线程)时使用主库Connection,
+     *      否则使用当前线程绑定的从库Connection(同一个ConnectionScope内固定读取同一个从库)
+     */
+    private static Connection getReadConnection(String sql) {
+        if (!ROUTER.hasReplicas() || TRANSACTION_HOLDER.get() != null) {
+            return getConnection();
+        }
+        Connection conn = REPLICA_CONNECTION_HOLDER.get();
+        PooledDataSource dataSource = ROUTER.getReadDataSource(sql);
+        if (dataSource == DATA_SOURCE) {
+            return getConnection();
+        }
+        if (conn == null) {
+            try {
+                conn = dataSource.getConnection();
+                ConnectionScope.onBorrow();
+            } catch (SQLException e) {
+                LOGGER.error("get replica connection failure", e);
+                throw new RuntimeException(e);
+            }
+            REPLICA_CONNECTION_HOLDER.set(conn);
+        }
+        return conn;
+    }
+
+    /**
+     * 关闭数据库连接(包括从库Connection)
      */
     public static void closeConnection(){
+        closeReplicaConnection();
         // 获取当前线程Connection对象
         Connection conn = CONNECTION_HOLDER.get();
         if(conn != null){
+            Transaction transaction = TRANSACTION_HOLDER.get();
+            if (transaction != null) {
+                // 未提交的事务随Connection关闭而回滚
+                LOGGER.warn("close connection with an open transaction, rollback");
+                TRANSACTION_HOLDER.remove();
+                endTransaction(conn, transaction, false);
+            }
             try {
                 conn.close();
-                LOGGER.info("销毁Connection");
+                ConnectionScope.onReturn();
+                LOGGER.debug("销毁Connection");
             } catch (SQLException e) {
+                ConnectionScope.onLeak();
                 LOGGER.error("close connection failure", e);
                 throw new RuntimeException(e);
             } finally {
@@ -101,19 +325,49 @@ public final class DatabaseHelper {
         }
     }
 
+    private static void closeReplicaConnection() {
+        Connection conn = REPLICA_CONNECTION_HOLDER.get();
+        if (conn != null) {
+            REPLICA_CONNECTION_HOLDER.remove();
+            try {
+                conn.close();
+                ConnectionScope.onReturn();
+            } catch (SQLException e) {
+                ConnectionScope.onLeak();
+                LOGGER.error("close replica connection failure", e);
+            }
+        }
+    }
+
     /**
      * 查询实体列表
+     *      实体类由RowMapperHelper预编译的行映射器映射,非标准JavaBean退回DbUtils的BeanListHandler
+     *      开启查询缓存时,返回的实体可能被其他请求共享,不要修改
      */
     public static <T> List<T> queryEntityList(Class<T> entityClass, String sql, Object... params) {
-        List<T> entityList;
+        QueryCache.Lookup lookup = lookupQueryCache(entityClass, sql, params);
+        if (lookup != null && lookup.isHit()) {
+            return new ArrayList<T>(lookup.<List<T>>getValue());
+        }
+        List<T> entityList = doQueryEntityList(entityClass, sql, params);
+        if (lookup != null) {
+            QUERY_CACHE.put(lookup, new ArrayList<T>(entityList));
+        }
+        return entityList;
+    }
+
+    private static <T> List<T> doQueryEntityList(Class<T> entityClass, String sql, Object... params) {
+        Connection conn = getReadConnection(sql);
+        long start = System.nanoTime();
         try {
-            Connection conn = getConnection();
-            entityList = QUERY_RUNNER.query(conn, sql, new BeanListHandler<T>(entityClass), params);
+            List<T> entityList = QUERY_RUNNER.query(conn, sql, RowMapperHelper.getListHandler(entityClass), params);
+            record(sql, params, start, entityList.size(), false);
+            return entityList;
         } catch (SQLException e) {
+            record(sql, params, start, -1, true);
             LOGGER.error("query entity list failure", e);
             throw new RuntimeException(e);
         }
-        return entityList;
     }
 
     /**
@@ -121,10 +375,13 @@ public final class DatabaseHelper {
      */
     public static <T> T queryEntity(Class<T> entityClass, String sql, Object... params){
         T entity = null;
+        Connection conn = getReadConnection(sql);
+        long start = System.nanoTime();
         try {
-            Connection conn = getConnection();
-            entity = QUERY_RUNNER.query(conn, sql, new BeanHandler<T>(entityClass), params);
+            entity = QUERY_RUNNER.query(conn, sql, RowMapperHelper.getHandler(entityClass), params);
+            record(sql, params, start, entity != null ? 1 : 0, false);
         } catch (SQLException e) {
+            record(sql, params, start, -1, true);
             LOGGER.error("query entity failure", e);
             throw new RuntimeException(e);
         }
@@ -135,19 +392,114 @@ public final class DatabaseHelper {
         return entity;
     }
 
+    /**
+     * 按分片键查询实体:实体分片时只查询shardKey所在的分片,否则同queryEntity
+     */
+    public static <T> T queryEntityByShardKey(Class<T> entityClass, long shardKey, String sql, Object... params) {
+        if (isSharded(entityClass)) {
+            return SHARD_ROUTER.queryEntity(entityClass, shardKey, sql, params);
+        }
+        return queryEntity(entityClass, sql, params);
+    }
+
+    /**
+     * 查询所有分片:实体分片时并行查询全部分片,合并后按order排序并截取limit条;否则同queryEntityList
+     *      (此时排序和条数由SQL自身的ORDER BY / LIMIT保证)
+     *
+     * @param limit 合并后最多返回的条数,小于等于0时不限制
+     */
+    public static <T> List<T> queryEntityListFromAllShards(Class<T> entityClass, Comparator<? super T> order,
+                                                           int limit, String sql, Object... params) {
+        if (isSharded(entityClass)) {
+            return SHARD_ROUTER.queryEntityList(entityClass, order, limit, sql, params);
+        }
+        return queryEntityList(entityClass, sql, params);
+    }
+
+    /**
+     * 按id批量查询实体(结果无序,不存在的id没有对应实体)
+     *      id去重后每MAX_IN_SIZE个一批执行WHERE id IN (...),参数个数补齐到2的幂以复用语句;
+     *      实体分片时id按分片分组,各分片并行查询;不使用查询缓存
+     */
+    public static <T> List<T> queryEntityListByIds(Class<T> entityClass, Collection<Long> ids) {
+        List<Long> idList = new ArrayList<Long>(new LinkedHashSet<Long>(ids));
+        if (idList.isEmpty()) {
+            return new ArrayList<T>();
+        }
+        if (isSharded(entityClass)) {
+            return SHARD_ROUTER.queryEntityListByIds(entityClass, idList, SqlTemplateHelper.MAX_IN_SIZE);
+        }
+        List<T> entityList = new ArrayList<T>(idList.size());
+        for (int from = 0; from < idList.size(); from += SqlTemplateHelper.MAX_IN_SIZE) {
+            List<Long> chunk = idList.subList(from, Math.min(from + SqlTemplateHelper.MAX_IN_SIZE, idList.size()));
+            int paddedSize = SqlTemplateHelper.getPaddedSize(chunk.size());
+            entityList.addAll(doQueryEntityList(entityClass, SqlTemplateHelper.getSelectByIdsSql(entityClass, paddedSize),
+                    SqlTemplateHelper.getSelectByIdsParams(chunk, paddedSize)));
+        }
+        return entityList;
+    }
+
+    /**
+     * 流式查询实体
+     *      使用只进只读游标逐批读取,内存占用与结果集大小无关;返回的Stream必须关闭:
+     *
+     *      try (Stream<Customer> stream = DatabaseHelper.streamEntities(Customer.class, sql)) { ... }
+     *
+     *      MySQL行流模式下,Stream关闭前当前线程的Connection不能执行其他语句
+     */
+    public static <T> Stream<T> streamEntities(Class<T> entityClass, String sql, Object... params) {
+        PreparedStatement stmt = null;
+        Connection conn = getReadConnection(sql);
+        // 只统计执行查询(到返回第一批数据)的耗时,不包括调用方遍历结果的时间
+        long start = System.nanoTime();
+        try {
+            stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            QUERY_RUNNER.fillStatement(stmt, params);
+            ResultSet rs = stmt.executeQuery();
+            record(sql, params, start, -1, false);
+            return new EntityCursor<T>(entityClass, stmt, rs).stream();
+        } catch (SQLException e) {
+            record(sql, params, start, -1, true);
+            closeStatement(stmt);
+            LOGGER.error("stream entities failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void closeStatement(Statement stmt) {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                LOGGER.error("close statement failure", e);
+            }
+        }
+    }
+
     /**
      * 根据sql获取List(对象列名与列值的映射关系)
      */
     public static List<Map<String, Object>> executeQuery(String sql, Object... params){
+        QueryCache.Lookup lookup = lookupQueryCache(Map.class, sql, params);
+        if (lookup != null && lookup.isHit()) {
+            return new ArrayList<Map<String, Object>>(lookup.<List<Map<String, Object>>>getValue());
+        }
         // 保存多条数据的对象字段-值映射关系
         List<Map<String, Object>> result = null;
+        Connection conn = getReadConnection(sql);
+        long start = System.nanoTime();
         try {
-            Connection conn = getConnection();
             result = QUERY_RUNNER.query(conn, sql, new MapListHandler(), params);
+            record(sql, params, start, result.size(), false);
         } catch (SQLException e) {
+            record(sql, params, start, -1, true);
             LOGGER.error("execute query failure", e);
             throw new RuntimeException(e);
         }
+        if (lookup != null) {
+            QUERY_CACHE.put(lookup, new ArrayList<Map<String, Object>>(result));
+        }
         return result;
     }
 
@@ -156,23 +508,22 @@ public final class DatabaseHelper {
      */
     public static int executeUpdate(String sql, Object... params){
         int rows = 0;// 影响行数
+        Connection conn = getConnection();
+        ROUTER.markWrite(sql);
+        long start = System.nanoTime();
         try {
-            Connection conn = getConnection();
             rows = QUERY_RUNNER.update(conn, sql, params);
+            record(sql, params, start, rows, false);
         } catch (SQLException e) {
+            record(sql, params, start, -1, true);
             LOGGER.error("execute update failure", e);
             throw new RuntimeException(e);
+        } finally {
+            invalidateQueryCache(sql);
         }
         return rows;
     }
 
-    /**
-     * 获取实体对应的表名
-     */
-    private static String getTableName(Class<?> entityClass) {
-        return entityClass.getSimpleName();
-    }
-
     /**
      * 插入单个实体
      */
@@ -183,28 +534,14 @@ public final class DatabaseHelper {
             LOGGER.error("can not insert entity: fieldMap is empty");
             return false;
         }
-
-        String sql = "insert into " + getTableName(entityClass);
-
-        // 声明columns和values两个StringBuilder用于拼装sql
-        StringBuilder columns = new StringBuilder("(");// columns : "("fieldName1", "fieldName2", "fieldName3", ...)"
-        StringBuilder values = new StringBuilder("(");// values : "("?, ?, ?, ...")"
-
-        // 循环列参数Map,拼装SQL的columns和values部分,放入对应的StringBuilder中备用
-        for (String fieldName : fieldMap.keySet()) {
-            columns.append(fieldName).append(", ");
-            values.append("?, ");
+        if (isSharded(entityClass)) {
+            checkShardedWrite(entityClass);
+            return SHARD_ROUTER.insertEntity(entityClass, fieldMap);
         }
 
-        //将最后一个",",换成结束符")",完成columns和values的拼装
-        columns.replace(columns.lastIndexOf(", "), columns.length(), ")");
-        values.replace(values.lastIndexOf(", "), values.length(), ")");
-
-        // 拼装完整SQL
-        sql += columns + " VALUES " + values;
-
-        // Map转Array
-        Object[] params = fieldMap.values().toArray();
+        // 相同列集合复用缓存的SQL,只需构造参数数组
+        String sql = SqlTemplateHelper.getInsertSql(entityClass, fieldMap.keySet());
+        Object[] params = SqlTemplateHelper.getInsertParams(fieldMap);
 
         return executeUpdate(sql, params) == 1;
     }
@@ -219,56 +556,498 @@ public final class DatabaseHelper {
             LOGGER.error("can not update entity: fieldMap is empty");
             return false;
         }
+        isVersioned(entityClass);
+        if (isSharded(entityClass)) {
+            checkShardedWrite(entityClass);
+            return SHARD_ROUTER.updateEntity(entityClass, id, fieldMap);
+        }
 
-        String sql = "UPDATE " + getTableName(entityClass) + " SET ";
+        String sql = SqlTemplateHelper.getUpdateSql(entityClass, fieldMap.keySet());
+        Object[] params = SqlTemplateHelper.getUpdateParams(id, fieldMap);
 
-        // 声明columns的StringBuilder用于拼装sql
-        // columns : "fieldName1" = ?, "fieldName2" = ?, "fieldName3" = ?, ...
-        StringBuilder columns = new StringBuilder();// 循环列参数Map,拼装SQL的columns部分,放入对应的StringBuilder中备用
-        for (String fieldName : fieldMap.keySet()) {
-            columns.append(fieldName).append(" = ?, ");
-        }
+        return executeUpdate(sql, params) == 1;
+    }
 
-        // 拼装完整SQL
-        sql += columns.substring(0, columns.lastIndexOf(", ")) + " WHERE id = ?";
+    /**
+     * 实体对应的表是否有version列(UPDATE递增version,可以按version生成ETag)
+     *      实体有version属性但表还没有执行迁移(sql/customer_version.sql)时返回false,UPDATE不再递增version;
+     *      每个实体类只在第一次调用时检查一次表结构(分片时检查第一个分片),执行迁移后需要重启应用
+     */
+    public static boolean isVersioned(Class<?> entityClass) {
+        if (!SqlTemplateHelper.isVersioned(entityClass) || VERSION_CHECKED.contains(entityClass)) {
+            return SqlTemplateHelper.isVersioned(entityClass);
+        }
+        synchronized (VERSION_CHECKED) {
+            if (!VERSION_CHECKED.contains(entityClass)) {
+                String table = SqlTemplateHelper.getTableName(entityClass);
+                if (!hasColumn(entityClass, table, SqlTemplateHelper.VERSION_COLUMN)) {
+                    LOGGER.warn("table {} has no {} column, updates will not increase the version; "
+                            + "apply the migration script and restart to enable it", table, SqlTemplateHelper.VERSION_COLUMN);
+                    SqlTemplateHelper.disableVersion(entityClass);
+                }
+                VERSION_CHECKED.add(entityClass);
+            }
+        }
+        return SqlTemplateHelper.isVersioned(entityClass);
+    }
 
-        // 补全参数
-        List<Object> paramList = new ArrayList<Object>();
-        paramList.addAll(fieldMap.values());
-        paramList.add(id);
-        // Map转Array
-        Object[] params = paramList.toArray();
+    private static boolean hasColumn(Class<?> entityClass, String table, String column) {
+        String sql = "SELECT * FROM " + table + " WHERE 1 = 0";
+        try {
+            if (isSharded(entityClass)) {
+                try (Connection conn = SHARD_ROUTER.getShards().get(0).getConnection()) {
+                    return hasColumn(conn, sql, column);
+                }
+            }
+            return hasColumn(getConnection(), sql, column);
+        } catch (SQLException e) {
+            LOGGER.error("check column failure", e);
+            throw new RuntimeException(e);
+        }
+    }
 
-        return executeUpdate(sql, params) == 1;
+    private static boolean hasColumn(Connection conn, String sql, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                if (column.equalsIgnoreCase(metaData.getColumnLabel(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
     /**
      * 删除实体
      */
     public static <T> boolean deleteEntity(Class<T> entityClass, long id) {
-        String sql = "DELETE FROM " + getTableName(entityClass) + " WHERE id = ?";
+        if (isSharded(entityClass)) {
+            checkShardedWrite(entityClass);
+            return SHARD_ROUTER.deleteEntity(entityClass, id);
+        }
+        String sql = SqlTemplateHelper.getDeleteSql(entityClass);
         return executeUpdate(sql, id) == 1;
     }
 
+    /**
+     * 批量插入实体
+     *      按列集合分组,每组使用同一条INSERT语句,每BATCH_SIZE行执行一次executeBatch,
+     *      全部写入在同一个事务中完成(已处于事务中时加入当前事务)
+     *      MySQL需在jdbc.connectionProperties中开启rewriteBatchedStatements,驱动才会改写为多行INSERT
+     *
+     * @return 插入行数
+     */
+    public static <T> int insertEntities(Class<T> entityClass, List<Map<String, Object>> fieldMapList) {
+        if (CollectionUtil.isEmpty(fieldMapList)) {
+            LOGGER.error("can not insert entities: fieldMapList is empty");
+            return 0;
+        }
+        if (isSharded(entityClass)) {
+            // 每个分片一个事务
+            checkShardedWrite(entityClass);
+            return SHARD_ROUTER.insertEntities(entityClass, fieldMapList, BATCH_SIZE);
+        }
+        // SQL相同即列集合相同,按SQL分组
+        Map<String, List<Object[]>> batchMap = new LinkedHashMap<String, List<Object[]>>();
+        for (Map<String, Object> fieldMap : fieldMapList) {
+            if (CollectionUtil.isEmpty(fieldMap)) {
+                LOGGER.error("can not insert entities: fieldMap is empty");
+                return 0;
+            }
+            String sql = SqlTemplateHelper.getInsertSql(entityClass, fieldMap.keySet());
+            addBatchParams(batchMap, sql, SqlTemplateHelper.getInsertParams(fieldMap));
+        }
+        return executeBatch(batchMap);
+    }
+
+    /**
+     * 批量更新实体(id -> fieldMap),分组及事务规则同insertEntities
+     *
+     * @return 更新行数
+     */
+    public static <T> int updateEntities(Class<T> entityClass, Map<Long, Map<String, Object>> fieldMapById) {
+        if (CollectionUtil.isEmpty(fieldMapById)) {
+            LOGGER.error("can not update entities: fieldMap is empty");
+            return 0;
+        }
+        isVersioned(entityClass);
+        if (isSharded(entityClass)) {
+            checkShardedWrite(entityClass);
+            return SHARD_ROUTER.updateEntities(entityClass, fieldMapById, BATCH_SIZE);
+        }
+        Map<String, List<Object[]>> batchMap = new LinkedHashMap<String, List<Object[]>>();
+        for (Map.Entry<Long, Map<String, Object>> entry : fieldMapById.entrySet()) {
+            Map<String, Object> fieldMap = entry.getValue();
+            if (CollectionUtil.isEmpty(fieldMap)) {
+                LOGGER.error("can not update entities: fieldMap is empty");
+                return 0;
+            }
+            String sql = SqlTemplateHelper.getUpdateSql(entityClass, fieldMap.keySet());
+            addBatchParams(batchMap, sql, SqlTemplateHelper.getUpdateParams(entry.getKey(), fieldMap));
+        }
+        return executeBatch(batchMap);
+    }
+
+    /**
+     * 分片表的写入使用各分片自己的Connection并立即提交,不能加入当前线程在主库上的事务(回滚时不会撤销)
+     */
+    private static void checkShardedWrite(Class<?> entityClass) {
+        if (isInTransaction()) {
+            throw new IllegalStateException("can not write sharded table "
+                    + SqlTemplateHelper.getTableName(entityClass) + " in a transaction");
+        }
+    }
+
+    private static void addBatchParams(Map<String, List<Object[]>> batchMap, String sql, Object[] params) {
+        List<Object[]> paramsList = batchMap.get(sql);
+        if (paramsList == null) {
+            paramsList = new ArrayList<Object[]>();
+            batchMap.put(sql, paramsList);
+        }
+        paramsList.add(params);
+    }
+
+    /**
+     * 在一个事务中分批执行(SQL -> 参数列表)
+     */
+    private static int executeBatch(final Map<String, List<Object[]>> batchMap) {
+        return inTransaction(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction() {
+                int rows = 0;
+                for (String sql : batchMap.keySet()) {
+                    ROUTER.markWrite(sql);
+                }
+                try {
+                    Connection conn = getConnection();
+                    for (Map.Entry<String, List<Object[]>> entry : batchMap.entrySet()) {
+                        List<Object[]> paramsList = entry.getValue();
+                        for (int from = 0; from < paramsList.size(); from += BATCH_SIZE) {
+                            int to = Math.min(from + BATCH_SIZE, paramsList.size());
+                            Object[][] params = paramsList.subList(from, to).toArray(new Object[to - from][]);
+                            // 批量参数不记录到慢查询日志
+                            long start = System.nanoTime();
+                            int batchRows = 0;
+                            try {
+                                for (int count : QUERY_RUNNER.batch(conn, entry.getKey(), params)) {
+                                    // rewriteBatchedStatements改写后驱动返回SUCCESS_NO_INFO,按成功1行计
+                                    batchRows += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                                }
+                            } catch (SQLException e) {
+                                record(entry.getKey(), null, start, -1, true);
+                                throw e;
+                            }
+                            record(entry.getKey(), null, start, batchRows, false);
+                            rows += batchRows;
+                        }
+                    }
+                } catch (SQLException e) {
+                    LOGGER.error("execute batch failure", e);
+                    throw new RuntimeException(e);
+                } finally {
+                    for (String sql : batchMap.keySet()) {
+                        invalidateQueryCache(sql);
+                    }
+                }
+                return rows;
+            }
+        });
+    }
+
+    /**
+     * 开启事务
+     *      事务绑定在当前线程的Connection上,可以嵌套:只有最外层的commitTransaction才真正提交,
+     *      内层rollbackTransaction会将整个事务标记为只能回滚;事务中写入分片表时抛出IllegalStateException
+     */
+    public static void beginTransaction() {
+        Transaction transaction = TRANSACTION_HOLDER.get();
+        if (transaction != null) {
+            transaction.depth++;
+            return;
+        }
+        Connection conn = getConnection();
+        try {
+            conn.setAutoCommit(false);
+        } catch (SQLException e) {
+            LOGGER.error("begin transaction failure", e);
+            throw new RuntimeException(e);
+        }
+        TRANSACTION_HOLDER.set(new Transaction());
+    }
+
+    /**
+     * 提交事务
+     */
+    public static void commitTransaction() {
+        Transaction transaction = getTransaction();
+        if (--transaction.depth > 0) {
+            return;
+        }
+        TRANSACTION_HOLDER.remove();
+        endTransaction(getConnection(), transaction, !transaction.rollbackOnly);
+        if (transaction.rollbackOnly) {
+            throw new IllegalStateException("transaction has been rolled back by a nested transaction");
+        }
+    }
+
+    /**
+     * 回滚事务
+     */
+    public static void rollbackTransaction() {
+        Transaction transaction = getTransaction();
+        transaction.rollbackOnly = true;
+        if (--transaction.depth > 0) {
+            return;
+        }
+        TRANSACTION_HOLDER.remove();
+        endTransaction(getConnection(), transaction, false);
+    }
+
+    /**
+     * 当前线程是否处于事务中
+     */
+    public static boolean isInTransaction() {
+        return TRANSACTION_HOLDER.get() != null;
+    }
+
+    /**
+     * 在事务中执行回调:正常返回时提交,抛出异常时回滚
+     */
+    public static <T> T inTransaction(TransactionCallback<T> callback) {
+        beginTransaction();
+        T result;
+        try {
+            result = callback.doInTransaction();
+        } catch (RuntimeException | Error e) {
+            rollbackTransaction();
+            throw e;
+        }
+        commitTransaction();
+        return result;
+    }
+
+    private static Transaction getTransaction() {
+        Transaction transaction = TRANSACTION_HOLDER.get();
+        if (transaction == null) {
+            throw new IllegalStateException("no transaction in current thread");
+        }
+        return transaction;
+    }
+
+    /**
+     * 提交或回滚,恢复自动提交,并再次使事务中写入的表的查询缓存失效
+     */
+    private static void endTransaction(Connection conn, Transaction transaction, boolean commit) {
+        try {
+            if (commit) {
+                conn.commit();
+            } else {
+                conn.rollback();
+            }
+        } catch (SQLException e) {
+            if (commit) {
+                rollback(conn);
+            }
+            LOGGER.error(commit ? "commit transaction failure" : "rollback transaction failure", e);
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                LOGGER.error("reset auto commit failure", e);
+            }
+            // 事务期间其他线程可能缓存了提交前的数据(或据此生成了ETag)
+            for (String sql : transaction.writeSqls) {
+                invalidate(sql);
+            }
+            for (Runnable callback : transaction.afterCompletions) {
+                try {
+                    callback.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("after completion callback failure", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前事务结束(提交或回滚)后执行回调,不在事务中时不执行
+     *      用于在事务结束后再次使业务缓存失效:事务期间其他线程可能读到并缓存了提交前的数据
+     *
+     * @return 是否已登记(当前线程处于事务中)
+     */
+    public static boolean afterCompletion(Runnable callback) {
+        Transaction transaction = TRANSACTION_HOLDER.get();
+        if (transaction == null) {
+            return false;
+        }
+        transaction.afterCompletions.add(callback);
+        return true;
+    }
+
+    /**
+     * 事务中的查询可能读到未提交的数据,不使用查询缓存
+     */
+    private static QueryCache.Lookup lookupQueryCache(Class<?> resultType, String sql, Object[] params) {
+        if (QUERY_CACHE == null || TRANSACTION_HOLDER.get() != null) {
+            return null;
+        }
+        return QUERY_CACHE.lookup(resultType, sql, params);
+    }
+
+    /**
+     * 记录SQL执行统计(所有执行SQL的入口都经过这里)
+     *
+     * @param start 开始执行时的System.nanoTime()
+     * @param rows  返回或影响的行数,未知时为-1
+     */
+    private static void record(String sql, Object[] params, long start, long rows, boolean error) {
+        long nanos = System.nanoTime() - start;
+        SqlMetrics.record(sql, nanos, rows, error);
+        SlowQueryLog.record(sql, params, nanos, rows, error);
+    }
+
+    /**
+     * 获取查询的执行计划(每行一条EXPLAIN结果),不计入SQL统计
+     */
+    public static String explain(String sql, Object... params) {
+        try {
+            List<Map<String, Object>> rows = QUERY_RUNNER.query(getConnection(), "EXPLAIN " + sql, new MapListHandler(), params);
+            StringBuilder plan = new StringBuilder();
+            for (Map<String, Object> row : rows) {
+                plan.append(row).append('\n');
+            }
+            return plan.toString();
+        } catch (SQLException e) {
+            LOGGER.error("explain failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 写入后使查询缓存中涉及该表的结果失效,并递增表的修改计数
+     */
+    private static void invalidateQueryCache(String sql) {
+        invalidate(sql);
+        Transaction transaction = TRANSACTION_HOLDER.get();
+        if (transaction != null) {
+            transaction.writeSqls.add(sql);
+        }
+    }
+
+    private static void invalidate(String sql) {
+        TableChangeCounter.onWrite(sql);
+        if (QUERY_CACHE != null) {
+            QUERY_CACHE.invalidate(sql);
+        }
+    }
+
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            LOGGER.error("rollback failure", e);
+        }
+    }
+
     /**
      * 执行SQL文件
+     *      逐条流式读取语句(支持多行语句、注释及DELIMITER),每BATCH_SIZE条语句执行一次executeBatch,
+     *      每SCRIPT_COMMIT_SIZE条语句提交一次事务;已处于事务中时加入当前事务,由调用方提交
      */
-    public static void executeSqlFile(String filePath) {
+    public static SqlScriptResult executeSqlFile(String filePath) {
         //获取当前线程上下文中的ClassLoader,通过"sql/customer_init.sql"获取一个InputStream对象
         InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(filePath);
-        //通过输入流创建BufferReader
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        // 循环读取每一行,并调用DatabaseHelper.executeUpdate执行每一条sql
-
-        try {
+        if (is == null) {
+            throw new IllegalArgumentException("sql file not found: " + filePath);
+        }
+        long start = System.currentTimeMillis();
+        long statements = 0;
+        long rows = 0;
+        Connection conn = getConnection();
+        ROUTER.markWrite();
+        boolean autoCommit = false;
+        try (SqlScriptReader reader = new SqlScriptReader(new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8)));
+             Statement stmt = conn.createStatement()) {
+            autoCommit = conn.getAutoCommit();
+            if (autoCommit) {
+                conn.setAutoCommit(false);
+            }
+            int batched = 0;
+            int uncommitted = 0;
             String sql;
-            while( (sql=reader.readLine()) != null){
-                executeUpdate(sql);
+            while ((sql = reader.nextStatement()) != null) {
+                stmt.addBatch(sql);
+                statements++;
+                if (++batched >= BATCH_SIZE) {
+                    rows += executeScriptBatch(stmt);
+                    batched = 0;
+                }
+                if (autoCommit && ++uncommitted >= SCRIPT_COMMIT_SIZE) {
+                    if (batched > 0) {
+                        rows += executeScriptBatch(stmt);
+                        batched = 0;
+                    }
+                    conn.commit();
+                    uncommitted = 0;
+                }
+            }
+            if (batched > 0) {
+                rows += executeScriptBatch(stmt);
+            }
+            if (autoCommit) {
+                conn.commit();
+            }
+        } catch (SQLException | IOException e) {
+            if (autoCommit) {
+                rollback(conn);
             }
-        } catch (IOException e) {
             LOGGER.error("execute sql file failure", e);
             throw new RuntimeException(e);
+        } finally {
+            if (autoCommit) {
+                try {
+                    conn.setAutoCommit(true);
+                } catch (SQLException e) {
+                    LOGGER.error("reset auto commit failure", e);
+                }
+            }
+            // 脚本可能写入任意表,直接清空查询缓存
+            TableChangeCounter.onWriteAll();
+            if (QUERY_CACHE != null) {
+                QUERY_CACHE.clear();
+            }
+        }
+        SqlScriptResult result = new SqlScriptResult(filePath, statements, rows, System.currentTimeMillis() - start);
+        LOGGER.info("execute sql file {}", result);
+        return result;
+    }
+
+    private static long executeScriptBatch(Statement stmt) throws SQLException {
+        long rows = 0;
+        for (int count : stmt.executeBatch()) {
+            rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
         }
+        stmt.clearBatch();
+        return rows;
     }
 
+    /**
+     * 事务状态
+     */
+    private static final class Transaction {
+
+        // 嵌套层数
+        private int depth = 1;
+
+        // 内层事务回滚后,外层只能回滚
+        private boolean rollbackOnly;
+
+        // 事务中执行的写入语句,结束时再次失效查询缓存
+        private final Set<String> writeSqls = new HashSet<String>();
+
+        // 事务结束后执行的回调
+        private final List<Runnable> afterCompletions = new ArrayList<Runnable>();
+    }
 }
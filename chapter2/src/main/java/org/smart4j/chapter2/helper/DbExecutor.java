@@ -0,0 +1,145 @@
+package org.smart4j.chapter2.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.config.ConfigHelper;
+import org.smart4j.chapter2.config.ConfigListener;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数据库任务执行器
+ *      将阻塞的JDBC调用从容器请求线程转移到固定大小的线程池中执行,线程数默认与连接池上限一致,
+ *      等待队列有界,队列满时拒绝任务(由调用方返回503),避免慢数据库拖垮容器线程池
+ *
+ *      每个任务在独立的ConnectionScope中执行,任务结束时归还Connection
+ */
+public final class DbExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DbExecutor.class);
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    // 异步请求超时时间(可在线修改)
+    private static volatile long TIMEOUT_MILLIS;
+
+    // 超时时任务仍在执行,超时监听器(容器线程)等待任务结束的最长时间(可在线修改)
+    private static volatile long TIMEOUT_GRACE_MILLIS;
+
+    static {
+        Config conf = ConfigHelper.get();
+        int size = getSize(conf);
+        int queueSize = conf.getInt("db.executor.queueSize", 1000);
+        TIMEOUT_MILLIS = conf.getLong("db.executor.timeoutMillis", 30000);
+        TIMEOUT_GRACE_MILLIS = Math.max(0, conf.getLong("db.executor.timeoutGraceMillis", 1000));
+
+        final AtomicInteger threadNumber = new AtomicInteger();
+        EXECUTOR = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "db-executor-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // 线程数和超时时间在线调整,等待队列大小重启后生效
+        ConfigHelper.addListener(new ConfigListener() {
+            @Override
+            public void onChange(Config config, Set<String> changedKeys) {
+                resize(getSize(config));
+                TIMEOUT_MILLIS = config.getLong("db.executor.timeoutMillis", 30000);
+                TIMEOUT_GRACE_MILLIS = Math.max(0, config.getLong("db.executor.timeoutGraceMillis", 1000));
+            }
+        });
+    }
+
+    private static int getSize(Config conf) {
+        return Math.max(1, conf.getInt("db.executor.size", conf.getInt("jdbc.pool.maxTotal", 8)));
+    }
+
+    /**
+     * 调整线程数(核心线程数不能大于最大线程数,扩大时先调整最大线程数);缩小时正在执行的任务不受影响
+     */
+    private static synchronized void resize(int size) {
+        if (size == EXECUTOR.getMaximumPoolSize()) {
+            return;
+        }
+        if (size > EXECUTOR.getMaximumPoolSize()) {
+            EXECUTOR.setMaximumPoolSize(size);
+            EXECUTOR.setCorePoolSize(size);
+        } else {
+            EXECUTOR.setCorePoolSize(size);
+            EXECUTOR.setMaximumPoolSize(size);
+        }
+        LOGGER.info("db executor resized to {} threads", size);
+    }
+
+    /**
+     * 提交任务
+     *
+     * @throws RejectedExecutionException 等待队列已满或执行器已关闭
+     */
+    public static void execute(final Runnable task) {
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try (ConnectionScope scope = ConnectionScope.open()) {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOGGER.error("execute db task failure", e);
+                }
+            }
+        });
+    }
+
+    public static long getTimeoutMillis() {
+        return TIMEOUT_MILLIS;
+    }
+
+    public static long getTimeoutGraceMillis() {
+        return TIMEOUT_GRACE_MILLIS;
+    }
+
+    /**
+     * 正在执行的任务数
+     */
+    public static int getActiveCount() {
+        return EXECUTOR.getActiveCount();
+    }
+
+    /**
+     * 等待执行的任务数
+     */
+    public static int getQueueSize() {
+        return EXECUTOR.getQueue().size();
+    }
+
+    public static int getPoolSize() {
+        return EXECUTOR.getMaximumPoolSize();
+    }
+
+    /**
+     * 关闭执行器,等待已提交的任务完成
+     */
+    public static void shutdown() {
+        EXECUTOR.shutdown();
+        try {
+            if (!EXECUTOR.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warn("db executor did not terminate in {} ms", TIMEOUT_MILLIS);
+                EXECUTOR.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            EXECUTOR.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.smart4j.chapter2.helper;
+
+import org.smart4j.chapter2.util.Converter;
+import org.smart4j.chapter2.util.TypeConverter;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 请求参数绑定器
+ *      每个实体类只内省一次:可写的列(有setter的属性,按字段声明顺序)、列类型及其Converter;
+ *      绑定时一次遍历请求参数,得到按列顺序排列的fieldMap,生成的INSERT/UPDATE语句列顺序固定,语句模板和预编译语句缓存可以复用
+ *
+ *      id、version由数据库和框架维护,请求中出现时忽略;其他未知参数被拒绝
+ */
+public final class EntityBinder<T> {
+
+    // 忽略的参数
+    private static final Set<String> READ_ONLY_NAMES = new HashSet<String>(Arrays.asList("id", SqlTemplateHelper.VERSION_COLUMN));
+
+    private static final ConcurrentMap<Class<?>, EntityBinder<?>> BINDER_MAP = new ConcurrentHashMap<Class<?>, EntityBinder<?>>();
+
+    private final Class<T> entityClass;
+
+    // 列名(按字段声明顺序)
+    private final String[] columns;
+
+    // 列的转换器,String列为null(直接使用参数值)
+    private final Converter<?>[] converters;
+
+    // 参数名 -> 列序号,忽略的参数为-1
+    private final Map<String, Integer> indexMap;
+
+    // 结果Map的初始容量,列全部绑定时不扩容
+    private final int mapCapacity;
+
+    private EntityBinder(Class<T> entityClass, String[] columns, Converter<?>[] converters) {
+        this.entityClass = entityClass;
+        this.columns = columns;
+        this.converters = converters;
+        Map<String, Integer> indexMap = new HashMap<String, Integer>();
+        for (String name : READ_ONLY_NAMES) {
+            indexMap.put(name, -1);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            indexMap.put(columns[i], i);
+        }
+        this.indexMap = indexMap;
+        this.mapCapacity = (int) (columns.length / 0.75f) + 1;
+    }
+
+    /**
+     * 获取实体类的绑定器
+     *
+     * @throws IllegalArgumentException 实体类没有可绑定的属性
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityBinder<T> get(Class<T> entityClass) {
+        EntityBinder<T> binder = (EntityBinder<T>) BINDER_MAP.get(entityClass);
+        if (binder == null) {
+            binder = compile(entityClass);
+            EntityBinder<T> existing = (EntityBinder<T>) BINDER_MAP.putIfAbsent(entityClass, binder);
+            if (existing != null) {
+                binder = existing;
+            }
+        }
+        return binder;
+    }
+
+    private static <T> EntityBinder<T> compile(Class<T> entityClass) {
+        try {
+            Map<String, PropertyDescriptor> descriptorMap = new HashMap<String, PropertyDescriptor>();
+            BeanInfo beanInfo = Introspector.getBeanInfo(entityClass, Object.class);
+            for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                if (descriptor.getWriteMethod() != null && Modifier.isPublic(descriptor.getWriteMethod().getModifiers())
+                        && !READ_ONLY_NAMES.contains(descriptor.getName())) {
+                    descriptorMap.put(descriptor.getName(), descriptor);
+                }
+            }
+            List<String> columnList = new ArrayList<String>();
+            List<Converter<?>> converterList = new ArrayList<Converter<?>>();
+            for (Field field : entityClass.getDeclaredFields()) {
+                PropertyDescriptor descriptor = descriptorMap.get(field.getName());
+                if (descriptor == null) {
+                    continue;
+                }
+                Class<?> type = descriptor.getPropertyType();
+                Converter<?> converter = type == String.class ? null : TypeConverter.getConverter(type);
+                if (type != String.class && converter == null) {
+                    // 没有转换器的属性不能从请求参数绑定
+                    continue;
+                }
+                columnList.add(descriptor.getName());
+                converterList.add(converter);
+            }
+            if (columnList.isEmpty()) {
+                throw new IllegalArgumentException(entityClass.getName() + " has no bindable property");
+            }
+            return new EntityBinder<T>(entityClass, columnList.toArray(new String[columnList.size()]),
+                    converterList.toArray(new Converter<?>[converterList.size()]));
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * 可绑定的列(按字段声明顺序)
+     */
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(Arrays.asList(columns));
+    }
+
+    /**
+     * 绑定请求参数(HttpServletRequest.getParameterMap),多值参数取第一个值
+     *
+     * @return 按列顺序排列的fieldMap,只包含请求中出现的列
+     * @throws IllegalArgumentException 存在未知参数或参数值无法转换为列类型
+     */
+    public Map<String, Object> bind(Map<String, String[]> parameterMap) {
+        Object[] values = new Object[columns.length];
+        int count = 0;
+        for (Map.Entry<String, String[]> entry : parameterMap.entrySet()) {
+            Integer index = indexMap.get(entry.getKey());
+            if (index == null) {
+                throw new IllegalArgumentException("unknown field: " + entry.getKey());
+            }
+            String[] parameterValues = entry.getValue();
+            if (index < 0 || parameterValues == null || parameterValues.length == 0) {
+                continue;
+            }
+            if (values[index] == null) {
+                count++;
+            }
+            values[index] = convert(index, parameterValues[0]);
+        }
+        Map<String, Object> fieldMap = new LinkedHashMap<String, Object>(mapCapacity);
+        for (int i = 0; i < values.length && count > 0; i++) {
+            if (values[i] != null) {
+                fieldMap.put(columns[i], values[i]);
+                count--;
+            }
+        }
+        return fieldMap;
+    }
+
+    private Object convert(int index, String value) {
+        Converter<?> converter = converters[index];
+        if (converter == null) {
+            return value;
+        }
+        Object result = converter.convert(value, null);
+        if (result == null) {
+            throw new IllegalArgumentException("invalid value of field " + columns[index] + ": " + value);
+        }
+        return result;
+    }
+}
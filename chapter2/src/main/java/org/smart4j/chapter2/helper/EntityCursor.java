@@ -0,0 +1,117 @@
+package org.smart4j.chapter2.helper;
+
+import org.apache.commons.dbutils.BasicRowProcessor;
+import org.apache.commons.dbutils.RowProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 实体游标
+ *      逐行读取只进结果集并映射为实体,不在内存中保留已读取的行;
+ *      读取完毕或出错时自动关闭ResultSet和PreparedStatement,提前结束时必须调用close()
+ */
+public final class EntityCursor<T> implements Iterator<T>, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityCursor.class);
+
+    // 非标准JavaBean退回DbUtils的反射映射
+    private static final RowProcessor ROW_PROCESSOR = new BasicRowProcessor();
+
+    private final Class<T> entityClass;
+    private final PreparedStatement stmt;
+    private final ResultSet rs;
+    private final EntityRowMapper<T> mapper;
+    private final EntityRowMapper.ColumnPlan plan;
+
+    private boolean fetched;    // 是否已经读取下一行
+    private boolean hasNext;    // 下一行是否存在
+    private boolean closed;
+
+    EntityCursor(Class<T> entityClass, PreparedStatement stmt, ResultSet rs) throws SQLException {
+        this.entityClass = entityClass;
+        this.stmt = stmt;
+        this.rs = rs;
+        this.mapper = RowMapperHelper.getMapper(entityClass);
+        this.plan = mapper != null ? mapper.plan(rs) : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!fetched) {
+            if (closed) {
+                return false;
+            }
+            try {
+                hasNext = rs.next();
+            } catch (SQLException e) {
+                close();
+                LOGGER.error("fetch next row failure", e);
+                throw new RuntimeException(e);
+            }
+            fetched = true;
+            if (!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        try {
+            return mapper != null ? mapper.mapRow(rs, plan) : ROW_PROCESSOR.toBean(rs, entityClass);
+        } catch (SQLException e) {
+            close();
+            LOGGER.error("map row failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 关闭结果集(可重复调用)
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            rs.close();
+        } catch (SQLException e) {
+            LOGGER.error("close result set failure", e);
+        }
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            LOGGER.error("close statement failure", e);
+        }
+    }
+
+    /**
+     * 转为Stream,Stream关闭时关闭游标
+     */
+    public Stream<T> stream() {
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+}
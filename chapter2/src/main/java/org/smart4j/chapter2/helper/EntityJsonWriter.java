@@ -0,0 +1,316 @@
+package org.smart4j.chapter2.helper;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 实体JSON序列化器
+ *      与EntityRowMapper相同,每个实体类只内省一次:为每个getter生成对应类型的MethodHandle,
+ *      并预先拼好 "属性名": 前缀,序列化时直接写入Writer,不创建中间的Map或字符串
+ *
+ *      属性按字段声明顺序输出,其余只有getter的属性排在后面;
+ *      超出JavaScript安全整数范围(2^53-1)的long输出为字符串,避免浏览器解析时丢失精度(如分片生成的id)
+ */
+public final class EntityJsonWriter<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private static final ConcurrentMap<Class<?>, EntityJsonWriter<?>> WRITER_MAP = new ConcurrentHashMap<Class<?>, EntityJsonWriter<?>>();
+
+    private static final char[] NULL = "null".toCharArray();
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // JavaScript能精确表示的最大整数
+    private static final long MAX_SAFE_INTEGER = (1L << 53) - 1;
+
+    private final Class<T> entityClass;
+    private final PropertyWriter[] writers;
+
+    private EntityJsonWriter(Class<T> entityClass, PropertyWriter[] writers) {
+        this.entityClass = entityClass;
+        this.writers = writers;
+    }
+
+    /**
+     * 获取实体类的序列化器
+     *
+     * @throws IllegalArgumentException 实体类没有可访问的getter
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityJsonWriter<T> get(Class<T> entityClass) {
+        EntityJsonWriter<T> writer = (EntityJsonWriter<T>) WRITER_MAP.get(entityClass);
+        if (writer == null) {
+            writer = compile(entityClass);
+            EntityJsonWriter<T> existing = (EntityJsonWriter<T>) WRITER_MAP.putIfAbsent(entityClass, writer);
+            if (existing != null) {
+                writer = existing;
+            }
+        }
+        return writer;
+    }
+
+    private static <T> EntityJsonWriter<T> compile(Class<T> entityClass) {
+        if (!Modifier.isPublic(entityClass.getModifiers())) {
+            throw new IllegalArgumentException(entityClass.getName() + " is not public");
+        }
+        try {
+            Map<String, PropertyDescriptor> descriptorMap = new LinkedHashMap<String, PropertyDescriptor>();
+            BeanInfo beanInfo = Introspector.getBeanInfo(entityClass, Object.class);
+            for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                Method readMethod = descriptor.getReadMethod();
+                if (readMethod != null && Modifier.isPublic(readMethod.getModifiers())) {
+                    descriptorMap.put(descriptor.getName(), descriptor);
+                }
+            }
+            List<PropertyDescriptor> descriptors = new ArrayList<PropertyDescriptor>(descriptorMap.size());
+            for (Field field : entityClass.getDeclaredFields()) {
+                PropertyDescriptor descriptor = descriptorMap.remove(field.getName());
+                if (descriptor != null) {
+                    descriptors.add(descriptor);
+                }
+            }
+            descriptors.addAll(descriptorMap.values());
+            if (descriptors.isEmpty()) {
+                throw new IllegalArgumentException(entityClass.getName() + " has no public getter");
+            }
+            PropertyWriter[] writers = new PropertyWriter[descriptors.size()];
+            for (int i = 0; i < writers.length; i++) {
+                PropertyDescriptor descriptor = descriptors.get(i);
+                String prefix = (i > 0 ? "," : "") + quote(descriptor.getName()) + ":";
+                writers[i] = PropertyWriter.create(descriptor.getPropertyType(),
+                        LOOKUP.unreflect(descriptor.getReadMethod()), prefix.toCharArray());
+            }
+            return new EntityJsonWriter<T>(entityClass, writers);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        } catch (IntrospectionException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * 写入一个实体对象(entity为null时写入null)
+     */
+    public void write(T entity, Writer out) throws IOException {
+        if (entity == null) {
+            out.write(NULL);
+            return;
+        }
+        out.write('{');
+        try {
+            for (PropertyWriter writer : writers) {
+                writer.write(entity, out);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("write " + entityClass.getName() + " as json failure", e);
+        }
+        out.write('}');
+    }
+
+    /**
+     * 逐个写入实体数组,不缓存整个列表
+     */
+    public void writeArray(Iterator<? extends T> iterator, Writer out) throws IOException {
+        out.write('[');
+        boolean first = true;
+        while (iterator.hasNext()) {
+            if (!first) {
+                out.write(',');
+            }
+            write(iterator.next(), out);
+            first = false;
+        }
+        out.write(']');
+    }
+
+    /**
+     * 写入JSON字符串(value为null时写入null)
+     */
+    public static void writeString(String value, Writer out) throws IOException {
+        if (value == null) {
+            out.write(NULL);
+            return;
+        }
+        out.write('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            // 无需转义的部分整段写入
+            if (i > start) {
+                out.write(value, start, i - start);
+            }
+            start = i + 1;
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write("\\u");
+                    out.write(HEX[(c >> 12) & 0xF]);
+                    out.write(HEX[(c >> 8) & 0xF]);
+                    out.write(HEX[(c >> 4) & 0xF]);
+                    out.write(HEX[c & 0xF]);
+            }
+        }
+        if (start < length) {
+            out.write(value, start, length - start);
+        }
+        out.write('"');
+    }
+
+    /**
+     * 写入long:超出安全整数范围时输出为字符串
+     */
+    private static void writeLong(long value, Writer out) throws IOException {
+        if (value > MAX_SAFE_INTEGER || value < -MAX_SAFE_INTEGER) {
+            out.write('"');
+            out.write(Long.toString(value));
+            out.write('"');
+        } else {
+            out.write(Long.toString(value));
+        }
+    }
+
+    private static String quote(String value) {
+        StringWriter out = new StringWriter();
+        try {
+            writeString(value, out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * 属性写入器:通过MethodHandle调用getter,按属性类型写入JSON值
+     */
+    private abstract static class PropertyWriter {
+
+        final char[] prefix;
+
+        PropertyWriter(char[] prefix) {
+            this.prefix = prefix;
+        }
+
+        abstract void write(Object entity, Writer out) throws Throwable;
+
+        static PropertyWriter create(Class<?> type, MethodHandle handle, char[] prefix) {
+            if (type == long.class) {
+                final MethodHandle mh = handle.asType(MethodType.methodType(long.class, Object.class));
+                return new PropertyWriter(prefix) {
+                    @Override
+                    void write(Object entity, Writer out) throws Throwable {
+                        long value = (long) mh.invokeExact(entity);
+                        out.write(this.prefix);
+                        writeLong(value, out);
+                    }
+                };
+            }
+            if (type == int.class) {
+                final MethodHandle mh = handle.asType(MethodType.methodType(int.class, Object.class));
+                return new PropertyWriter(prefix) {
+                    @Override
+                    void write(Object entity, Writer out) throws Throwable {
+                        int value = (int) mh.invokeExact(entity);
+                        out.write(this.prefix);
+                        out.write(Integer.toString(value));
+                    }
+                };
+            }
+            if (type == boolean.class) {
+                final MethodHandle mh = handle.asType(MethodType.methodType(boolean.class, Object.class));
+                return new PropertyWriter(prefix) {
+                    @Override
+                    void write(Object entity, Writer out) throws Throwable {
+                        boolean value = (boolean) mh.invokeExact(entity);
+                        out.write(this.prefix);
+                        out.write(value ? "true" : "false");
+                    }
+                };
+            }
+            if (type == String.class) {
+                final MethodHandle mh = handle.asType(MethodType.methodType(String.class, Object.class));
+                return new PropertyWriter(prefix) {
+                    @Override
+                    void write(Object entity, Writer out) throws Throwable {
+                        String value = (String) mh.invokeExact(entity);
+                        out.write(this.prefix);
+                        writeString(value, out);
+                    }
+                };
+            }
+            final MethodHandle mh = handle.asType(MethodType.methodType(Object.class, Object.class));
+            return new PropertyWriter(prefix) {
+                @Override
+                void write(Object entity, Writer out) throws Throwable {
+                    Object value = (Object) mh.invokeExact(entity);
+                    out.write(this.prefix);
+                    writeValue(value, out);
+                }
+            };
+        }
+
+        /**
+         * 其他类型:数值和布尔原样输出(NaN和无穷大输出null,超出安全整数范围的Long输出字符串),其余按toString输出字符串
+         */
+        static void writeValue(Object value, Writer out) throws IOException {
+            if (value == null) {
+                out.write(NULL);
+            } else if (value instanceof Double || value instanceof Float) {
+                double d = ((Number) value).doubleValue();
+                if (Double.isNaN(d) || Double.isInfinite(d)) {
+                    out.write(NULL);
+                } else {
+                    out.write(value.toString());
+                }
+            } else if (value instanceof Long) {
+                writeLong((Long) value, out);
+            } else if (value instanceof Number || value instanceof Boolean) {
+                out.write(value.toString());
+            } else {
+                writeString(value.toString(), out);
+            }
+        }
+    }
+}
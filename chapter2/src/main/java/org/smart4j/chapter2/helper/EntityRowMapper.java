@@ -0,0 +1,352 @@
+package org.smart4j.chapter2.helper;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 实体行映射器
+ *      每个实体类只在创建时内省一次,为每个属性生成对应类型的MethodHandle,
+ *      每个结果集只计算一次"列序号 -> 属性"的映射计划,逐行映射时不再使用反射
+ *
+ *      列名与属性名的匹配规则与DbUtils的BeanProcessor一致(忽略大小写),未匹配的列被忽略;
+ *      NULL列同样调用setter:引用类型写入null,基本类型写入0/false
+ */
+public final class EntityRowMapper<T> {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    private final Class<T> entityClass;
+
+    // 无参构造器,类型为 ()Object
+    private final MethodHandle constructor;
+
+    // 小写属性名 -> 属性写入器
+    private final Map<String, ColumnSetter> setterMap;
+
+    // 最近一次使用的映射计划,同一SQL反复执行时列名相同,直接复用
+    private volatile ColumnPlan lastPlan;
+
+    private EntityRowMapper(Class<T> entityClass, MethodHandle constructor, Map<String, ColumnSetter> setterMap) {
+        this.entityClass = entityClass;
+        this.constructor = constructor;
+        this.setterMap = setterMap;
+    }
+
+    /**
+     * 编译实体类的行映射器,实体类不是标准JavaBean时返回null
+     */
+    static <T> EntityRowMapper<T> compile(Class<T> entityClass) {
+        if (!Modifier.isPublic(entityClass.getModifiers()) || entityClass.isInterface()
+                || Modifier.isAbstract(entityClass.getModifiers())) {
+            return null;
+        }
+        try {
+            MethodHandle constructor = LOOKUP.findConstructor(entityClass, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            Map<String, ColumnSetter> setterMap = new HashMap<String, ColumnSetter>();
+            BeanInfo beanInfo = Introspector.getBeanInfo(entityClass, Object.class);
+            for (PropertyDescriptor descriptor : beanInfo.getPropertyDescriptors()) {
+                Method writeMethod = descriptor.getWriteMethod();
+                if (writeMethod != null && Modifier.isPublic(writeMethod.getModifiers())) {
+                    MethodHandle handle = LOOKUP.unreflect(writeMethod);
+                    setterMap.put(descriptor.getName().toLowerCase(Locale.ENGLISH),
+                            ColumnSetter.create(descriptor.getPropertyType(), handle));
+                }
+            }
+            if (setterMap.isEmpty()) {
+                return null;
+            }
+            return new EntityRowMapper<T>(entityClass, constructor, setterMap);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (IntrospectionException e) {
+            return null;
+        }
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * 获取结果集的映射计划(结果集打开后调用一次)
+     */
+    public ColumnPlan plan(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        ColumnPlan plan = lastPlan;
+        if (plan != null && plan.matches(metaData)) {
+            return plan;
+        }
+        int columnCount = metaData.getColumnCount();
+        String[] labels = new String[columnCount];
+        ColumnSetter[] setters = new ColumnSetter[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            labels[i] = getColumnLabel(metaData, i + 1);
+            setters[i] = setterMap.get(labels[i].toLowerCase(Locale.ENGLISH));
+        }
+        plan = new ColumnPlan(labels, setters);
+        lastPlan = plan;
+        return plan;
+    }
+
+    /**
+     * 将结果集当前行映射为实体
+     */
+    @SuppressWarnings("unchecked")
+    public T mapRow(ResultSet rs, ColumnPlan plan) throws SQLException {
+        try {
+            Object entity = (Object) constructor.invokeExact();
+            ColumnSetter[] setters = plan.setters;
+            for (int i = 0; i < setters.length; i++) {
+                if (setters[i] != null) {
+                    setters[i].set(entity, rs, i + 1);
+                }
+            }
+            return (T) entity;
+        } catch (SQLException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SQLException("map row to " + entityClass.getName() + " failure", e);
+        }
+    }
+
+    private static String getColumnLabel(ResultSetMetaData metaData, int column) throws SQLException {
+        String label = metaData.getColumnLabel(column);
+        if (label == null || label.isEmpty()) {
+            label = metaData.getColumnName(column);
+        }
+        return label;
+    }
+
+    /**
+     * 映射计划:第i列对应的属性写入器(null表示忽略该列)
+     */
+    public static final class ColumnPlan {
+
+        private final String[] labels;
+        private final ColumnSetter[] setters;
+
+        private ColumnPlan(String[] labels, ColumnSetter[] setters) {
+            this.labels = labels;
+            this.setters = setters;
+        }
+
+        private boolean matches(ResultSetMetaData metaData) throws SQLException {
+            if (metaData.getColumnCount() != labels.length) {
+                return false;
+            }
+            for (int i = 0; i < labels.length; i++) {
+                if (!labels[i].equals(getColumnLabel(metaData, i + 1))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 属性写入器:按属性类型从结果集读取列值,并通过MethodHandle调用setter
+     */
+    private abstract static class ColumnSetter {
+
+        abstract void set(Object entity, ResultSet rs, int column) throws Throwable;
+
+        static ColumnSetter create(Class<?> type, MethodHandle handle) {
+            if (type == long.class) {
+                final MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, long.class));
+                return new ColumnSetter() {
+                    @Override
+                    void set(Object entity, ResultSet rs, int column) throws Throwable {
+                        mh.invokeExact(entity, rs.getLong(column));
+                    }
+                };
+            }
+            if (type == int.class) {
+                final MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, int.class));
+                return new ColumnSetter() {
+                    @Override
+                    void set(Object entity, ResultSet rs, int column) throws Throwable {
+                        mh.invokeExact(entity, rs.getInt(column));
+                    }
+                };
+            }
+            if (type == double.class) {
+                final MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, double.class));
+                return new ColumnSetter() {
+                    @Override
+                    void set(Object entity, ResultSet rs, int column) throws Throwable {
+                        mh.invokeExact(entity, rs.getDouble(column));
+                    }
+                };
+            }
+            if (type == boolean.class) {
+                final MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, boolean.class));
+                return new ColumnSetter() {
+                    @Override
+                    void set(Object entity, ResultSet rs, int column) throws Throwable {
+                        mh.invokeExact(entity, rs.getBoolean(column));
+                    }
+                };
+            }
+            final MethodHandle mh = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            final ColumnReader reader = ColumnReader.forType(type);
+            // 其余基本类型遇到NULL时写入该类型的默认值
+            final Object nullValue = type.isPrimitive() ? Array.get(Array.newInstance(type, 1), 0) : null;
+            return new ColumnSetter() {
+                @Override
+                void set(Object entity, ResultSet rs, int column) throws Throwable {
+                    Object value = reader.read(rs, column);
+                    mh.invokeExact(entity, value != null ? value : nullValue);
+                }
+            };
+        }
+    }
+
+    /**
+     * 引用类型(及其余基本类型)的列读取方式
+     */
+    private enum ColumnReader {
+
+        STRING {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                return rs.getString(column);
+            }
+        },
+        LONG {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                long value = rs.getLong(column);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        INTEGER {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                int value = rs.getInt(column);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        DOUBLE {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                double value = rs.getDouble(column);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        FLOAT {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                float value = rs.getFloat(column);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        SHORT {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                short value = rs.getShort(column);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        BYTE {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                byte value = rs.getByte(column);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        BOOLEAN {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                boolean value = rs.getBoolean(column);
+                return rs.wasNull() ? null : value;
+            }
+        },
+        BIG_DECIMAL {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                return rs.getBigDecimal(column);
+            }
+        },
+        SQL_DATE {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                return rs.getDate(column);
+            }
+        },
+        SQL_TIME {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                return rs.getTime(column);
+            }
+        },
+        TIMESTAMP {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                return rs.getTimestamp(column);
+            }
+        },
+        BYTES {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                return rs.getBytes(column);
+            }
+        },
+        OBJECT {
+            @Override
+            Object read(ResultSet rs, int column) throws SQLException {
+                return rs.getObject(column);
+            }
+        };
+
+        abstract Object read(ResultSet rs, int column) throws SQLException;
+
+        static ColumnReader forType(Class<?> type) {
+            if (type == String.class) {
+                return STRING;
+            } else if (type == Long.class) {
+                return LONG;
+            } else if (type == Integer.class) {
+                return INTEGER;
+            } else if (type == Double.class) {
+                return DOUBLE;
+            } else if (type == Float.class || type == float.class) {
+                return FLOAT;
+            } else if (type == Short.class || type == short.class) {
+                return SHORT;
+            } else if (type == Byte.class || type == byte.class) {
+                return BYTE;
+            } else if (type == Boolean.class) {
+                return BOOLEAN;
+            } else if (type == BigDecimal.class) {
+                return BIG_DECIMAL;
+            } else if (type == java.sql.Date.class) {
+                return SQL_DATE;
+            } else if (type == java.sql.Time.class) {
+                return SQL_TIME;
+            } else if (type == java.sql.Timestamp.class || type == java.util.Date.class) {
+                return TIMESTAMP;
+            } else if (type == byte[].class) {
+                return BYTES;
+            }
+            return OBJECT;
+        }
+    }
+}
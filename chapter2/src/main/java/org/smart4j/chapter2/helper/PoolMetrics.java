@@ -0,0 +1,62 @@
+package org.smart4j.chapter2.helper;
+
+/**
+ * 连接池状态快照
+ */
+public final class PoolMetrics {
+
+    private final int active;                   // 已借出的Connection数
+    private final int idle;                     // 空闲的Connection数
+    private final int waiting;                  // 等待借出的线程数
+    private final int maxTotal;                 // 连接池上限
+    private final long borrowedCount;           // 累计借出次数
+    private final long meanBorrowWaitMillis;    // 借出平均等待时间
+    private final long maxBorrowWaitMillis;     // 借出最大等待时间
+
+    public PoolMetrics(int active, int idle, int waiting, int maxTotal,
+                       long borrowedCount, long meanBorrowWaitMillis, long maxBorrowWaitMillis) {
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.maxTotal = maxTotal;
+        this.borrowedCount = borrowedCount;
+        this.meanBorrowWaitMillis = meanBorrowWaitMillis;
+        this.maxBorrowWaitMillis = maxBorrowWaitMillis;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public long getBorrowedCount() {
+        return borrowedCount;
+    }
+
+    public long getMeanBorrowWaitMillis() {
+        return meanBorrowWaitMillis;
+    }
+
+    public long getMaxBorrowWaitMillis() {
+        return maxBorrowWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMetrics{active=" + active + ", idle=" + idle + ", waiting=" + waiting
+                + ", maxTotal=" + maxTotal + ", borrowed=" + borrowedCount
+                + ", meanBorrowWaitMillis=" + meanBorrowWaitMillis
+                + ", maxBorrowWaitMillis=" + maxBorrowWaitMillis + "}";
+    }
+}
@@ -0,0 +1,52 @@
+package org.smart4j.chapter2.helper;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbcp2.PoolableConnection;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+
+/**
+ * 可监控的DBCP连接池
+ *      BasicDataSource未公开底层对象池,这里暴露等待线程数和借出等待时间
+ */
+public class PooledDataSource extends BasicDataSource {
+
+    /**
+     * 等待借出Connection的线程数
+     */
+    public int getNumWaiters() {
+        GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+        return pool != null ? pool.getNumWaiters() : 0;
+    }
+
+    /**
+     * 累计借出次数
+     */
+    public long getBorrowedCount() {
+        GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+        return pool != null ? pool.getBorrowedCount() : 0;
+    }
+
+    /**
+     * 借出Connection的平均等待时间(毫秒)
+     */
+    public long getMeanBorrowWaitTimeMillis() {
+        GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+        return pool != null ? pool.getMeanBorrowWaitTimeMillis() : 0;
+    }
+
+    /**
+     * 借出Connection的最大等待时间(毫秒)
+     */
+    public long getMaxBorrowWaitTimeMillis() {
+        GenericObjectPool<PoolableConnection> pool = getConnectionPool();
+        return pool != null ? pool.getMaxBorrowWaitTimeMillis() : 0;
+    }
+
+    /**
+     * 获取连接池当前状态
+     */
+    public PoolMetrics getMetrics() {
+        return new PoolMetrics(getNumActive(), getNumIdle(), getNumWaiters(), getMaxTotal(),
+                getBorrowedCount(), getMeanBorrowWaitTimeMillis(), getMaxBorrowWaitTimeMillis());
+    }
+}
@@ -0,0 +1,116 @@
+package org.smart4j.chapter2.helper;
+
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.apache.commons.dbutils.handlers.BeanHandler;
+import org.apache.commons.dbutils.handlers.BeanListHandler;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 行映射器注册表
+ *      每个实体类只编译一次EntityRowMapper,并缓存无状态的ResultSetHandler;
+ *      无法编译(非标准JavaBean)的类退回到DbUtils的BeanHandler/BeanListHandler
+ */
+public final class RowMapperHelper {
+
+    private static final ConcurrentMap<Class<?>, Registration<?>> REGISTRATION_MAP = new ConcurrentHashMap<Class<?>, Registration<?>>();
+
+    /**
+     * 获取实体行映射器(无法编译时返回null)
+     */
+    public static <T> EntityRowMapper<T> getMapper(Class<T> entityClass) {
+        return getRegistration(entityClass).mapper;
+    }
+
+    /**
+     * 获取实体列表的ResultSetHandler
+     */
+    public static <T> ResultSetHandler<List<T>> getListHandler(Class<T> entityClass) {
+        return getRegistration(entityClass).listHandler;
+    }
+
+    /**
+     * 获取单个实体的ResultSetHandler
+     */
+    public static <T> ResultSetHandler<T> getHandler(Class<T> entityClass) {
+        return getRegistration(entityClass).handler;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Registration<T> getRegistration(Class<T> entityClass) {
+        Registration<T> registration = (Registration<T>) REGISTRATION_MAP.get(entityClass);
+        if (registration == null) {
+            registration = new Registration<T>(entityClass, EntityRowMapper.compile(entityClass));
+            Registration<T> existing = (Registration<T>) REGISTRATION_MAP.putIfAbsent(entityClass, registration);
+            if (existing != null) {
+                registration = existing;
+            }
+        }
+        return registration;
+    }
+
+    /**
+     * 实体类注册信息
+     */
+    private static final class Registration<T> {
+
+        private final EntityRowMapper<T> mapper;
+        private final ResultSetHandler<List<T>> listHandler;
+        private final ResultSetHandler<T> handler;
+
+        private Registration(Class<T> entityClass, EntityRowMapper<T> mapper) {
+            this.mapper = mapper;
+            if (mapper != null) {
+                this.listHandler = new EntityListHandler<T>(mapper);
+                this.handler = new EntityHandler<T>(mapper);
+            } else {
+                this.listHandler = new BeanListHandler<T>(entityClass);
+                this.handler = new BeanHandler<T>(entityClass);
+            }
+        }
+    }
+
+    /**
+     * 将结果集映射为实体列表
+     */
+    private static final class EntityListHandler<T> implements ResultSetHandler<List<T>> {
+
+        private final EntityRowMapper<T> mapper;
+
+        private EntityListHandler(EntityRowMapper<T> mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        public List<T> handle(ResultSet rs) throws SQLException {
+            EntityRowMapper.ColumnPlan plan = mapper.plan(rs);
+            List<T> entityList = new ArrayList<T>();
+            while (rs.next()) {
+                entityList.add(mapper.mapRow(rs, plan));
+            }
+            return entityList;
+        }
+    }
+
+    /**
+     * 将结果集第一行映射为实体(无数据时返回null)
+     */
+    private static final class EntityHandler<T> implements ResultSetHandler<T> {
+
+        private final EntityRowMapper<T> mapper;
+
+        private EntityHandler(EntityRowMapper<T> mapper) {
+            this.mapper = mapper;
+        }
+
+        @Override
+        public T handle(ResultSet rs) throws SQLException {
+            return rs.next() ? mapper.mapRow(rs, mapper.plan(rs)) : null;
+        }
+    }
+}
@@ -0,0 +1,474 @@
+package org.smart4j.chapter2.helper;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.cache.QueryCache;
+import org.smart4j.chapter2.cache.TableChangeCounter;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.metrics.LatencyHistogram;
+import org.smart4j.chapter2.metrics.SlowQueryLog;
+import org.smart4j.chapter2.metrics.SqlMetrics;
+import org.smart4j.chapter2.util.CastUtil;
+import org.smart4j.chapter2.util.StringUtil;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分片路由
+ *      jdbc.shard.tables中的表按id哈希分布到N个分片(jdbc.shard.1.*、jdbc.shard.2.* ...,未配置的项沿用jdbc.*):
+ *
+ *      jdbc.shard.1.url=jdbc:mysql://shard1:3306/demo
+ *      jdbc.shard.2.url=jdbc:mysql://shard2:3306/demo
+ *      jdbc.shard.tables=customer
+ *
+ *      按id的读写只访问一个分片;全表查询并行发送到所有分片,合并后按指定顺序排序并截取
+ *      每次操作从分片连接池借出Connection,操作完成即归还,不支持跨分片事务
+ */
+public final class ShardRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardRouter.class);
+
+    private static final String SHARD_PREFIX = ".shard.";
+
+    // id生成器的起始时间(2018-01-01)
+    private static final long ID_EPOCH = 1514764800000L;
+
+    private final List<PooledDataSource> shards;
+    private final Set<String> tables;
+    private final long timeoutMillis;
+    private final long nodeId;
+    private final ThreadPoolExecutor executor;
+    private final LatencyHistogram[] latencies;
+    private final QueryRunner queryRunner = new QueryRunner();
+
+    // 查询结果缓存(由DatabaseHelper设置,未开启时为null)
+    private volatile QueryCache queryCache;
+
+    // id生成器状态:时间戳(毫秒) << 12 | 序号
+    private final AtomicLong idState = new AtomicLong();
+
+    public ShardRouter(List<PooledDataSource> shards, Set<String> tables, long timeoutMillis, long nodeId,
+                       int executorSize) {
+        this.shards = Collections.unmodifiableList(new ArrayList<PooledDataSource>(shards));
+        this.tables = new HashSet<String>();
+        for (String table : tables) {
+            this.tables.add(table.trim().toLowerCase());
+        }
+        this.timeoutMillis = timeoutMillis;
+        this.nodeId = nodeId & 0x3FF;
+        this.latencies = new LatencyHistogram[shards.size()];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        final AtomicInteger threadNumber = new AtomicInteger();
+        // 队列满时由调用线程自己执行,不会拒绝查询
+        this.executor = new ThreadPoolExecutor(executorSize, executorSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(1000), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "shard-query-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 根据配置创建分片路由,没有配置分片时返回null
+     */
+    public static ShardRouter create(Config conf, String prefix) {
+        List<PooledDataSource> shards = new ArrayList<PooledDataSource>();
+        for (int i = 1; conf.containsKey(prefix + SHARD_PREFIX + i + ".url"); i++) {
+            shards.add(DataSourceHelper.createDataSource(conf, prefix, prefix + SHARD_PREFIX + i));
+        }
+        if (shards.isEmpty()) {
+            return null;
+        }
+        Set<String> tables = new HashSet<String>();
+        String tablesValue = conf.getString(prefix + SHARD_PREFIX + "tables");
+        if (StringUtil.isNotEmpty(tablesValue)) {
+            Collections.addAll(tables, tablesValue.split(","));
+        }
+        long timeoutMillis = conf.getLong(prefix + SHARD_PREFIX + "timeoutMillis", 30000);
+        long nodeId = conf.getLong(prefix + SHARD_PREFIX + "nodeId", 0);
+        int executorSize = conf.getInt(prefix + SHARD_PREFIX + "executorSize", shards.size() * 4);
+        LOGGER.info("{} shards for tables {}", shards.size(), tables);
+        return new ShardRouter(shards, tables, timeoutMillis, nodeId, Math.max(1, executorSize));
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public List<PooledDataSource> getShards() {
+        return shards;
+    }
+
+    /**
+     * 实体对应的表是否分片
+     */
+    public boolean isSharded(Class<?> entityClass) {
+        return tables.contains(SqlTemplateHelper.getTableName(entityClass).toLowerCase());
+    }
+
+    /**
+     * 分片函数:对id做混淆后取模,连续的id也能均匀分布
+     */
+    public int getShardIndex(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) ((h & Long.MAX_VALUE) % shards.size());
+    }
+
+    /**
+     * 分片的查询耗时
+     */
+    public LatencyHistogram getLatency(int shardIndex) {
+        return latencies[shardIndex];
+    }
+
+    /**
+     * 生成全局唯一id(41位毫秒时间戳 + 10位节点号 + 12位序号),同一毫秒内序号用尽时顺延到下一毫秒
+     */
+    public long nextId() {
+        long now = (System.currentTimeMillis() - ID_EPOCH) << 12;
+        long prev;
+        long next;
+        do {
+            prev = idState.get();
+            next = Math.max(now, prev + 1);
+        } while (!idState.compareAndSet(prev, next));
+        return (next >>> 12) << 22 | nodeId << 12 | (next & 0xFFF);
+    }
+
+    /**
+     * 插入实体(fieldMap中没有id时生成id)
+     */
+    public boolean insertEntity(Class<?> entityClass, Map<String, Object> fieldMap) {
+        Map<String, Object> shardFieldMap = withId(fieldMap);
+        long id = CastUtil.castLong(shardFieldMap.get("id"));
+        String sql = SqlTemplateHelper.getInsertSql(entityClass, shardFieldMap.keySet());
+        return update(getShardIndex(id), sql, SqlTemplateHelper.getInsertParams(shardFieldMap)) == 1;
+    }
+
+    public boolean updateEntity(Class<?> entityClass, long id, Map<String, Object> fieldMap) {
+        String sql = SqlTemplateHelper.getUpdateSql(entityClass, fieldMap.keySet());
+        return update(getShardIndex(id), sql, SqlTemplateHelper.getUpdateParams(id, fieldMap)) == 1;
+    }
+
+    public boolean deleteEntity(Class<?> entityClass, long id) {
+        return update(getShardIndex(id), SqlTemplateHelper.getDeleteSql(entityClass), id) == 1;
+    }
+
+    /**
+     * 批量插入:按分片分组,每个分片在一个事务中执行批处理
+     */
+    public int insertEntities(Class<?> entityClass, List<Map<String, Object>> fieldMapList, int batchSize) {
+        List<Map<String, List<Object[]>>> batchMaps = newBatchMaps();
+        for (Map<String, Object> fieldMap : fieldMapList) {
+            Map<String, Object> shardFieldMap = withId(fieldMap);
+            int shardIndex = getShardIndex(CastUtil.castLong(shardFieldMap.get("id")));
+            addBatchParams(batchMaps.get(shardIndex), SqlTemplateHelper.getInsertSql(entityClass, shardFieldMap.keySet()),
+                    SqlTemplateHelper.getInsertParams(shardFieldMap));
+        }
+        return executeBatch(batchMaps, batchSize);
+    }
+
+    /**
+     * 批量更新:按分片分组,每个分片在一个事务中执行批处理
+     */
+    public int updateEntities(Class<?> entityClass, Map<Long, Map<String, Object>> fieldMapById, int batchSize) {
+        List<Map<String, List<Object[]>>> batchMaps = newBatchMaps();
+        for (Map.Entry<Long, Map<String, Object>> entry : fieldMapById.entrySet()) {
+            long id = entry.getKey();
+            addBatchParams(batchMaps.get(getShardIndex(id)),
+                    SqlTemplateHelper.getUpdateSql(entityClass, entry.getValue().keySet()),
+                    SqlTemplateHelper.getUpdateParams(id, entry.getValue()));
+        }
+        return executeBatch(batchMaps, batchSize);
+    }
+
+    /**
+     * 在shardKey所在的分片上查询实体
+     */
+    public <T> T queryEntity(Class<T> entityClass, long shardKey, String sql, Object... params) {
+        return query(getShardIndex(shardKey), sql, RowMapperHelper.getHandler(entityClass), params);
+    }
+
+    /**
+     * 在所有分片上并行查询,合并后排序
+     *
+     * @param order 合并后的顺序,为null时按分片顺序拼接
+     * @param limit 合并后最多返回的条数,小于等于0时不限制
+     */
+    public <T> List<T> queryEntityList(Class<T> entityClass, Comparator<? super T> order, int limit,
+                                       final String sql, final Object... params) {
+        final ResultSetHandler<List<T>> handler = RowMapperHelper.getListHandler(entityClass);
+        List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            final int shardIndex = i;
+            tasks.add(new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    return query(shardIndex, sql, handler, params);
+                }
+            });
+        }
+        List<T> entityList = scatter(tasks, sql);
+        if (order != null) {
+            // 各分片的结果已分别有序,TimSort合并有序段接近线性
+            Collections.sort(entityList, order);
+        }
+        if (limit > 0 && entityList.size() > limit) {
+            entityList = new ArrayList<T>(entityList.subList(0, limit));
+        }
+        return entityList;
+    }
+
+    /**
+     * 按id批量查询:id按分片分组,每个分片按chunkSize分批执行IN查询,多个分片并行(结果无序)
+     */
+    public <T> List<T> queryEntityListByIds(final Class<T> entityClass, Collection<Long> ids, final int chunkSize) {
+        final ResultSetHandler<List<T>> handler = RowMapperHelper.getListHandler(entityClass);
+        List<List<Long>> idsByShard = new ArrayList<List<Long>>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            idsByShard.add(new ArrayList<Long>());
+        }
+        for (Long id : ids) {
+            idsByShard.get(getShardIndex(id)).add(id);
+        }
+        List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            final int shardIndex = i;
+            final List<Long> shardIds = idsByShard.get(i);
+            if (shardIds.isEmpty()) {
+                continue;
+            }
+            tasks.add(new Callable<List<T>>() {
+                @Override
+                public List<T> call() {
+                    List<T> entityList = new ArrayList<T>(shardIds.size());
+                    for (int from = 0; from < shardIds.size(); from += chunkSize) {
+                        List<Long> chunk = shardIds.subList(from, Math.min(from + chunkSize, shardIds.size()));
+                        int paddedSize = SqlTemplateHelper.getPaddedSize(chunk.size());
+                        entityList.addAll(query(shardIndex, SqlTemplateHelper.getSelectByIdsSql(entityClass, paddedSize),
+                                handler, SqlTemplateHelper.getSelectByIdsParams(chunk, paddedSize)));
+                    }
+                    return entityList;
+                }
+            });
+        }
+        if (tasks.isEmpty()) {
+            return new ArrayList<T>();
+        }
+        return scatter(tasks, "SELECT BY IDS FROM " + SqlTemplateHelper.getTableName(entityClass));
+    }
+
+    /**
+     * 设置写入后需要失效的查询结果缓存
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * 关闭执行器和全部分片连接池
+     */
+    public void close() {
+        executor.shutdownNow();
+        for (PooledDataSource shard : shards) {
+            try {
+                shard.close();
+            } catch (SQLException e) {
+                LOGGER.error("close shard failure", e);
+            }
+        }
+    }
+
+    private Map<String, Object> withId(Map<String, Object> fieldMap) {
+        if (fieldMap.get("id") != null) {
+            return fieldMap;
+        }
+        Map<String, Object> shardFieldMap = new LinkedHashMap<String, Object>(fieldMap.size() + 2);
+        shardFieldMap.put("id", nextId());
+        shardFieldMap.putAll(fieldMap);
+        return shardFieldMap;
+    }
+
+    private <R> R query(int shardIndex, String sql, ResultSetHandler<R> handler, Object... params) {
+        long start = System.nanoTime();
+        try (Connection conn = shards.get(shardIndex).getConnection()) {
+            R result = queryRunner.query(conn, sql, handler, params);
+            record(shardIndex, sql, params, start, result instanceof List ? ((List<?>) result).size() : -1, false);
+            return result;
+        } catch (SQLException e) {
+            record(shardIndex, sql, params, start, -1, true);
+            LOGGER.error("query shard " + (shardIndex + 1) + " failure", e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private int update(int shardIndex, String sql, Object... params) {
+        long start = System.nanoTime();
+        try (Connection conn = shards.get(shardIndex).getConnection()) {
+            int rows = queryRunner.update(conn, sql, params);
+            record(shardIndex, sql, params, start, rows, false);
+            return rows;
+        } catch (SQLException e) {
+            record(shardIndex, sql, params, start, -1, true);
+            LOGGER.error("update shard " + (shardIndex + 1) + " failure", e);
+            throw new RuntimeException(e);
+        } finally {
+            onWrite(sql);
+        }
+    }
+
+    private List<Map<String, List<Object[]>>> newBatchMaps() {
+        List<Map<String, List<Object[]>>> batchMaps = new ArrayList<Map<String, List<Object[]>>>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            batchMaps.add(new LinkedHashMap<String, List<Object[]>>());
+        }
+        return batchMaps;
+    }
+
+    private static void addBatchParams(Map<String, List<Object[]>> batchMap, String sql, Object[] params) {
+        List<Object[]> paramsList = batchMap.get(sql);
+        if (paramsList == null) {
+            paramsList = new ArrayList<Object[]>();
+            batchMap.put(sql, paramsList);
+        }
+        paramsList.add(params);
+    }
+
+    private int executeBatch(List<Map<String, List<Object[]>>> batchMaps, int batchSize) {
+        int rows = 0;
+        for (int shardIndex = 0; shardIndex < batchMaps.size(); shardIndex++) {
+            Map<String, List<Object[]>> batchMap = batchMaps.get(shardIndex);
+            if (!batchMap.isEmpty()) {
+                rows += executeBatch(shardIndex, batchMap, batchSize);
+            }
+        }
+        return rows;
+    }
+
+    private int executeBatch(int shardIndex, Map<String, List<Object[]>> batchMap, int batchSize) {
+        int rows = 0;
+        try (Connection conn = shards.get(shardIndex).getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (Map.Entry<String, List<Object[]>> entry : batchMap.entrySet()) {
+                    List<Object[]> paramsList = entry.getValue();
+                    for (int from = 0; from < paramsList.size(); from += batchSize) {
+                        int to = Math.min(from + batchSize, paramsList.size());
+                        long start = System.nanoTime();
+                        int batchRows = 0;
+                        for (int count : queryRunner.batch(conn, entry.getKey(),
+                                paramsList.subList(from, to).toArray(new Object[to - from][]))) {
+                            batchRows += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                        }
+                        record(shardIndex, entry.getKey(), null, start, batchRows, false);
+                        rows += batchRows;
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOGGER.error("execute batch on shard " + (shardIndex + 1) + " failure", e);
+            throw new RuntimeException(e);
+        } finally {
+            for (String sql : batchMap.keySet()) {
+                onWrite(sql);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * 写入后递增表的修改计数,并使查询缓存中涉及该表的结果失效(与DatabaseHelper相同)
+     */
+    private void onWrite(String sql) {
+        TableChangeCounter.onWrite(sql);
+        QueryCache cache = queryCache;
+        if (cache != null) {
+            cache.invalidate(sql);
+        }
+    }
+
+    private void record(int shardIndex, String sql, Object[] params, long start, long rows, boolean error) {
+        long nanos = System.nanoTime() - start;
+        latencies[shardIndex].record(nanos);
+        SqlMetrics.record(sql, nanos, rows, error);
+        SlowQueryLog.record(sql, params, nanos, rows, error);
+    }
+
+    /**
+     * 第一个任务在当前线程中执行,其余任务提交到执行器,在超时时间内等待全部完成后合并结果
+     */
+    private <T> List<T> scatter(List<Callable<List<T>>> tasks, String sql) {
+        List<Future<List<T>>> futures = new ArrayList<Future<List<T>>>(tasks.size());
+        for (int i = 1; i < tasks.size(); i++) {
+            futures.add(executor.submit(tasks.get(i)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            List<T> entityList = new ArrayList<T>(tasks.get(0).call());
+            for (Future<List<T>> future : futures) {
+                entityList.addAll(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+            return entityList;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(futures);
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            cancel(futures);
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (TimeoutException e) {
+            cancel(futures);
+            LOGGER.error("scatter query timeout: {}", sql);
+            throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            cancel(futures);
+            throw e;
+        } catch (Exception e) {
+            cancel(futures);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void cancel(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.smart4j.chapter2.helper;
+
+/**
+ * SQL脚本执行结果
+ */
+public final class SqlScriptResult {
+
+    private final String filePath;
+    private final long statements;
+    private final long rows;
+    private final long elapsedMillis;
+
+    public SqlScriptResult(String filePath, long statements, long rows, long elapsedMillis) {
+        this.filePath = filePath;
+        this.statements = statements;
+        this.rows = rows;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * 执行的语句数
+     */
+    public long getStatements() {
+        return statements;
+    }
+
+    /**
+     * 影响的行数
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 每秒写入的行数
+     */
+    public double getRowsPerSecond() {
+        return rows * 1000.0 / Math.max(1, elapsedMillis);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d statements, %d rows in %d ms (%.0f rows/s)",
+                filePath, statements, rows, elapsedMillis, getRowsPerSecond());
+    }
+}
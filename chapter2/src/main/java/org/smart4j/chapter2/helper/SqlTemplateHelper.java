@@ -0,0 +1,262 @@
+package org.smart4j.chapter2.helper;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * SQL模板助手类
+ *      按实体类缓存表名和DELETE语句,按有序列集合缓存INSERT/UPDATE语句,
+ *      相同列集合的重复写入直接复用已拼装好的SQL
+ *      按id批量查询的IN参数个数补齐到2的幂,不同的id个数只对应少量语句,PreparedStatement缓存可以命中
+ *      实体有version属性时,UPDATE语句同时递增version列(列集合中显式包含version时除外);
+ *      表还没有version列时由DatabaseHelper调用disableVersion,之后不再递增
+ */
+public final class SqlTemplateHelper {
+
+    // 每个实体类最多缓存的列集合数量,超出后不再缓存(防止任意列组合撑爆内存)
+    private static final int MAX_TEMPLATES_PER_ENTITY = 256;
+
+    // 版本号列,实体有version属性时每次UPDATE递增
+    public static final String VERSION_COLUMN = "version";
+
+    // 按id批量查询时每条语句最多包含的id数(2的幂)
+    public static final int MAX_IN_SIZE = 256;
+
+    private static final ConcurrentMap<Class<?>, EntityTemplate> TEMPLATE_MAP = new ConcurrentHashMap<Class<?>, EntityTemplate>();
+
+    /**
+     * 获取实体对应的表名
+     */
+    public static String getTableName(Class<?> entityClass) {
+        return getTemplate(entityClass).tableName;
+    }
+
+    /**
+     * 获取INSERT语句: INSERT INTO table (c1, c2, ...) VALUES (?, ?, ...)
+     */
+    public static String getInsertSql(Class<?> entityClass, Collection<String> columns) {
+        EntityTemplate template = getTemplate(entityClass);
+        ColumnKey key = new ColumnKey(columns);
+        String sql = template.insertSqlMap.get(key);
+        if (sql == null) {
+            sql = buildInsertSql(template.tableName, key.columns);
+            template.cache(template.insertSqlMap, key, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 获取UPDATE语句: UPDATE table SET c1 = ?, c2 = ?, ... [, version = version + 1] WHERE id = ?
+     */
+    public static String getUpdateSql(Class<?> entityClass, Collection<String> columns) {
+        EntityTemplate template = getTemplate(entityClass);
+        ColumnKey key = new ColumnKey(columns);
+        String sql = template.updateSqlMap.get(key);
+        if (sql == null) {
+            boolean versioned = template.versioned;
+            sql = buildUpdateSql(template.tableName, key.columns, versioned);
+            // 期间调用过disableVersion时不缓存
+            if (versioned == template.versioned) {
+                template.cache(template.updateSqlMap, key, sql);
+            }
+        }
+        return sql;
+    }
+
+    /**
+     * UPDATE语句是否递增version列(实体有version属性且没有调用过disableVersion)
+     */
+    public static boolean isVersioned(Class<?> entityClass) {
+        return getTemplate(entityClass).versioned;
+    }
+
+    /**
+     * 表中没有version列(还没有执行迁移)时调用:此后的UPDATE语句不再递增version列
+     */
+    public static void disableVersion(Class<?> entityClass) {
+        EntityTemplate template = getTemplate(entityClass);
+        template.versioned = false;
+        template.updateSqlMap.clear();
+    }
+
+    /**
+     * 获取DELETE语句: DELETE FROM table WHERE id = ?
+     */
+    public static String getDeleteSql(Class<?> entityClass) {
+        return getTemplate(entityClass).deleteSql;
+    }
+
+    /**
+     * 获取按id批量查询语句: SELECT * FROM table WHERE id IN (?, ?, ...)
+     *
+     * @param paddedSize 参数个数,由getPaddedSize计算
+     */
+    public static String getSelectByIdsSql(Class<?> entityClass, int paddedSize) {
+        EntityTemplate template = getTemplate(entityClass);
+        String sql = template.selectByIdsSqlMap.get(paddedSize);
+        if (sql == null) {
+            sql = buildSelectByIdsSql(template.tableName, paddedSize);
+            template.selectByIdsSqlMap.putIfAbsent(paddedSize, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * IN参数个数:size向上取整到2的幂(最大MAX_IN_SIZE)
+     */
+    public static int getPaddedSize(int size) {
+        if (size <= 1) {
+            return 1;
+        }
+        return Math.min(MAX_IN_SIZE, Integer.highestOneBit(size - 1) << 1);
+    }
+
+    /**
+     * 获取按id批量查询参数:不足paddedSize个时重复最后一个id补齐(不影响查询结果)
+     */
+    public static Object[] getSelectByIdsParams(List<Long> ids, int paddedSize) {
+        Object[] params = new Object[paddedSize];
+        for (int i = 0; i < paddedSize; i++) {
+            params[i] = ids.get(Math.min(i, ids.size() - 1));
+        }
+        return params;
+    }
+
+    /**
+     * 获取INSERT参数(与getInsertSql的列顺序一致)
+     */
+    public static Object[] getInsertParams(Map<String, Object> fieldMap) {
+        return fieldMap.values().toArray();
+    }
+
+    /**
+     * 获取UPDATE参数(与getUpdateSql的列顺序一致,最后一个参数为id)
+     */
+    public static Object[] getUpdateParams(long id, Map<String, Object> fieldMap) {
+        Object[] params = new Object[fieldMap.size() + 1];
+        int i = 0;
+        for (Object value : fieldMap.values()) {
+            params[i++] = value;
+        }
+        params[i] = id;
+        return params;
+    }
+
+    private static EntityTemplate getTemplate(Class<?> entityClass) {
+        EntityTemplate template = TEMPLATE_MAP.get(entityClass);
+        if (template == null) {
+            template = new EntityTemplate(entityClass);
+            EntityTemplate existing = TEMPLATE_MAP.putIfAbsent(entityClass, template);
+            if (existing != null) {
+                template = existing;
+            }
+        }
+        return template;
+    }
+
+    private static String buildInsertSql(String tableName, String[] columns) {
+        StringBuilder sql = new StringBuilder(32 + columns.length * 16);
+        sql.append("INSERT INTO ").append(tableName).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(')').toString();
+    }
+
+    private static String buildUpdateSql(String tableName, String[] columns, boolean versioned) {
+        StringBuilder sql = new StringBuilder(56 + columns.length * 16);
+        sql.append("UPDATE ").append(tableName).append(" SET ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]).append(" = ?");
+            if (VERSION_COLUMN.equals(columns[i])) {
+                versioned = false;
+            }
+        }
+        if (versioned) {
+            sql.append(", ").append(VERSION_COLUMN).append(" = ").append(VERSION_COLUMN).append(" + 1");
+        }
+        return sql.append(" WHERE id = ?").toString();
+    }
+
+    private static String buildSelectByIdsSql(String tableName, int size) {
+        StringBuilder sql = new StringBuilder(40 + size * 3);
+        sql.append("SELECT * FROM ").append(tableName).append(" WHERE id IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * 实体类的SQL模板
+     */
+    private static final class EntityTemplate {
+
+        private final String tableName;
+        private final String deleteSql;
+        // UPDATE是否递增version列(实体有version属性,且表中有version列)
+        private volatile boolean versioned;
+        private final ConcurrentMap<ColumnKey, String> insertSqlMap = new ConcurrentHashMap<ColumnKey, String>();
+        private final ConcurrentMap<ColumnKey, String> updateSqlMap = new ConcurrentHashMap<ColumnKey, String>();
+        private final ConcurrentMap<Integer, String> selectByIdsSqlMap = new ConcurrentHashMap<Integer, String>();
+
+        private EntityTemplate(Class<?> entityClass) {
+            this.tableName = entityClass.getSimpleName();
+            this.deleteSql = "DELETE FROM " + tableName + " WHERE id = ?";
+            this.versioned = hasVersion(entityClass);
+        }
+
+        private static boolean hasVersion(Class<?> entityClass) {
+            try {
+                Class<?> type = entityClass.getMethod("getVersion").getReturnType();
+                return type == long.class || type == int.class || type == Long.class || type == Integer.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+
+        private void cache(ConcurrentMap<ColumnKey, String> sqlMap, ColumnKey key, String sql) {
+            if (sqlMap.size() < MAX_TEMPLATES_PER_ENTITY) {
+                sqlMap.putIfAbsent(key, sql);
+            }
+        }
+    }
+
+    /**
+     * 有序列集合(列顺序决定参数顺序,因此顺序不同视为不同的key)
+     */
+    private static final class ColumnKey {
+
+        private final String[] columns;
+        private final int hash;
+
+        private ColumnKey(Collection<String> columns) {
+            this.columns = columns.toArray(new String[columns.size()]);
+            this.hash = Arrays.hashCode(this.columns);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof ColumnKey && Arrays.equals(columns, ((ColumnKey) obj).columns);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package org.smart4j.chapter2.helper;
+
+/**
+ * 事务回调
+ *      在DatabaseHelper.inTransaction中执行,抛出异常时回滚,正常返回时提交
+ */
+public interface TransactionCallback<T> {
+
+    T doInTransaction();
+}
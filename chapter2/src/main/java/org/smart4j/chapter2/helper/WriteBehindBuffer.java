@@ -0,0 +1,376 @@
+package org.smart4j.chapter2.helper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 延迟写入缓冲区(write-behind)
+ *      同一id在窗口期内的多次更新合并为一个字段集合(后写入的字段覆盖先写入的),窗口结束后由刷写线程
+ *      通过DatabaseHelper.updateEntities一次批量写入;批量写入失败时逐条重试,仍失败的更新记录日志后丢弃
+ *
+ *      缓冲的id数达到capacity时,新id的写入阻塞等待刷写(背压),超过timeoutMillis抛出RejectedExecutionException;
+ *      需要确认已持久化时调用flush();同步写入某个id前调用flush(id)或discard(id),以免缓冲中较早的更新覆盖同步写入
+ */
+public final class WriteBehindBuffer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    private final String name;
+    private final Class<?> entityClass;
+    private final long windowNanos;
+    private final int capacity;
+    private final long timeoutNanos;
+    private final WriteBehindCallback callback;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // 刷写线程等待:有新的更新、请求立即刷写或关闭
+    private final Condition changed = lock.newCondition();
+    // 写入线程等待:缓冲区有空位
+    private final Condition notFull = lock.newCondition();
+    // flush()等待:一批更新写入完成
+    private final Condition flushed = lock.newCondition();
+
+    // 以下状态由lock保护
+    private LinkedHashMap<Long, Map<String, Object>> pending = new LinkedHashMap<Long, Map<String, Object>>();
+    // 刷写线程正在写入的一批(没有时为null)
+    private Map<Long, Map<String, Object>> writing;
+    private long firstPendingNanos;
+    private long submittedSeq;
+    private long flushedSeq;
+    private boolean flushRequested;
+    private boolean closed;
+    private boolean terminated;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private final Thread flusher;
+
+    public WriteBehindBuffer(String name, Class<?> entityClass, long windowMillis, int capacity, long timeoutMillis,
+                             WriteBehindCallback callback) {
+        this.name = name;
+        this.entityClass = entityClass;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+        this.capacity = Math.max(1, capacity);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.callback = callback;
+        this.flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runFlusher();
+            }
+        }, "write-behind-" + name);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * 提交更新(fieldMap会被复制)
+     *
+     * @return 已关闭时返回false,由调用方同步写入
+     * @throws RejectedExecutionException 缓冲区已满且在timeoutMillis内没有空位
+     */
+    public boolean submit(long id, Map<String, Object> fieldMap) {
+        lock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (true) {
+                if (closed) {
+                    // 等待剩余的更新写完,保证调用方的同步写入在它们之后执行
+                    while (!terminated) {
+                        flushed.awaitUninterruptibly();
+                    }
+                    return false;
+                }
+                Map<String, Object> merged = pending.get(id);
+                if (merged != null) {
+                    merged.putAll(fieldMap);
+                    coalesced.increment();
+                    break;
+                }
+                if (pending.size() < capacity) {
+                    if (pending.isEmpty()) {
+                        firstPendingNanos = System.nanoTime();
+                        changed.signal();
+                    }
+                    pending.put(id, new LinkedHashMap<String, Object>(fieldMap));
+                    break;
+                }
+                if (remaining <= 0) {
+                    throw new RejectedExecutionException("write-behind buffer " + name + " is full");
+                }
+                flushRequested = true;
+                changed.signal();
+                remaining = notFull.awaitNanos(remaining);
+            }
+            submittedSeq++;
+            submitted.increment();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 立即刷写并等待调用前提交的更新全部写入数据库
+     *
+     * @return 期间没有写入失败时返回true
+     */
+    public boolean flush() {
+        long failuresBefore = failures.sum();
+        lock.lock();
+        try {
+            awaitFlushed(submittedSeq);
+        } finally {
+            lock.unlock();
+        }
+        return failures.sum() == failuresBefore;
+    }
+
+    /**
+     * 缓冲中或正在写入的更新包含该id时,立即刷写并等待写入数据库
+     *
+     * @return 期间没有写入失败时返回true
+     */
+    public boolean flush(long id) {
+        long failuresBefore = failures.sum();
+        lock.lock();
+        try {
+            if (pending.containsKey(id) || (writing != null && writing.containsKey(id))) {
+                awaitFlushed(submittedSeq);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return failures.sum() == failuresBefore;
+    }
+
+    /**
+     * 丢弃该id缓冲中的更新(例如随后要删除该记录),已在写入的一批则等待其写完
+     *
+     * @return 有被丢弃的更新时返回true
+     */
+    public boolean discard(long id) {
+        lock.lock();
+        try {
+            boolean discarded = pending.remove(id) != null;
+            if (discarded) {
+                notFull.signalAll();
+            }
+            long remaining = timeoutNanos;
+            while (writing != null && writing.containsKey(id) && !terminated) {
+                if (remaining <= 0) {
+                    throw new RuntimeException("flush write-behind buffer " + name + " timeout");
+                }
+                remaining = flushed.awaitNanos(remaining);
+            }
+            return discarded;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求立即刷写并等待target之前提交的更新写完(调用时持有lock)
+     */
+    private void awaitFlushed(long target) {
+        if (flushedSeq < target) {
+            flushRequested = true;
+            changed.signal();
+        }
+        long remaining = timeoutNanos;
+        try {
+            while (flushedSeq < target && !terminated) {
+                if (remaining <= 0) {
+                    throw new RuntimeException("flush write-behind buffer " + name + " timeout");
+                }
+                remaining = flushed.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 关闭:不再接受更新,写入缓冲区中剩余的更新后刷写线程退出
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            LOGGER.warn("write-behind buffer {} did not terminate in {} ms", name, TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 缓冲中等待写入的id数
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 提交的更新数
+     */
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    /**
+     * 合并到已有更新中的次数(少执行的UPDATE数)
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * 写入数据库的更新数
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * 写入失败(已丢弃)的更新数
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    private void runFlusher() {
+        while (true) {
+            Map<Long, Map<String, Object>> batch;
+            long batchSeq;
+            lock.lock();
+            try {
+                // 缓冲为空时也响应刷写请求:discard后缓冲可能为空,但flush仍在等待flushedSeq追上submittedSeq
+                while (pending.isEmpty() && !closed && !flushRequested) {
+                    awaitChange(-1);
+                }
+                if (pending.isEmpty() && closed) {
+                    terminated = true;
+                    flushed.signalAll();
+                    return;
+                }
+                // 从第一个更新到达起等待一个窗口,期间同一id的更新都会被合并
+                long deadline = firstPendingNanos + windowNanos;
+                while (!closed && !flushRequested && pending.size() < capacity) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    awaitChange(remaining);
+                }
+                batch = pending;
+                batchSeq = submittedSeq;
+                pending = new LinkedHashMap<Long, Map<String, Object>>();
+                writing = batch;
+                flushRequested = false;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            // 窗口期内的更新可能已全部被discard
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+            lock.lock();
+            try {
+                writing = null;
+                flushedSeq = batchSeq;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 刷写线程被中断时视为关闭,写完剩余的更新后退出
+     */
+    private void awaitChange(long nanos) {
+        try {
+            if (nanos < 0) {
+                changed.await();
+            } else {
+                changed.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            closed = true;
+        }
+    }
+
+    private void write(Map<Long, Map<String, Object>> batch) {
+        int failed = 0;
+        try (ConnectionScope scope = ConnectionScope.open()) {
+            try {
+                DatabaseHelper.updateEntities(entityClass, batch);
+            } catch (RuntimeException e) {
+                // 批量写入在同一事务中,失败时已回滚,逐条重试以免一条错误的更新拖累整批
+                LOGGER.error("write-behind buffer " + name + " batch failure, retry one by one", e);
+                for (Map.Entry<Long, Map<String, Object>> entry : batch.entrySet()) {
+                    try {
+                        DatabaseHelper.updateEntity(entityClass, entry.getKey(), entry.getValue());
+                    } catch (RuntimeException ex) {
+                        failed++;
+                        LOGGER.error("write-behind buffer " + name + " drop update of id " + entry.getKey(), ex);
+                    }
+                }
+            }
+            batches.increment();
+        } catch (RuntimeException e) {
+            failed = batch.size();
+            LOGGER.error("write-behind buffer " + name + " flush failure", e);
+        }
+        written.add(batch.size() - failed);
+        failures.add(failed);
+        if (callback != null) {
+            try {
+                callback.afterFlush(batch.keySet());
+            } catch (RuntimeException e) {
+                LOGGER.error("write-behind buffer " + name + " callback failure", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.smart4j.chapter2.helper;
+
+import java.util.Set;
+
+/**
+ * 延迟写入回调
+ */
+public interface WriteBehindCallback {
+
+    /**
+     * 一批更新写入数据库后调用(在刷写线程中执行)
+     */
+    void afterFlush(Set<Long> ids);
+}
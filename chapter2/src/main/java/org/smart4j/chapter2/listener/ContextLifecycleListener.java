@@ -0,0 +1,86 @@
+package org.smart4j.chapter2.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.config.ConfigHelper;
+import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.helper.DbExecutor;
+import org.smart4j.chapter2.metrics.StartupMetrics;
+import org.smart4j.chapter2.service.CustomerService;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.util.List;
+
+/**
+ * 应用生命周期
+ */
+@WebListener
+public class ContextLifecycleListener implements ServletContextListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContextLifecycleListener.class);
+
+    private Thread warmUpThread;
+
+    /**
+     * 应用启动时在后台线程中初始化并预热数据源(startup.warmUp.enabled为false时跳过预热,首次使用时才初始化),
+     *      不阻塞容器启动;预热完成前/health返回503,数据库不可用时每隔startup.warmUp.retryMillis重试
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        StartupMetrics.markStarting();
+        if (!ConfigHelper.get().getBoolean("startup.warmUp.enabled", true)) {
+            StartupMetrics.markReady(0, 0, 0);
+            return;
+        }
+        warmUpThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                warmUp();
+            }
+        }, "startup-warm-up");
+        warmUpThread.setDaemon(true);
+        warmUpThread.start();
+    }
+
+    private static void warmUp() {
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                List<String> statements = CustomerService.getWarmUpStatements();
+                int prepared = DatabaseHelper.warmUp(statements);
+                StartupMetrics.markReady(System.nanoTime() - start, DatabaseHelper.getOpenConnectionCount(), prepared);
+                return;
+            } catch (RuntimeException e) {
+                StartupMetrics.markFailure(e, false);
+                LOGGER.warn("warm up failure, retrying: {}", StartupMetrics.getError());
+            } catch (LinkageError e) {
+                // 静态初始化失败(如配置错误),重试也无法恢复
+                StartupMetrics.markFailure(e, true);
+                LOGGER.error("warm up failure", e);
+                return;
+            }
+            try {
+                Thread.sleep(Math.max(100, ConfigHelper.get().getLong("startup.warmUp.retryMillis", 5000)));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 应用停止时停止预热和监视配置文件,关闭数据库任务执行器,再写入延迟写入缓冲区中剩余的更新,
+     *      最后关闭全部连接池和分片执行器
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        if (warmUpThread != null) {
+            warmUpThread.interrupt();
+        }
+        ConfigHelper.shutdown();
+        DbExecutor.shutdown();
+        CustomerService.shutdown();
+        DatabaseHelper.shutdown();
+    }
+}
@@ -0,0 +1,110 @@
+package org.smart4j.chapter2.metrics;
+
+import java.util.Arrays;
+
+/**
+ * 慢查询记录
+ */
+public final class SlowQuery {
+
+    // 参数值最多保留的字符数
+    private static final int MAX_PARAM_LENGTH = 100;
+
+    private final long timestamp;
+    private final String sql;
+    private final Object[] params;
+    private final long durationNanos;
+    private final long rows;
+    private final boolean error;
+    private final String caller;
+    private final String thread;
+
+    // 执行计划(异步EXPLAIN完成后设置)
+    private volatile String plan;
+
+    SlowQuery(long timestamp, String sql, Object[] params, long durationNanos, long rows, boolean error,
+              String caller, String thread) {
+        this.timestamp = timestamp;
+        this.sql = sql;
+        this.params = params;
+        this.durationNanos = durationNanos;
+        this.rows = rows;
+        this.error = error;
+        this.caller = caller;
+        this.thread = thread;
+    }
+
+    /**
+     * 记录时间(毫秒)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * 绑定参数(过长的字符串会被截断)
+     */
+    public String getParams() {
+        if (params == null || params.length == 0) {
+            return "[]";
+        }
+        Object[] values = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            Object value = params[i];
+            if (value instanceof CharSequence && ((CharSequence) value).length() > MAX_PARAM_LENGTH) {
+                value = ((CharSequence) value).subSequence(0, MAX_PARAM_LENGTH) + "...";
+            }
+            values[i] = value;
+        }
+        return Arrays.deepToString(values);
+    }
+
+    Object[] getRawParams() {
+        return params;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public double getDurationMillis() {
+        return durationNanos / 1e6;
+    }
+
+    /**
+     * 返回或影响的行数,未知时为-1
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * 调用方法(优先取service层的方法)
+     */
+    public String getCaller() {
+        return caller;
+    }
+
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * 执行计划,未捕获时返回null
+     */
+    public String getPlan() {
+        return plan;
+    }
+
+    void setPlan(String plan) {
+        this.plan = plan;
+    }
+}
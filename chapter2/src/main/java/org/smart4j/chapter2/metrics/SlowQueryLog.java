@@ -0,0 +1,184 @@
+package org.smart4j.chapter2.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.helper.ConnectionScope;
+import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.config.ConfigHelper;
+import org.smart4j.chapter2.config.ConfigListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 慢查询日志
+ *      耗时超过阈值的SQL按采样率记录到固定大小的环形缓冲区中(覆盖最旧的记录),
+ *      未超过阈值时只做一次比较,不分配对象,可以在生产环境常开
+ *
+ *      开启EXPLAIN后,超过explain阈值的SELECT语句在后台线程中执行一次EXPLAIN,
+ *      同一条SQL的执行计划只获取一次
+ */
+public final class SlowQueryLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    private static final String SERVICE_PACKAGE = "org.smart4j.chapter2.service.";
+
+    // 最多缓存的执行计划数量
+    private static final int MAX_PLANS = 100;
+
+    // 阈值和采样率可在线修改;缓冲区大小及是否开启EXPLAIN重启后生效
+    private static volatile long THRESHOLD_NANOS;
+    private static volatile double SAMPLE_RATE;
+    private static volatile long EXPLAIN_THRESHOLD_NANOS;
+
+    private static final AtomicReferenceArray<SlowQuery> BUFFER;
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    // SQL -> 执行计划
+    private static final ConcurrentMap<String, String> PLAN_MAP = new ConcurrentHashMap<String, String>();
+
+    // 执行EXPLAIN的后台线程(队列满时丢弃)
+    private static final ThreadPoolExecutor EXPLAIN_EXECUTOR;
+
+    static {
+        Config conf = ConfigHelper.get();
+        BUFFER = new AtomicReferenceArray<SlowQuery>(Math.max(1, conf.getInt("jdbc.slowQuery.capacity", 256)));
+        if (conf.getBoolean("jdbc.slowQuery.explain", false)) {
+            EXPLAIN_EXECUTOR = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(16), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "slow-query-explain");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.DiscardPolicy());
+            EXPLAIN_EXECUTOR.allowCoreThreadTimeOut(true);
+        } else {
+            EXPLAIN_EXECUTOR = null;
+        }
+        applyThresholds(conf);
+        ConfigHelper.addListener(new ConfigListener() {
+            @Override
+            public void onChange(Config config, Set<String> changedKeys) {
+                applyThresholds(config);
+            }
+        });
+    }
+
+    private static void applyThresholds(Config conf) {
+        THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(conf.getLong("jdbc.slowQuery.thresholdMillis", 200));
+        SAMPLE_RATE = conf.getDouble("jdbc.slowQuery.sampleRate", 1.0);
+        EXPLAIN_THRESHOLD_NANOS = EXPLAIN_EXECUTOR != null
+                ? TimeUnit.MILLISECONDS.toNanos(conf.getLong("jdbc.slowQuery.explainThresholdMillis", 1000))
+                : Long.MAX_VALUE;
+    }
+
+    /**
+     * 记录一次执行(未超过阈值或未被采样时直接返回)
+     */
+    public static void record(String sql, Object[] params, long nanos, long rows, boolean error) {
+        if (nanos < THRESHOLD_NANOS) {
+            return;
+        }
+        if (SAMPLE_RATE < 1.0 && ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE) {
+            return;
+        }
+        SlowQuery slowQuery = new SlowQuery(System.currentTimeMillis(), sql,
+                params != null ? params.clone() : null, nanos, rows, error,
+                findCaller(), Thread.currentThread().getName());
+        BUFFER.set((int) (SEQUENCE.getAndIncrement() % BUFFER.length()), slowQuery);
+        if (nanos >= EXPLAIN_THRESHOLD_NANOS && !error) {
+            explain(slowQuery);
+        }
+    }
+
+    /**
+     * 获取缓冲区中的记录(由新到旧)
+     */
+    public static List<SlowQuery> getSlowQueries() {
+        int capacity = BUFFER.length();
+        long last = SEQUENCE.get();
+        List<SlowQuery> slowQueries = new ArrayList<SlowQuery>();
+        for (long seq = last - 1; seq >= 0 && seq >= last - capacity; seq--) {
+            SlowQuery slowQuery = BUFFER.get((int) (seq % capacity));
+            if (slowQuery != null) {
+                slowQueries.add(slowQuery);
+            }
+        }
+        return slowQueries;
+    }
+
+    /**
+     * 累计记录的慢查询数量
+     */
+    public static long getTotalRecorded() {
+        return SEQUENCE.get();
+    }
+
+    public static long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(THRESHOLD_NANOS);
+    }
+
+    private static void explain(final SlowQuery slowQuery) {
+        final String sql = slowQuery.getSql();
+        String plan = PLAN_MAP.get(sql);
+        if (plan != null) {
+            slowQuery.setPlan(plan);
+            return;
+        }
+        if (PLAN_MAP.size() >= MAX_PLANS || !sql.trim().regionMatches(true, 0, "select", 0, 6)) {
+            return;
+        }
+        EXPLAIN_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try (ConnectionScope scope = ConnectionScope.open()) {
+                    String plan = DatabaseHelper.explain(sql, slowQuery.getRawParams());
+                    PLAN_MAP.putIfAbsent(sql, plan);
+                    slowQuery.setPlan(plan);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("explain slow query failure: {}", e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * 查找调用方法:优先取service层的方法,否则取DatabaseHelper之外的第一个方法
+     */
+    private static String findCaller() {
+        StackTraceElement[] stackTrace = new Throwable().getStackTrace();
+        StackTraceElement fallback = null;
+        for (StackTraceElement element : stackTrace) {
+            String className = element.getClassName();
+            if (className.startsWith(SERVICE_PACKAGE)) {
+                return format(element);
+            }
+            if (fallback == null && !className.equals(SlowQueryLog.class.getName())
+                    && !className.equals(DatabaseHelper.class.getName())
+                    && !className.startsWith("org.apache.commons.dbutils.")) {
+                fallback = element;
+            }
+        }
+        return fallback != null ? format(fallback) : "unknown";
+    }
+
+    private static String format(StackTraceElement element) {
+        String className = element.getClassName();
+        return className.substring(className.lastIndexOf('.') + 1) + "." + element.getMethodName()
+                + ":" + element.getLineNumber();
+    }
+}
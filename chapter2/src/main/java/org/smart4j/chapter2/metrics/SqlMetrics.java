@@ -0,0 +1,74 @@
+package org.smart4j.chapter2.metrics;
+
+import org.smart4j.chapter2.util.SqlUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * SQL执行统计
+ *      按规范化SQL分组记录耗时直方图、行数和错误数;原始SQL到统计对象的映射会被缓存,
+ *      同一条SQL再次执行时不需要重新规范化
+ *
+ *      不同SQL超过MAX_STATEMENTS后,新的SQL计入"other"
+ */
+public final class SqlMetrics {
+
+    private static final int MAX_STATEMENTS = 1000;
+
+    private static final String OTHER_SQL = "other";
+
+    // 原始SQL -> 统计
+    private static final ConcurrentMap<String, StatementMetrics> RAW_SQL_MAP = new ConcurrentHashMap<String, StatementMetrics>();
+
+    // 规范化SQL -> 统计
+    private static final ConcurrentMap<String, StatementMetrics> METRICS_MAP = new ConcurrentHashMap<String, StatementMetrics>();
+
+    private static final StatementMetrics OTHER = new StatementMetrics(OTHER_SQL);
+
+    /**
+     * 记录一次执行
+     *
+     * @param rows  返回或影响的行数,未知时传-1
+     * @param error 是否执行失败
+     */
+    public static void record(String sql, long nanos, long rows, boolean error) {
+        getStatementMetrics(sql).record(nanos, rows, error);
+    }
+
+    /**
+     * 获取全部统计(不保证顺序)
+     */
+    public static List<StatementMetrics> getStatementMetricsList() {
+        List<StatementMetrics> metricsList = new ArrayList<StatementMetrics>(METRICS_MAP.values());
+        if (OTHER.getLatency().getCount() > 0) {
+            metricsList.add(OTHER);
+        }
+        return metricsList;
+    }
+
+    private static StatementMetrics getStatementMetrics(String sql) {
+        StatementMetrics metrics = RAW_SQL_MAP.get(sql);
+        if (metrics != null) {
+            return metrics;
+        }
+        String normalizedSql = SqlUtil.normalize(sql);
+        metrics = METRICS_MAP.get(normalizedSql);
+        if (metrics == null) {
+            if (METRICS_MAP.size() >= MAX_STATEMENTS) {
+                return OTHER;
+            }
+            metrics = new StatementMetrics(normalizedSql);
+            StatementMetrics existing = METRICS_MAP.putIfAbsent(normalizedSql, metrics);
+            if (existing != null) {
+                metrics = existing;
+            }
+        }
+        if (RAW_SQL_MAP.size() < MAX_STATEMENTS) {
+            RAW_SQL_MAP.putIfAbsent(sql, metrics);
+        }
+        return metrics;
+    }
+}
@@ -0,0 +1,166 @@
+package org.smart4j.chapter2.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 启动状态与耗时
+ *      应用启动后在后台初始化并预热数据源,完成前为STARTING,完成后为READY;
+ *      预热失败时保持STARTING并记录失败原因(后台继续重试),无法重试的错误为FAILED
+ *
+ *      记录从应用启动到就绪的时间、预热耗时,以及启动后第一个业务请求的响应时间
+ */
+public final class StartupMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupMetrics.class);
+
+    public enum State {
+        STARTING, READY, FAILED
+    }
+
+    private static volatile State state = State.STARTING;
+
+    // 应用启动时间(未经markStarting时为类加载时间)
+    private static volatile long startNanos = System.nanoTime();
+
+    // 从应用启动到就绪的时间,未就绪时为-1
+    private static volatile long readyNanos = -1;
+
+    // 最后一次预热的耗时
+    private static volatile long warmUpNanos = -1;
+
+    private static volatile int warmUpAttempts;
+    private static volatile int openConnections;
+    private static volatile int preparedStatements;
+
+    // 最后一次预热失败的原因,就绪后为null
+    private static volatile String error;
+
+    private static final AtomicBoolean FIRST_REQUEST_RECORDED = new AtomicBoolean();
+
+    // 第一个业务请求的响应时间、距应用启动的时间及URI
+    private static volatile long firstRequestNanos = -1;
+    private static volatile long firstRequestOffsetNanos = -1;
+    private static volatile String firstRequestUri;
+
+    private StartupMetrics() {
+    }
+
+    /**
+     * 应用开始启动
+     */
+    public static void markStarting() {
+        startNanos = System.nanoTime();
+        state = State.STARTING;
+    }
+
+    /**
+     * 预热完成,进入就绪状态
+     */
+    public static void markReady(long warmUpNanos, int openConnections, int preparedStatements) {
+        StartupMetrics.warmUpNanos = warmUpNanos;
+        StartupMetrics.openConnections = openConnections;
+        StartupMetrics.preparedStatements = preparedStatements;
+        warmUpAttempts++;
+        error = null;
+        readyNanos = System.nanoTime() - startNanos;
+        state = State.READY;
+        LOGGER.info("ready in {} ms after startup (warm-up {} ms, attempts: {}, connections: {}, prepared statements: {})",
+                toMillis(readyNanos), toMillis(warmUpNanos), warmUpAttempts, openConnections, preparedStatements);
+    }
+
+    /**
+     * 预热失败
+     *
+     * @param fatal 为true时不再重试,进入FAILED状态
+     */
+    public static void markFailure(Throwable cause, boolean fatal) {
+        warmUpAttempts++;
+        error = String.valueOf(cause.getMessage() != null ? cause.getMessage() : cause);
+        if (fatal) {
+            state = State.FAILED;
+        }
+    }
+
+    /**
+     * 第一个业务请求是否还未记录(用于在记录前跳过计时)
+     */
+    public static boolean isFirstRequestPending() {
+        return !FIRST_REQUEST_RECORDED.get();
+    }
+
+    /**
+     * 记录第一个业务请求的响应时间(只有第一次调用生效)
+     *
+     * @param beginNanos 请求开始时的System.nanoTime()
+     */
+    public static void recordFirstRequest(String uri, long beginNanos) {
+        if (!FIRST_REQUEST_RECORDED.compareAndSet(false, true)) {
+            return;
+        }
+        long now = System.nanoTime();
+        firstRequestUri = uri;
+        firstRequestOffsetNanos = beginNanos - startNanos;
+        firstRequestNanos = now - beginNanos;
+        LOGGER.info("first request {} took {} ms ({} ms after startup, state: {})",
+                uri, toMillis(firstRequestNanos), toMillis(firstRequestOffsetNanos), state);
+    }
+
+    public static State getState() {
+        return state;
+    }
+
+    public static boolean isReady() {
+        return state == State.READY;
+    }
+
+    /**
+     * 应用启动至今的时间
+     */
+    public static long getUptimeNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public static long getReadyNanos() {
+        return readyNanos;
+    }
+
+    public static long getWarmUpNanos() {
+        return warmUpNanos;
+    }
+
+    public static int getWarmUpAttempts() {
+        return warmUpAttempts;
+    }
+
+    public static int getOpenConnections() {
+        return openConnections;
+    }
+
+    public static int getPreparedStatements() {
+        return preparedStatements;
+    }
+
+    public static String getError() {
+        return error;
+    }
+
+    public static long getFirstRequestNanos() {
+        return firstRequestNanos;
+    }
+
+    public static long getFirstRequestOffsetNanos() {
+        return firstRequestOffsetNanos;
+    }
+
+    public static String getFirstRequestUri() {
+        return firstRequestUri;
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,49 @@
+package org.smart4j.chapter2.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单条SQL(规范化后)的执行统计
+ */
+public final class StatementMetrics {
+
+    private final String sql;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    StatementMetrics(String sql) {
+        this.sql = sql;
+    }
+
+    void record(long nanos, long rowCount, boolean error) {
+        latency.record(nanos);
+        if (error) {
+            errors.increment();
+        } else if (rowCount > 0) {
+            rows.add(rowCount);
+        }
+    }
+
+    /**
+     * 规范化后的SQL
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * 累计返回或影响的行数
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+}
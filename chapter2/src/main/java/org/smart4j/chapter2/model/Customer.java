@@ -12,6 +12,7 @@ public class Customer {
     private String telephone;   // 电话号码
     private String email;       // 邮箱地址
     private String remark;      // 备注
+    private long version;       // 版本号(每次更新递增)
 
     public long getId() {
         return id;
@@ -60,4 +61,12 @@ public class Customer {
     public void setRemark(String remark) {
         this.remark = remark;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,29 @@
+package org.smart4j.chapter2.model;
+
+import java.util.List;
+
+/**
+ * 分页结果(基于游标)
+ */
+public class Page<T> {
+
+    private final List<T> items;        // 当前页数据
+    private final String nextCursor;    // 下一页游标(最后一页为null)
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isHasNext() {
+        return nextCursor != null;
+    }
+}
@@ -2,11 +2,33 @@ package org.smart4j.chapter2.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smart4j.chapter2.cache.CacheStats;
+import org.smart4j.chapter2.cache.LruCache;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.config.ConfigHelper;
+import org.smart4j.chapter2.config.ConfigListener;
+import org.smart4j.chapter2.helper.BatchLoadFunction;
+import org.smart4j.chapter2.helper.BatchLoader;
 import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.helper.EntityBinder;
+import org.smart4j.chapter2.helper.SqlTemplateHelper;
+import org.smart4j.chapter2.helper.WriteBehindBuffer;
+import org.smart4j.chapter2.helper.WriteBehindCallback;
 import org.smart4j.chapter2.model.Customer;
+import org.smart4j.chapter2.model.Page;
+import org.smart4j.chapter2.util.CastUtil;
+import org.smart4j.chapter2.util.CollectionUtil;
+import org.smart4j.chapter2.util.CursorUtil;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Created by Brave on 18/5/22.
@@ -16,40 +38,354 @@ public class CustomerService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CustomerService.class);
 
+    // 每页最大条数
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private static final String SELECT_ALL_SQL = "SELECT * FROM customer";
+    private static final String SELECT_PAGE_SQL = "SELECT * FROM customer WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String SELECT_BY_ID_SQL = "SELECT * FROM customer WHERE id = ?";
+    private static final String SELECT_VERSION_SQL = "SELECT id, version FROM customer WHERE id = ?";
+
+    // 按id排序(合并多个分片的查询结果)
+    private static final Comparator<Customer> ID_ORDER = new Comparator<Customer>() {
+        @Override
+        public int compare(Customer c1, Customer c2) {
+            return Long.compare(c1.getId(), c2.getId());
+        }
+    };
+
+    // 客户缓存(customer.cache.maxSize小于等于0时不启用),所有CustomerService实例共享
+    private static final LruCache<Long, Customer> CUSTOMER_CACHE;
+
+    // 合并并发的单个客户查询
+    private static final BatchLoader<Long, Customer> CUSTOMER_LOADER;
+
+    // 客户更新的延迟写入缓冲区(customer.writeBehind.enabled开启时才创建)
+    private static final WriteBehindBuffer CUSTOMER_WRITE_BEHIND;
+
+    static {
+        Config conf = ConfigHelper.get();
+        int maxSize = conf.getInt("customer.cache.maxSize", 10000);
+        long ttlSeconds = conf.getLong("customer.cache.ttlSeconds", 300);
+        CUSTOMER_CACHE = maxSize > 0 ? new LruCache<Long, Customer>("customer", maxSize, ttlSeconds) : null;
+        CUSTOMER_LOADER = new BatchLoader<Long, Customer>(new BatchLoadFunction<Long, Customer>() {
+            @Override
+            public Map<Long, Customer> loadAll(List<Long> ids) {
+                return loadCustomers(ids);
+            }
+        }, conf.getLong("customer.loader.windowMicros", 500),
+                conf.getInt("customer.loader.maxBatchSize", 100));
+        if (conf.getBoolean("customer.writeBehind.enabled", false)) {
+            CUSTOMER_WRITE_BEHIND = new WriteBehindBuffer("customer", Customer.class,
+                    conf.getLong("customer.writeBehind.windowMillis", 100),
+                    conf.getInt("customer.writeBehind.capacity", 10000),
+                    conf.getLong("customer.writeBehind.timeoutMillis", 5000), new WriteBehindCallback() {
+                @Override
+                public void afterFlush(Set<Long> ids) {
+                    // 窗口期内读穿透可能缓存了写入前的数据
+                    for (Long id : ids) {
+                        invalidate(id);
+                    }
+                }
+            });
+        } else {
+            CUSTOMER_WRITE_BEHIND = null;
+        }
+
+        // 缓存容量和过期时间在线调整(启用或关闭缓存重启后生效)
+        ConfigHelper.addListener(new ConfigListener() {
+            @Override
+            public void onChange(Config config, Set<String> changedKeys) {
+                if (CUSTOMER_CACHE != null && config.getInt("customer.cache.maxSize", 10000) > 0) {
+                    CUSTOMER_CACHE.setMaxSize(config.getInt("customer.cache.maxSize", 10000));
+                    CUSTOMER_CACHE.setTtlSeconds(config.getLong("customer.cache.ttlSeconds", 300));
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取客户缓存统计(未启用缓存时返回null)
+     */
+    public static CacheStats getCacheStats() {
+        return CUSTOMER_CACHE != null ? CUSTOMER_CACHE.getStats() : null;
+    }
+
+    /**
+     * 获取客户合并加载器(用于统计)
+     */
+    public static BatchLoader<Long, Customer> getCustomerLoader() {
+        return CUSTOMER_LOADER;
+    }
+
+    /**
+     * 获取客户更新的延迟写入缓冲区(未开启时返回null)
+     */
+    public static WriteBehindBuffer getCustomerWriteBehind() {
+        return CUSTOMER_WRITE_BEHIND;
+    }
+
+    /**
+     * 等待已提交的客户更新全部写入数据库(未开启延迟写入时直接返回true)
+     *
+     * @return 期间没有写入失败时返回true
+     */
+    public static boolean flushCustomerUpdates() {
+        return CUSTOMER_WRITE_BEHIND == null || CUSTOMER_WRITE_BEHIND.flush();
+    }
+
+    /**
+     * 应用停止时写入缓冲中的客户更新
+     */
+    public static void shutdown() {
+        if (CUSTOMER_WRITE_BEHIND != null) {
+            CUSTOMER_WRITE_BEHIND.close();
+        }
+    }
+
+    /**
+     * 启动时预编译的语句:列表、分页、按id和版本号查询,合并加载器各批量大小的IN查询,
+     *      以及表单(全部可绑定列)的INSERT/UPDATE和DELETE
+     */
+    public static List<String> getWarmUpStatements() {
+        List<String> sqlList = new ArrayList<String>();
+        sqlList.add(SELECT_ALL_SQL);
+        sqlList.add(SELECT_PAGE_SQL);
+        sqlList.add(SELECT_BY_ID_SQL);
+        // 同时检查表中是否有version列
+        if (DatabaseHelper.isVersioned(Customer.class)) {
+            sqlList.add(SELECT_VERSION_SQL);
+        }
+        int maxPaddedSize = SqlTemplateHelper.getPaddedSize(ConfigHelper.get().getInt("customer.loader.maxBatchSize", 100));
+        for (int paddedSize = 1; paddedSize <= maxPaddedSize; paddedSize <<= 1) {
+            sqlList.add(SqlTemplateHelper.getSelectByIdsSql(Customer.class, paddedSize));
+        }
+        List<String> columns = EntityBinder.get(Customer.class).getColumns();
+        sqlList.add(SqlTemplateHelper.getInsertSql(Customer.class, columns));
+        sqlList.add(SqlTemplateHelper.getUpdateSql(Customer.class, columns));
+        sqlList.add(SqlTemplateHelper.getDeleteSql(Customer.class));
+        return sqlList;
+    }
+
     /**
      * 获取客户列表
      */
     public List<Customer> getCustomerList() {
-        String sql = "select * from customer";
-        return DatabaseHelper.queryEntityList(Customer.class, sql);
+        return DatabaseHelper.queryEntityListFromAllShards(Customer.class, ID_ORDER, 0, SELECT_ALL_SQL);
+    }
+
+    /**
+     * 分页获取客户列表(基于id的游标分页)
+     *      WHERE id > ? ORDER BY id LIMIT ? 直接从主键索引定位,任意页的响应时间都与页码无关
+     *      分片时每个分片各取limit + 1条,合并后按id取前limit + 1条
+     *
+     * @param afterId 上一页最后一条记录的id,第一页传0
+     * @param limit   每页条数(1 ~ MAX_PAGE_SIZE)
+     */
+    public Page<Customer> getCustomerPage(long afterId, int limit) {
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        // 多查一条,用于判断是否存在下一页
+        List<Customer> customerList = DatabaseHelper.queryEntityListFromAllShards(Customer.class, ID_ORDER, limit + 1,
+                SELECT_PAGE_SQL, afterId, limit + 1);
+        String nextCursor = null;
+        if (customerList.size() > limit) {
+            customerList = customerList.subList(0, limit);
+            nextCursor = CursorUtil.encode(customerList.get(limit - 1).getId());
+        }
+        return new Page<Customer>(customerList, nextCursor);
+    }
+
+    /**
+     * 流式获取客户列表(使用完毕必须关闭Stream)
+     *      分片时退化为合并全部分片的结果
+     */
+    public Stream<Customer> streamCustomerList() {
+        if (DatabaseHelper.isSharded(Customer.class)) {
+            return getCustomerList().stream();
+        }
+        return DatabaseHelper.streamEntities(Customer.class, SELECT_ALL_SQL);
     }
 
     /**
      * 获取客户
+     *      优先读取缓存,返回的对象可能被其他请求共享,不要修改
+     *      未命中时经合并加载器查询:并发请求的不同id合并为一条IN查询,相同id只查询一次
      */
     public Customer getCustomer(long id) {
-        String sql = "SELECT * FROM customer WHERE id = ?";
-        return DatabaseHelper.queryEntity(Customer.class, sql, id);
+        if (CUSTOMER_CACHE == null) {
+            return loadCustomer(id);
+        }
+        Customer customer = CUSTOMER_CACHE.get(id);
+        if (customer == null) {
+            long stamp = CUSTOMER_CACHE.stamp(id);
+            customer = loadCustomer(id);
+            // 事务中读取的可能是未提交的数据,不放入缓存
+            if (!DatabaseHelper.isInTransaction()) {
+                CUSTOMER_CACHE.put(id, customer, stamp);
+            }
+        }
+        return customer;
+    }
+
+    /**
+     * 批量获取客户(按ids的顺序返回,不存在的id不包含在结果中)
+     *      先读取缓存,未命中的id按每批SqlTemplateHelper.MAX_IN_SIZE个执行IN查询
+     */
+    public Map<Long, Customer> getCustomers(Collection<Long> ids) {
+        Map<Long, Customer> customerMap = new LinkedHashMap<Long, Customer>(ids.size() * 4 / 3 + 1);
+        List<Long> missingIds = new ArrayList<Long>();
+        for (Long id : ids) {
+            Customer customer = CUSTOMER_CACHE != null ? CUSTOMER_CACHE.get(id) : null;
+            // 先占位,保证结果顺序与ids一致
+            customerMap.put(id, customer);
+            if (customer == null) {
+                missingIds.add(id);
+            }
+        }
+        if (!missingIds.isEmpty()) {
+            // 事务中读取的可能是未提交的数据,不放入缓存
+            boolean cacheable = CUSTOMER_CACHE != null && !DatabaseHelper.isInTransaction();
+            long[] stamps = new long[missingIds.size()];
+            if (cacheable) {
+                for (int i = 0; i < stamps.length; i++) {
+                    stamps[i] = CUSTOMER_CACHE.stamp(missingIds.get(i));
+                }
+            }
+            Map<Long, Customer> loadedMap = loadCustomers(missingIds);
+            for (int i = 0; i < stamps.length; i++) {
+                Long id = missingIds.get(i);
+                Customer customer = loadedMap.get(id);
+                if (customer == null) {
+                    customerMap.remove(id);
+                } else {
+                    customerMap.put(id, customer);
+                    if (cacheable) {
+                        CUSTOMER_CACHE.put(id, customer, stamps[i]);
+                    }
+                }
+            }
+        }
+        return customerMap;
+    }
+
+    /**
+     * customer表是否有version列(没有时客户版本号始终为0,不能用于生成ETag)
+     */
+    public boolean isVersioned() {
+        return DatabaseHelper.isVersioned(Customer.class);
+    }
+
+    /**
+     * 获取客户版本号(客户不存在时返回null),要求isVersioned()为true
+     *      优先读取缓存,否则只查询id和version两列,不加载整个客户
+     */
+    public Long getCustomerVersion(long id) {
+        Customer customer = CUSTOMER_CACHE != null ? CUSTOMER_CACHE.get(id) : null;
+        if (customer == null) {
+            customer = DatabaseHelper.queryEntityByShardKey(Customer.class, id, SELECT_VERSION_SQL, id);
+        }
+        return customer != null ? customer.getVersion() : null;
+    }
+
+    private Customer loadCustomer(long id) {
+        // 事务中读取的可能是未提交的数据,不能与其他请求共享
+        if (DatabaseHelper.isInTransaction()) {
+            return DatabaseHelper.queryEntityByShardKey(Customer.class, id, SELECT_BY_ID_SQL, id);
+        }
+        return CUSTOMER_LOADER.load(id);
+    }
+
+    private static Map<Long, Customer> loadCustomers(Collection<Long> ids) {
+        List<Customer> customerList = DatabaseHelper.queryEntityListByIds(Customer.class, ids);
+        Map<Long, Customer> customerMap = new HashMap<Long, Customer>(customerList.size() * 4 / 3 + 1);
+        for (Customer customer : customerList) {
+            customerMap.put(customer.getId(), customer);
+        }
+        return customerMap;
     }
 
     /**
      * 创建客户
      */
     public boolean createCustomer(Map<String, Object> fieldMap) {
-        return DatabaseHelper.insertEntity(Customer.class, fieldMap);
+        boolean result = DatabaseHelper.insertEntity(Customer.class, fieldMap);
+        invalidate(fieldMap);
+        return result;
+    }
+
+    /**
+     * 批量创建客户(JDBC批处理,同一事务)
+     */
+    public boolean createCustomers(List<Map<String, Object>> fieldMapList) {
+        if (CollectionUtil.isEmpty(fieldMapList)) {
+            LOGGER.error("can not create customers: fieldMapList is empty");
+            return false;
+        }
+        boolean result = DatabaseHelper.insertEntities(Customer.class, fieldMapList) == fieldMapList.size();
+        for (Map<String, Object> fieldMap : fieldMapList) {
+            invalidate(fieldMap);
+        }
+        return result;
     }
 
     /**
      * 更新客户
+     *      开启延迟写入时,更新合并到缓冲区后立即返回true(不检查客户是否存在),窗口结束后批量写入;
+     *      事务中的更新仍同步执行,执行前先写入该客户缓冲中的更新,以免其随后覆盖本次更新
      */
     public boolean updateCustomer(long id, Map<String, Object> fieldMap) {
-        return DatabaseHelper.updateEntity(Customer.class, id, fieldMap);
+        if (CUSTOMER_WRITE_BEHIND != null && CollectionUtil.isNotEmpty(fieldMap) && !DatabaseHelper.isInTransaction()
+                && CUSTOMER_WRITE_BEHIND.submit(id, fieldMap)) {
+            invalidate(id);
+            return true;
+        }
+        if (CUSTOMER_WRITE_BEHIND != null) {
+            CUSTOMER_WRITE_BEHIND.flush(id);
+        }
+        boolean result = DatabaseHelper.updateEntity(Customer.class, id, fieldMap);
+        invalidate(id);
+        return result;
     }
 
     /**
-     * 删除客户
+     * 删除客户(先丢弃该客户缓冲中的更新)
      */
     public boolean deleteCustomer(long id) {
-        return DatabaseHelper.deleteEntity(Customer.class, id);
+        if (CUSTOMER_WRITE_BEHIND != null) {
+            CUSTOMER_WRITE_BEHIND.discard(id);
+        }
+        boolean result = DatabaseHelper.deleteEntity(Customer.class, id);
+        invalidate(id);
+        return result;
+    }
+
+    /**
+     * 写入后使缓存失效
+     *      事务中的写入在事务结束(提交或回滚)后再失效一次:事务期间其他请求可能读到并缓存了提交前的数据
+     */
+    private static void invalidate(final long id) {
+        evict(id);
+        DatabaseHelper.afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                evict(id);
+            }
+        });
+    }
+
+    private static void evict(long id) {
+        if (CUSTOMER_CACHE != null) {
+            CUSTOMER_CACHE.remove(id);
+        }
+        CUSTOMER_LOADER.forget(id);
+    }
+
+    /**
+     * 写入时显式指定了id,使该id的缓存失效
+     */
+    private static void invalidate(Map<String, Object> fieldMap) {
+        if (fieldMap != null && fieldMap.containsKey("id")) {
+            invalidate(CastUtil.castLong(fieldMap.get("id")));
+        }
     }
 }
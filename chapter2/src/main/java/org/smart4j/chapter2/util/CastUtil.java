@@ -2,6 +2,7 @@ package org.smart4j.chapter2.util;
 
 /**
  * 转型操作工具类
+ *      数值和布尔型的转换由 TypeConverter 完成,不经过中间字符串和异常
  */
 public final class CastUtil {
 
@@ -30,18 +31,7 @@ public final class CastUtil {
      * 转为 double 型（提供默认值）
      */
     public static double castDouble(Object obj, double defaultValue) {
-        double doubleValue = defaultValue;
-        if (obj != null) {
-            String strValue = castString(obj);
-            if (StringUtil.isNotEmpty(strValue)) {
-                try {
-                    doubleValue = Double.parseDouble(strValue);
-                } catch (NumberFormatException e) {
-                    doubleValue = defaultValue;
-                }
-            }
-        }
-        return doubleValue;
+        return TypeConverter.toDouble(obj, defaultValue);
     }
 
     /**
@@ -55,18 +45,7 @@ public final class CastUtil {
      * 转为 long 型（提供默认值）
      */
     public static long castLong(Object obj, long defaultValue) {
-        long longValue = defaultValue;
-        if (obj != null) {
-            String strValue = castString(obj);
-            if (StringUtil.isNotEmpty(strValue)) {
-                try {
-                    longValue = Long.parseLong(strValue);
-                } catch (NumberFormatException e) {
-                    longValue = defaultValue;
-                }
-            }
-        }
-        return longValue;
+        return TypeConverter.toLong(obj, defaultValue);
     }
 
     /**
@@ -80,18 +59,7 @@ public final class CastUtil {
      * 转为 int 型（提供默认值）
      */
     public static int castInt(Object obj, int defaultValue) {
-        int intValue = defaultValue;
-        if (obj != null) {
-            String strValue = castString(obj);
-            if (StringUtil.isNotEmpty(strValue)) {
-                try {
-                    intValue = Integer.parseInt(strValue);
-                } catch (NumberFormatException e) {
-                    intValue = defaultValue;
-                }
-            }
-        }
-        return intValue;
+        return TypeConverter.toInt(obj, defaultValue);
     }
 
     /**
@@ -105,10 +73,13 @@ public final class CastUtil {
      * 转为 boolean 型（提供默认值）
      */
     public static boolean castBoolean(Object obj, boolean defaultValue) {
-        boolean booleanValue = defaultValue;
-        if (obj != null) {
-            booleanValue = Boolean.parseBoolean(castString(obj));
-        }
-        return booleanValue;
+        return TypeConverter.toBoolean(obj, defaultValue);
     }
-}
\ No newline at end of file
+
+    /**
+     * 转为指定类型(提供默认值),其他类型需先通过 TypeConverter.register 注册转换器
+     */
+    public static <T> T cast(Object obj, Class<T> type, T defaultValue) {
+        return TypeConverter.convert(obj, type, defaultValue);
+    }
+}
@@ -0,0 +1,12 @@
+package org.smart4j.chapter2.util;
+
+/**
+ * 类型转换器,通过 TypeConverter.register 注册到目标类型
+ */
+public interface Converter<T> {
+
+    /**
+     * 转换value(不为null),无法转换时返回defaultValue,不应抛出异常
+     */
+    T convert(Object value, T defaultValue);
+}
@@ -0,0 +1,47 @@
+package org.smart4j.chapter2.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 分页游标工具类
+ *      游标是对"上一页最后一条记录id"的编码,客户端只需原样传回,不应解析其内容
+ */
+public final class CursorUtil {
+
+    // 游标格式版本,修改编码方式时递增
+    private static final String PREFIX = "v1:";
+
+    /**
+     * 将id编码为游标
+     */
+    public static String encode(long id) {
+        byte[] bytes = (PREFIX + id).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * 将游标解码为id(游标为空时返回默认值)
+     *
+     * @throws IllegalArgumentException 游标格式非法
+     */
+    public static long decode(String cursor, long defaultValue) {
+        if (StringUtil.isEmpty(cursor)) {
+            return defaultValue;
+        }
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.US_ASCII);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+        }
+        if (!value.startsWith(PREFIX)) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor);
+        }
+        try {
+            return Long.parseLong(value.substring(PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -76,6 +76,28 @@ public final class PropsUtil {
         return value;
     }
 
+    /**
+     * 获取长整型属性（可指定默认值）
+     */
+    public static long getLong(Properties props, String key, long defaultValue) {
+        long value = defaultValue;
+        if (props.containsKey(key)) {
+            value = CastUtil.castLong(props.getProperty(key));
+        }
+        return value;
+    }
+
+    /**
+     * 获取浮点型属性（可指定默认值）
+     */
+    public static double getDouble(Properties props, String key, double defaultValue) {
+        double value = defaultValue;
+        if (props.containsKey(key)) {
+            value = CastUtil.castDouble(props.getProperty(key));
+        }
+        return value;
+    }
+
     /**
      * 获取布尔型属性（默认值为 false）
      */
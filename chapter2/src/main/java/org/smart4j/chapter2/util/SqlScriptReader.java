@@ -0,0 +1,229 @@
+package org.smart4j.chapter2.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * SQL脚本读取器
+ *      从Reader中逐条读取SQL语句(不会把整个脚本读入内存),支持:
+ *      多行语句、单引号/双引号/反引号中的分隔符和转义、-- 和 # 单行注释、块注释(保留MySQL条件注释)、
+ *      以及MySQL客户端的 DELIMITER 指令
+ */
+public final class SqlScriptReader implements Closeable {
+
+    private static final String DEFAULT_DELIMITER = ";";
+
+    private final Reader reader;
+    private String delimiter = DEFAULT_DELIMITER;
+
+    private static final String DELIMITER_KEYWORD = "DELIMITER ";
+
+    // 回退的字符(后进先出)
+    private final int[] pushback = new int[DELIMITER_KEYWORD.length()];
+    private int pushbackSize;
+
+    // 当前是否位于行首(只有空白字符)
+    private boolean lineStart = true;
+
+    public SqlScriptReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * 读取下一条语句(不含分隔符),脚本结束时返回null
+     */
+    public String nextStatement() throws IOException {
+        StringBuilder sql = new StringBuilder();
+        int c;
+        while ((c = read()) != -1) {
+            // DELIMITER指令必须位于行首
+            if (lineStart && (c == 'D' || c == 'd') && sql.toString().trim().isEmpty() && matchDelimiterKeyword(c)) {
+                delimiter = readLine().trim();
+                if (delimiter.isEmpty()) {
+                    throw new IOException("DELIMITER requires a value");
+                }
+                sql.setLength(0);
+                continue;
+            }
+            if (c == '\n') {
+                lineStart = true;
+                sql.append('\n');
+                continue;
+            }
+            if (!Character.isWhitespace(c)) {
+                lineStart = false;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                readQuoted(sql, (char) c);
+            } else if (c == '#' || (c == '-' && isDashComment())) {
+                skipLine();
+                sql.append('\n');
+            } else if (c == '/' && peek() == '*') {
+                read();
+                if (peek() == '!') {
+                    // MySQL条件注释作为语句的一部分保留
+                    sql.append("/*");
+                    readBlockComment(sql);
+                } else {
+                    readBlockComment(null);
+                    sql.append(' ');
+                }
+            } else {
+                sql.append((char) c);
+                if (endsWithDelimiter(sql, 0)) {
+                    String statement = finish(sql, delimiter.length());
+                    if (statement != null) {
+                        return statement;
+                    }
+                    sql.setLength(0);
+                }
+            }
+        }
+        String statement = sql.toString().trim();
+        return statement.isEmpty() ? null : statement;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private boolean endsWithDelimiter(StringBuilder sql, int offset) {
+        int end = sql.length() - offset;
+        int start = end - delimiter.length();
+        return start >= 0 && sql.substring(start, end).equals(delimiter);
+    }
+
+    /**
+     * 去掉末尾的分隔符,空语句返回null
+     */
+    private String finish(StringBuilder sql, int suffixLength) {
+        String statement = sql.substring(0, sql.length() - suffixLength).trim();
+        return statement.isEmpty() ? null : statement;
+    }
+
+    private void readQuoted(StringBuilder sql, char quote) throws IOException {
+        sql.append(quote);
+        int c;
+        while ((c = read()) != -1) {
+            sql.append((char) c);
+            if (c == '\\' && quote != '`') {
+                int next = read();
+                if (next != -1) {
+                    sql.append((char) next);
+                }
+            } else if (c == quote) {
+                // 两个连续的引号表示转义
+                if (peek() == quote) {
+                    sql.append((char) read());
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void readBlockComment(StringBuilder sql) throws IOException {
+        int c;
+        int previous = 0;
+        while ((c = read()) != -1) {
+            if (sql != null) {
+                sql.append((char) c);
+            }
+            if (previous == '*' && c == '/') {
+                return;
+            }
+            previous = c;
+        }
+    }
+
+    /**
+     * MySQL中只有"-- "(两个减号后跟空白)才是注释,a--1为减去负数
+     */
+    private boolean isDashComment() throws IOException {
+        int second = read();
+        if (second != '-') {
+            if (second != -1) {
+                unread(second);
+            }
+            return false;
+        }
+        int third = peek();
+        if (third == -1 || Character.isWhitespace(third)) {
+            return true;
+        }
+        unread(second);
+        return false;
+    }
+
+    private void skipLine() throws IOException {
+        int c;
+        while ((c = read()) != -1 && c != '\n') {
+            // skip
+        }
+        lineStart = true;
+    }
+
+    /**
+     * 判断以first开头的内容是否为DELIMITER关键字,是则消费关键字,否则回退已读取的字符
+     */
+    private boolean matchDelimiterKeyword(int first) throws IOException {
+        int[] read = new int[DELIMITER_KEYWORD.length()];
+        read[0] = first;
+        int count = 1;
+        boolean matched = true;
+        for (int i = 1; i < DELIMITER_KEYWORD.length(); i++) {
+            int c = read();
+            if (c == -1) {
+                matched = false;
+                break;
+            }
+            read[count++] = c;
+            char expected = DELIMITER_KEYWORD.charAt(i);
+            if (expected == ' ' ? !(c == ' ' || c == '\t') : Character.toUpperCase(c) != expected) {
+                matched = false;
+                break;
+            }
+        }
+        if (!matched) {
+            // first由调用方处理,只回退之后读取的字符
+            for (int i = count - 1; i >= 1; i--) {
+                unread(read[i]);
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 读取当前行的剩余内容(不含换行符)
+     */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = read()) != -1 && c != '\n') {
+            line.append((char) c);
+        }
+        lineStart = true;
+        return line.toString();
+    }
+
+    private int peek() throws IOException {
+        int c = read();
+        if (c != -1) {
+            unread(c);
+        }
+        return c;
+    }
+
+    private void unread(int c) {
+        pushback[pushbackSize++] = c;
+    }
+
+    private int read() throws IOException {
+        if (pushbackSize > 0) {
+            return pushback[--pushbackSize];
+        }
+        return reader.read();
+    }
+}
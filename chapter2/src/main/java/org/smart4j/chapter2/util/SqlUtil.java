@@ -0,0 +1,140 @@
+package org.smart4j.chapter2.util;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * SQL工具类
+ *      只做轻量的词法处理,不是完整的SQL解析器
+ */
+public final class SqlUtil {
+
+    /**
+     * 规范化SQL:合并空白、去掉末尾分号、引号外的内容转为小写
+     *      例如 "SELECT *  FROM Customer\n WHERE id = ?" -> "select * from customer where id = ?"
+     */
+    public static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean space = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                if (c == '\'' || c == '"' || c == '`') {
+                    quote = c;
+                    normalized.append(c);
+                } else {
+                    normalized.append(Character.toLowerCase(c));
+                }
+            }
+        }
+        int length = normalized.length();
+        while (length > 0 && (normalized.charAt(length - 1) == ';' || normalized.charAt(length - 1) == ' ')) {
+            length--;
+        }
+        normalized.setLength(length);
+        return normalized.toString();
+    }
+
+    /**
+     * 获取查询语句读取的表(FROM和JOIN之后的表名),参数为normalize之后的SQL
+     */
+    public static Set<String> getReadTables(String normalizedSql) {
+        Set<String> tables = new LinkedHashSet<String>();
+        String[] tokens = normalizedSql.split(" ");
+        for (int i = 0; i < tokens.length - 1; i++) {
+            if (!"from".equals(tokens[i]) && !"join".equals(tokens[i])) {
+                continue;
+            }
+            // FROM a, b / FROM a x, b y / FROM a AS x, b AS y
+            int j = i + 1;
+            while (j < tokens.length) {
+                String token = tokens[j];
+                // a,b 之间没有空格时在同一个token中
+                for (String part : token.split(",")) {
+                    String table = toTableName(part);
+                    if (table != null) {
+                        tables.add(table);
+                    }
+                }
+                if (token.endsWith(",")) {
+                    j++;
+                    continue;
+                }
+                int k = j + 1;
+                if (k < tokens.length && "as".equals(tokens[k])) {
+                    k++;
+                }
+                if (k < tokens.length && tokens[k].endsWith(",")) {
+                    j = k + 1;
+                    continue;
+                }
+                break;
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * 获取写入语句修改的表(INSERT/REPLACE INTO、UPDATE、DELETE FROM、TRUNCATE),无法识别时返回null
+     */
+    public static String getWriteTable(String normalizedSql) {
+        String[] tokens = normalizedSql.split(" ", 5);
+        if (tokens.length < 2) {
+            return null;
+        }
+        String first = tokens[0];
+        if ("update".equals(first)) {
+            return toTableName("low_priority".equals(tokens[1]) || "ignore".equals(tokens[1]) ? tokenAt(tokens, 2) : tokens[1]);
+        }
+        if ("truncate".equals(first)) {
+            return toTableName("table".equals(tokens[1]) ? tokenAt(tokens, 2) : tokens[1]);
+        }
+        if ("insert".equals(first) || "replace".equals(first) || "delete".equals(first)) {
+            for (int i = 1; i < tokens.length - 1; i++) {
+                if ("into".equals(tokens[i]) || "from".equals(tokens[i])) {
+                    return toTableName(tokens[i + 1]);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String tokenAt(String[] tokens, int index) {
+        return index < tokens.length ? tokens[index] : null;
+    }
+
+    /**
+     * 去掉库名前缀、反引号和括号: `demo`.`customer`(id, ...) -> customer
+     */
+    private static String toTableName(String token) {
+        if (token == null || token.isEmpty() || token.startsWith("(")) {
+            return null;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '(' || c == ')') {
+                token = token.substring(0, i);
+                break;
+            }
+        }
+        int dot = token.lastIndexOf('.');
+        if (dot >= 0) {
+            token = token.substring(dot + 1);
+        }
+        token = token.replace("`", "").replace("\"", "");
+        return token.isEmpty() ? null : token.toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,375 @@
+package org.smart4j.chapter2.util;
+
+import java.math.BigInteger;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 类型转换引擎(CastUtil的实现)
+ *      Number/Boolean输入直接取值,CharSequence输入逐字符解析,不转成String、不用异常表示非法输入;
+ *      结果与原先的 String.valueOf + parseXxx 实现一致(例如整数不忽略首尾空白,带小数点的数不能转为整数)
+ *
+ *      其他目标类型通过register注册Converter,convert按目标类型查找
+ */
+public final class TypeConverter {
+
+    private static final ConcurrentMap<Class<?>, Converter<?>> CONVERTER_MAP = new ConcurrentHashMap<Class<?>, Converter<?>>();
+
+    // 不超过2^53的整数和10^22以内的10的幂都能用double精确表示,相除的结果即为正确舍入的值
+    private static final int MAX_EXACT_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+
+        Converter<String> stringConverter = new Converter<String>() {
+            @Override
+            public String convert(Object value, String defaultValue) {
+                return String.valueOf(value);
+            }
+        };
+        Converter<Long> longConverter = new Converter<Long>() {
+            @Override
+            public Long convert(Object value, Long defaultValue) {
+                // 结果为0时再确认一次,区分"0"和非法输入
+                long result = toLong(value, 0);
+                return result != 0 || toLong(value, 1) == 0 ? Long.valueOf(result) : defaultValue;
+            }
+        };
+        Converter<Integer> intConverter = new Converter<Integer>() {
+            @Override
+            public Integer convert(Object value, Integer defaultValue) {
+                int result = toInt(value, 0);
+                return result != 0 || toInt(value, 1) == 0 ? Integer.valueOf(result) : defaultValue;
+            }
+        };
+        Converter<Double> doubleConverter = new Converter<Double>() {
+            @Override
+            public Double convert(Object value, Double defaultValue) {
+                double result = toDouble(value, 0);
+                return result != 0 || toDouble(value, 1) == 0 ? Double.valueOf(result) : defaultValue;
+            }
+        };
+        Converter<Boolean> booleanConverter = new Converter<Boolean>() {
+            @Override
+            public Boolean convert(Object value, Boolean defaultValue) {
+                return toBoolean(value, false);
+            }
+        };
+        register(String.class, stringConverter);
+        register(Long.class, longConverter);
+        register(long.class, longConverter);
+        register(Integer.class, intConverter);
+        register(int.class, intConverter);
+        register(Double.class, doubleConverter);
+        register(double.class, doubleConverter);
+        register(Boolean.class, booleanConverter);
+        register(boolean.class, booleanConverter);
+    }
+
+    private TypeConverter() {
+    }
+
+    /**
+     * 注册目标类型的转换器(替换已有的转换器);基本类型使用包装类型的泛型参数,如 register(long.class, Converter<Long>)
+     */
+    public static <T> void register(Class<T> type, Converter<T> converter) {
+        CONVERTER_MAP.put(type, converter);
+    }
+
+    /**
+     * 获取目标类型的转换器(未注册时返回null)
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Converter<T> getConverter(Class<T> type) {
+        return (Converter<T>) CONVERTER_MAP.get(type);
+    }
+
+    /**
+     * 转换为目标类型:value为null时返回defaultValue;value已是目标类型时原样返回
+     *
+     * @throws IllegalArgumentException 目标类型没有注册转换器
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T convert(Object value, Class<T> type, T defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (type.isInstance(value)) {
+            return (T) value;
+        }
+        Converter<T> converter = (Converter<T>) CONVERTER_MAP.get(type);
+        if (converter == null) {
+            throw new IllegalArgumentException("no converter for " + type.getName());
+        }
+        return converter.convert(value, defaultValue);
+    }
+
+    /**
+     * 转为 long 型
+     */
+    public static long toLong(Object value, long defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicLong || value instanceof AtomicInteger) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof CharSequence) {
+            return parseLong((CharSequence) value, defaultValue);
+        }
+        if (value instanceof Double || value instanceof Float || value instanceof Boolean) {
+            // 字符串形式总是带小数点、指数或NaN/Infinity,或者是true/false,都不是整数
+            return defaultValue;
+        }
+        if (value instanceof BigInteger) {
+            BigInteger bigInteger = (BigInteger) value;
+            return bigInteger.bitLength() < 64 ? bigInteger.longValue() : defaultValue;
+        }
+        return parseLong(String.valueOf(value), defaultValue);
+    }
+
+    /**
+     * 转为 int 型
+     */
+    public static int toInt(Object value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte || value instanceof AtomicInteger) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof Long || value instanceof AtomicLong) {
+            long longValue = ((Number) value).longValue();
+            return (int) longValue == longValue ? (int) longValue : defaultValue;
+        }
+        if (value instanceof CharSequence) {
+            return parseInt((CharSequence) value, defaultValue);
+        }
+        if (value instanceof Double || value instanceof Float || value instanceof Boolean) {
+            return defaultValue;
+        }
+        return parseInt(String.valueOf(value), defaultValue);
+    }
+
+    /**
+     * 转为 double 型
+     */
+    public static double toDouble(Object value, double defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicLong || value instanceof AtomicInteger) {
+            // 与解析十进制字符串一样按就近舍入
+            return ((Number) value).longValue();
+        }
+        if (value instanceof CharSequence) {
+            return parseDouble((CharSequence) value, defaultValue);
+        }
+        if (value instanceof Boolean) {
+            return defaultValue;
+        }
+        // Float等:按字符串形式解析(1.1f转为1.1而不是1.100000023841858)
+        return parseDouble(String.valueOf(value), defaultValue);
+    }
+
+    /**
+     * 转为 boolean 型:只有忽略大小写的"true"为true
+     */
+    public static boolean toBoolean(Object value, boolean defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof CharSequence) {
+            return isTrue((CharSequence) value);
+        }
+        if (value instanceof Number) {
+            return false;
+        }
+        return isTrue(String.valueOf(value));
+    }
+
+    /**
+     * 解析十进制整数(规则同Long.parseLong),非法或溢出时返回defaultValue
+     */
+    public static long parseLong(CharSequence value, long defaultValue) {
+        int length = value.length();
+        if (length == 0) {
+            return defaultValue;
+        }
+        int i = 0;
+        boolean negative = false;
+        char first = value.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == length) {
+                return defaultValue;
+            }
+        }
+        // 按负数累加,Long.MIN_VALUE也不会溢出
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyMin = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = digit(value.charAt(i));
+            if (digit < 0 || result < multiplyMin) {
+                return defaultValue;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return defaultValue;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * 解析十进制整数(规则同Integer.parseInt),非法或溢出时返回defaultValue
+     */
+    public static int parseInt(CharSequence value, int defaultValue) {
+        long result = parseLong(value, Long.MIN_VALUE);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            return defaultValue;
+        }
+        return (int) result;
+    }
+
+    /**
+     * 解析浮点数(规则同Double.parseDouble,忽略首尾空白),非法时返回defaultValue
+     *      15位有效数字以内、不带指数的小数直接计算;其余合法形式交给Double.parseDouble
+     */
+    public static double parseDouble(CharSequence value, double defaultValue) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return defaultValue;
+        }
+        int i = start;
+        boolean negative = false;
+        char first = value.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long mantissa = 0;
+        boolean hasDigit = false;
+        int digits = 0;
+        int fractionDigits = -1;
+        boolean simple = true;
+        for (; i < end; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasDigit = true;
+                if (mantissa > 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+                if (digits > MAX_EXACT_DIGITS || fractionDigits >= POWERS_OF_TEN.length) {
+                    simple = false;
+                    break;
+                }
+            } else if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                simple = false;
+                break;
+            }
+        }
+        if (simple) {
+            if (!hasDigit) {
+                return defaultValue;
+            }
+            double result = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+            return negative ? -result : result;
+        }
+        return parseDoubleSlow(value, start, end, defaultValue);
+    }
+
+    /**
+     * 指数、十六进制、NaN/Infinity、类型后缀及超长数字:先排除明显不是数字的输入,避免抛出异常
+     */
+    private static double parseDoubleSlow(CharSequence value, int start, int end, double defaultValue) {
+        int i = start;
+        char c = value.charAt(i);
+        if ((c == '-' || c == '+') && i + 1 < end) {
+            c = value.charAt(++i);
+        }
+        if (!(c >= '0' && c <= '9') && c != '.' && c != 'N' && c != 'I') {
+            return defaultValue;
+        }
+        for (; i < end; i++) {
+            c = value.charAt(i);
+            if (!isFloatLiteralChar(c)) {
+                return defaultValue;
+            }
+        }
+        try {
+            return Double.parseDouble(value.subSequence(start, end).toString());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static boolean isFloatLiteralChar(char c) {
+        if ((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) {
+            return true;
+        }
+        switch (c) {
+            case '.':
+            case '+':
+            case '-':
+            case 'x':
+            case 'X':
+            case 'p':
+            case 'P':
+            case 'N':
+            case 'I':
+            case 'n':
+            case 'i':
+            case 't':
+            case 'y':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        // 与Long.parseLong一致,接受其他Unicode十进制数字
+        return c < 128 ? -1 : Character.digit(c, 10);
+    }
+
+    private static boolean isTrue(CharSequence value) {
+        if (value.length() != 4) {
+            return false;
+        }
+        return (value.charAt(0) | 0x20) == 't' && (value.charAt(1) | 0x20) == 'r'
+                && (value.charAt(2) | 0x20) == 'u' && (value.charAt(3) | 0x20) == 'e';
+    }
+}
@@ -0,0 +1,3 @@
+-- 客户版本号:每次UPDATE递增,用于生成ETag
+-- 部署前在每个库(主库及各分片)执行一次,执行后重启应用;未执行时UPDATE不递增version,客户详情按表修改计数生成ETag
+ALTER TABLE customer ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
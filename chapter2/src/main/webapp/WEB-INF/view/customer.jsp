@@ -0,0 +1,39 @@
+<%@ page pageEncoding="UTF-8" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<c:set var="BASE" value="${pageContext.request.contextPath}"/>
+<html>
+<head>
+    <title>客户管理</title>
+</head>
+<body>
+
+<h1>客户列表</h1>
+
+<table>
+    <tr>
+        <th>客户名称</th>
+        <th>联系人</th>
+        <th>电话号码</th>
+        <th>邮箱地址</th>
+        <th>操作</th>
+    </tr>
+    <c:forEach var="customer" items="${customerList}">
+        <tr>
+            <td><c:out value="${customer.name}"/></td>
+            <td><c:out value="${customer.contact}"/></td>
+            <td><c:out value="${customer.telephone}"/></td>
+            <td><c:out value="${customer.email}"/></td>
+            <td>
+                <a href="${BASE}/customer_show?id=${customer.id}">详情</a>
+                <a href="${BASE}/customer_edit?id=${customer.id}">编辑</a>
+            </td>
+        </tr>
+    </c:forEach>
+</table>
+
+<c:if test="${not empty nextCursor}">
+    <a href="${BASE}/customer?cursor=${nextCursor}">下一页</a>
+</c:if>
+
+</body>
+</html>
@@ -1,4 +1,6 @@
 <%@ page pageEncoding="UTF-8" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<c:set var="BASE" value="${pageContext.request.contextPath}"/>
 <html>
 <head>
     <title>客户管理 - 创建客户</title>
@@ -7,7 +9,16 @@
 
 <h1>创建客户界面</h1>
 
-<%-- TODO --%>
+<form action="${BASE}/customer_create" method="post">
+    <table>
+        <tr><td>客户名称:</td><td><input type="text" name="name"/></td></tr>
+        <tr><td>联系人:</td><td><input type="text" name="contact"/></td></tr>
+        <tr><td>电话号码:</td><td><input type="text" name="telephone"/></td></tr>
+        <tr><td>邮箱地址:</td><td><input type="text" name="email"/></td></tr>
+        <tr><td>备注:</td><td><input type="text" name="remark"/></td></tr>
+    </table>
+    <button type="submit">保存</button>
+</form>
 
 </body>
-</html>
\ No newline at end of file
+</html>
@@ -0,0 +1,24 @@
+<%@ page pageEncoding="UTF-8" %>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
+<c:set var="BASE" value="${pageContext.request.contextPath}"/>
+<html>
+<head>
+    <title>客户管理 - 客户详情</title>
+</head>
+<body>
+
+<h1>客户详情</h1>
+
+<table>
+    <tr><td>客户名称:</td><td><c:out value="${customer.name}"/></td></tr>
+    <tr><td>联系人:</td><td><c:out value="${customer.contact}"/></td></tr>
+    <tr><td>电话号码:</td><td><c:out value="${customer.telephone}"/></td></tr>
+    <tr><td>邮箱地址:</td><td><c:out value="${customer.email}"/></td></tr>
+    <tr><td>备注:</td><td><c:out value="${customer.remark}"/></td></tr>
+</table>
+
+<a href="${BASE}/customer_edit?id=${customer.id}">编辑</a>
+<a href="${BASE}/customer">返回列表</a>
+
+</body>
+</html>
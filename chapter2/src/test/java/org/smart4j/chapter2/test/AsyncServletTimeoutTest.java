@@ -0,0 +1,110 @@
+package org.smart4j.chapter2.test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.smart4j.chapter2.controller.AsyncServlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 异步Servlet超时测试
+ *      任务执行时间(5秒)超过异步超时(1秒)和等待时间(300毫秒):监听器不等任务结束,直接返回503并释放容器线程
+ */
+public class AsyncServletTimeoutTest {
+
+    private static final long TASK_MILLIS = 5000;
+
+    private static final AtomicBoolean TASK_FINISHED = new AtomicBoolean();
+
+    private Tomcat tomcat;
+    private int port;
+
+    @BeforeClass
+    public static void initConfig() throws IOException {
+        Properties props = new Properties();
+        props.setProperty("db.executor.timeoutMillis", "1000");
+        props.setProperty("db.executor.timeoutGraceMillis", "300");
+        TestConfig.use(props);
+    }
+
+    @Before
+    public void init() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector().setProperty("maxThreads", "4");
+
+        Context context = tomcat.addContext("", new File(".").getAbsolutePath());
+        Wrapper slow = Tomcat.addServlet(context, "slow", new SlowServlet());
+        slow.setAsyncSupported(true);
+        context.addServletMappingDecoded("/slow", "slow");
+
+        tomcat.start();
+        port = tomcat.getConnector().getLocalPort();
+    }
+
+    @After
+    public void destroy() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    @Test
+    public void taskOutlivesTimeoutTest() throws Exception {
+        long start = System.nanoTime();
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + "/slow").openConnection();
+        int status;
+        try {
+            status = conn.getResponseCode();
+        } finally {
+            conn.disconnect();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertEquals(503, status);
+        // 容器检查超时的间隔约1秒,加上等待时间仍远小于任务执行时间
+        Assert.assertTrue("elapsed: " + elapsedMillis, elapsedMillis < TASK_MILLIS - 1000);
+        Assert.assertFalse(TASK_FINISHED.get());
+
+        // 监听器已返回,容器线程全部空闲
+        ThreadPoolExecutor containerExecutor = (ThreadPoolExecutor)
+                ((AbstractProtocol<?>) tomcat.getConnector().getProtocolHandler()).getExecutor();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (containerExecutor.getActiveCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, containerExecutor.getActiveCount());
+        Assert.assertFalse(TASK_FINISHED.get());
+    }
+
+    private static class SlowServlet extends AsyncServlet {
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            executeAsync(req, resp, new AsyncAction() {
+                @Override
+                public String execute(HttpServletRequest req, HttpServletResponse resp) throws Exception {
+                    Thread.sleep(TASK_MILLIS);
+                    TASK_FINISHED.set(true);
+                    return null;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.helper.BatchLoadFunction;
+import org.smart4j.chapter2.helper.BatchLoader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchLoader 单元测试
+ */
+public class BatchLoaderTest {
+
+    /**
+     * 返回"v" + key,偶数key不存在
+     */
+    private static class OddFunction implements BatchLoadFunction<Integer, String> {
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public Map<Integer, String> loadAll(List<Integer> keys) {
+            calls.incrementAndGet();
+            Map<Integer, String> valueMap = new HashMap<Integer, String>();
+            for (Integer key : keys) {
+                if (key % 2 == 1) {
+                    valueMap.put(key, "v" + key);
+                }
+            }
+            return valueMap;
+        }
+    }
+
+    @Test
+    public void coalesceTest() throws Exception {
+        OddFunction function = new OddFunction();
+        final BatchLoader<Integer, String> loader = new BatchLoader<Integer, String>(function, 200000, 1000);
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch startLatch = new CountDownLatch(1);
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < threads; i++) {
+            final int key = i;
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    startLatch.await();
+                    return loader.load(key);
+                }
+            }));
+        }
+        startLatch.countDown();
+        for (int i = 0; i < threads; i++) {
+            Assert.assertEquals(i % 2 == 1 ? "v" + i : null, futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        // 200ms的窗口内全部线程都已加入,通常只有一批
+        Assert.assertTrue("batches: " + function.calls.get(), function.calls.get() < threads);
+        Assert.assertEquals(threads, loader.getLoadedKeyCount());
+    }
+
+    @Test(timeout = 5000)
+    public void maxBatchSizeTest() {
+        OddFunction function = new OddFunction();
+        // 每批1个key,不会等待60秒的窗口
+        BatchLoader<Integer, String> loader = new BatchLoader<Integer, String>(function, 60000000, 1);
+        Assert.assertEquals("v1", loader.load(1));
+        Assert.assertNull(loader.load(2));
+        Assert.assertEquals(2, function.calls.get());
+    }
+
+    @Test(timeout = 5000)
+    public void uncontendedTest() {
+        OddFunction function = new OddFunction();
+        // 没有并发调用时不等待60秒的窗口
+        BatchLoader<Integer, String> loader = new BatchLoader<Integer, String>(function, 60000000, 100);
+        Assert.assertEquals("v1", loader.load(1));
+        Assert.assertNull(loader.load(2));
+        Assert.assertEquals(2, function.calls.get());
+    }
+
+    @Test(timeout = 10000)
+    public void singleFlightTest() throws Exception {
+        final CountDownLatch enteredLatch = new CountDownLatch(1);
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        final BatchLoader<Integer, String> loader = new BatchLoader<Integer, String>(new BatchLoadFunction<Integer, String>() {
+            @Override
+            public Map<Integer, String> loadAll(List<Integer> keys) {
+                calls.incrementAndGet();
+                enteredLatch.countDown();
+                try {
+                    releaseLatch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                Map<Integer, String> valueMap = new HashMap<Integer, String>();
+                for (Integer key : keys) {
+                    valueMap.put(key, "v" + key + "#" + calls.get());
+                }
+                return valueMap;
+            }
+        }, 0, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Callable<String> task = new Callable<String>() {
+            @Override
+            public String call() {
+                return loader.load(7);
+            }
+        };
+        Future<String> first = executor.submit(task);
+        enteredLatch.await();
+        Future<String> second = executor.submit(task);
+        while (loader.getSharedLoadCount() == 0) {
+            Thread.sleep(1);
+        }
+        releaseLatch.countDown();
+        Assert.assertEquals("v7#1", first.get());
+        Assert.assertEquals("v7#1", second.get());
+        Assert.assertEquals(1, calls.get());
+        executor.shutdown();
+
+        // 加载完成后再次load会重新查询
+        Assert.assertEquals("v7#2", loader.load(7));
+    }
+
+    @Test
+    public void errorTest() {
+        BatchLoader<Integer, String> loader = new BatchLoader<Integer, String>(new BatchLoadFunction<Integer, String>() {
+            @Override
+            public Map<Integer, String> loadAll(List<Integer> keys) {
+                throw new IllegalStateException("database down");
+            }
+        }, 0, 100);
+        try {
+            loader.load(1);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("database down", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.cache.LruCache;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.config.ConfigListener;
+import org.smart4j.chapter2.config.ConfigWatcher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 配置快照与在线修改 单元测试
+ */
+public class ConfigTest {
+
+    private static Properties newProps(String... keyValues) {
+        Properties props = new Properties();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            props.setProperty(keyValues[i], keyValues[i + 1]);
+        }
+        return props;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    @Test
+    public void typedValueTest() {
+        Config config = new Config(newProps("a", "16 ", "b", "x", "c", "0.5", "d", "TRUE", "e", "3000000000", "f", "0"), 1);
+        Assert.assertEquals(16, config.getInt("a", 8));
+        Assert.assertEquals(8, config.getInt("b", 8));
+        Assert.assertEquals(8, config.getInt("e", 8));
+        Assert.assertEquals(3000000000L, config.getLong("e", 8));
+        Assert.assertEquals(0, config.getInt("f", 8));
+        Assert.assertEquals(8, config.getInt("missing", 8));
+        Assert.assertEquals(0.5, config.getDouble("c", 1), 0);
+        Assert.assertTrue(config.getBoolean("d", false));
+        Assert.assertFalse(config.getBoolean("b", true));
+        Assert.assertEquals("x", config.getString("b"));
+        Assert.assertEquals("", config.getString("missing"));
+        Assert.assertEquals("16 ", config.toProperties().getProperty("a"));
+
+        Config other = new Config(newProps("a", "16 ", "b", "y", "g", "1"), 2);
+        Assert.assertEquals(new TreeSet<String>(Arrays.asList("b", "c", "d", "e", "f", "g")), other.diff(config));
+    }
+
+    @Test
+    public void validateTest() {
+        Config config = new Config(newProps("jdbc.pool.maxTotal", " 16", "jdbc.pool.maxWaitMillis", "-1",
+                "jdbc.pool.testOnBorrow", "FALSE", "jdbc.replica.1.pool.minIdle", "2", "jdbc.replica.readYourWritesMillis", "0",
+                "jdbc.pool.validationQuery", "SELECT 1", "other.maxTotal", "x"), 1);
+        Assert.assertTrue(config.validate().isEmpty());
+
+        config = new Config(newProps("jdbc.pool.maxTotal", "16x", "jdbc.replica.2.pool.minIdle", "-1",
+                "jdbc.shard.1.pool.testWhileIdle", "yes", "jdbc.pool.maxWaitMillis", "1.5",
+                "jdbc.pool.queryTimeoutSeconds", "3000000000", "jdbc.shard.executorSize", "four"), 1);
+        Assert.assertEquals(Arrays.asList(
+                "jdbc.pool.maxTotal=16x (expected int)",
+                "jdbc.pool.maxWaitMillis=1.5 (expected long)",
+                "jdbc.pool.queryTimeoutSeconds=3000000000 (expected int >= 0)",
+                "jdbc.replica.2.pool.minIdle=-1 (expected int >= 0)",
+                "jdbc.shard.1.pool.testWhileIdle=yes (expected true or false)",
+                "jdbc.shard.executorSize=four (expected int >= 0)"), config.validate());
+    }
+
+    @Test
+    public void invalidConfigTest() throws Exception {
+        File file = File.createTempFile("config", ".properties");
+        file.deleteOnExit();
+        write(file, "jdbc.pool.maxTotal=many\n");
+        // 启动时配置不合法则拒绝
+        try {
+            new ConfigWatcher(newProps("jdbc.pool.maxTotal", "16"), file, 20);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("jdbc.pool.maxTotal=many"));
+        }
+
+        write(file, "jdbc.pool.maxTotal=32\n");
+        ConfigWatcher watcher = new ConfigWatcher(newProps("jdbc.pool.maxTotal", "16"), file, 20);
+        final AtomicReference<Set<String>> changed = new AtomicReference<Set<String>>();
+        watcher.addListener(new ConfigListener() {
+            @Override
+            public void onChange(Config config, Set<String> changedKeys) {
+                changed.set(changedKeys);
+            }
+        });
+        // 重新加载时配置不合法则保留当前配置,不通知监听器
+        write(file, "jdbc.pool.maxTotal=64\njdbc.pool.minIdle=-4\n");
+        Assert.assertFalse(watcher.reload());
+        Assert.assertEquals(32, watcher.getConfig().getInt("jdbc.pool.maxTotal", 8));
+        Assert.assertNull(changed.get());
+
+        write(file, "jdbc.pool.maxTotal=64\njdbc.pool.minIdle=4\n");
+        Assert.assertTrue(watcher.reload());
+        Assert.assertEquals(64, watcher.getConfig().getInt("jdbc.pool.maxTotal", 8));
+        Assert.assertNotNull(changed.get());
+    }
+
+    @Test
+    public void watchTest() throws Exception {
+        File file = File.createTempFile("config", ".properties");
+        file.deleteOnExit();
+        write(file, "jdbc.pool.maxTotal=32\n");
+        ConfigWatcher watcher = new ConfigWatcher(newProps("jdbc.pool.maxTotal", "16", "jdbc.url", "u"), file, 20);
+        try {
+            Config config = watcher.getConfig();
+            Assert.assertEquals(32, config.getInt("jdbc.pool.maxTotal", 8));
+            Assert.assertEquals("u", config.getString("jdbc.url"));
+            // 没有变化时不重新加载
+            Assert.assertFalse(watcher.reload());
+
+            final CountDownLatch latch = new CountDownLatch(1);
+            final AtomicReference<Set<String>> changed = new AtomicReference<Set<String>>();
+            watcher.addListener(new ConfigListener() {
+                @Override
+                public void onChange(Config config, Set<String> changedKeys) {
+                    changed.set(changedKeys);
+                    latch.countDown();
+                }
+            });
+            watcher.start();
+            write(file, "jdbc.pool.maxTotal=64\njdbc.pool.minIdle=4\n");
+            // 修改时间精度可能为秒,保证与加载时不同
+            Assert.assertTrue(file.setLastModified(file.lastModified() + 2000));
+            Assert.assertTrue(latch.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(new TreeSet<String>(Arrays.asList("jdbc.pool.maxTotal", "jdbc.pool.minIdle")), changed.get());
+            Assert.assertEquals(64, watcher.getConfig().getInt("jdbc.pool.maxTotal", 8));
+            Assert.assertEquals(config.getVersion() + 1, watcher.getConfig().getVersion());
+
+            // 外部文件不可读时保留当前配置
+            Assert.assertTrue(file.delete());
+            Assert.assertFalse(watcher.reload());
+            Assert.assertEquals(64, watcher.getConfig().getInt("jdbc.pool.maxTotal", 8));
+        } finally {
+            watcher.close();
+        }
+    }
+
+    @Test
+    public void cacheResizeTest() {
+        LruCache<Integer, String> cache = new LruCache<Integer, String>("test", 10, 0);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "v" + i);
+        }
+        cache.get(0);
+        // 缩小时淘汰最久未访问的条目
+        cache.setMaxSize(3);
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals("v0", cache.get(0));
+        Assert.assertEquals("v9", cache.get(9));
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(7, cache.getStats().getEvictions());
+
+        cache.setMaxSize(5);
+        for (int i = 10; i < 20; i++) {
+            cache.put(i, "v" + i);
+        }
+        Assert.assertEquals(5, cache.size());
+    }
+}
@@ -0,0 +1,188 @@
+package org.smart4j.chapter2.test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smart4j.chapter2.controller.CustomerServlet;
+import org.smart4j.chapter2.helper.DbExecutor;
+import org.smart4j.chapter2.model.Customer;
+import org.smart4j.chapter2.model.Page;
+import org.smart4j.chapter2.service.CustomerService;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步Servlet负载测试
+ *      模拟慢数据库(每次查询200ms),容器只有4个工作线程:
+ *      同步实现下32个请求至少需要 32 / 4 * 200ms = 1600ms,且期间其他请求全部排队;
+ *      异步实现下容器线程提交任务后立即释放,数据库任务由DbExecutor并行执行
+ */
+public class CustomerAsyncLoadTest {
+
+    private static final int CONTAINER_THREADS = 4;
+    private static final int CONCURRENT_REQUESTS = 32;
+    private static final long DB_LATENCY_MILLIS = 200;
+
+    private Tomcat tomcat;
+    private int port;
+
+    @Before
+    public void init() throws Exception {
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("tomcat").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector().setProperty("maxThreads", String.valueOf(CONTAINER_THREADS));
+
+        Context context = tomcat.addContext("", new File(".").getAbsolutePath());
+        Wrapper customer = Tomcat.addServlet(context, "customer", new CustomerServlet(new SlowCustomerService()));
+        customer.setAsyncSupported(true);
+        context.addServletMappingDecoded("/customer", "customer");
+        // 替代JSP视图和静态资源
+        Tomcat.addServlet(context, "view", new OkServlet());
+        context.addServletMappingDecoded("*.jsp", "view");
+        context.addServletMappingDecoded("/ping", "view");
+
+        tomcat.start();
+        port = tomcat.getConnector().getLocalPort();
+    }
+
+    @After
+    public void destroy() throws Exception {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+
+    @Test
+    public void slowDatabaseTest() throws Exception {
+        final ThreadPoolExecutor containerExecutor = (ThreadPoolExecutor)
+                ((AbstractProtocol<?>) tomcat.getConnector().getProtocolHandler()).getExecutor();
+        final AtomicInteger peakContainerThreads = new AtomicInteger();
+        final AtomicInteger peakDbThreads = new AtomicInteger();
+        final AtomicLong containerThreadSamples = new AtomicLong();
+        final AtomicLong sampleCount = new AtomicLong();
+        Thread sampler = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!Thread.currentThread().isInterrupted()) {
+                    int containerThreads = containerExecutor.getActiveCount();
+                    peak(peakContainerThreads, containerThreads);
+                    containerThreadSamples.addAndGet(containerThreads);
+                    sampleCount.incrementAndGet();
+                    peak(peakDbThreads, DbExecutor.getActiveCount());
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        // 预热:类加载和静态初始化(连接池、执行器)不计入测量
+        Assert.assertEquals(200, get("/customer"));
+        Assert.assertEquals(200, get("/ping"));
+        sampler.start();
+
+        ExecutorService clients = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        long start = System.nanoTime();
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            futures.add(clients.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return get("/customer");
+                }
+            }));
+        }
+
+        // 慢请求进行中,容器仍能及时处理其他请求
+        Thread.sleep(50);
+        List<Long> pingMillis = new ArrayList<Long>();
+        for (int i = 0; i < 5; i++) {
+            long pingStart = System.nanoTime();
+            Assert.assertEquals(200, get("/ping"));
+            pingMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pingStart));
+        }
+
+        for (Future<Integer> future : futures) {
+            Assert.assertEquals(200, (int) future.get());
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        clients.shutdown();
+        sampler.interrupt();
+
+        System.out.println("requests=" + CONCURRENT_REQUESTS + ", dbLatency=" + DB_LATENCY_MILLIS + "ms"
+                + ", elapsed=" + elapsedMillis + "ms"
+                + ", containerThreads(avg/peak/max)="
+                + String.format("%.2f", (double) containerThreadSamples.get() / Math.max(1, sampleCount.get()))
+                + "/" + peakContainerThreads.get() + "/" + CONTAINER_THREADS
+                + ", dbThreads(peak/max)=" + peakDbThreads.get() + "/" + DbExecutor.getPoolSize()
+                + ", pingLatency=" + pingMillis + "ms");
+
+        long syncLowerBound = CONCURRENT_REQUESTS / CONTAINER_THREADS * DB_LATENCY_MILLIS;
+        Assert.assertTrue(elapsedMillis < syncLowerBound);
+        Assert.assertTrue(Collections.max(pingMillis) < DB_LATENCY_MILLIS);
+    }
+
+    private int get(String path) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        try {
+            return conn.getResponseCode();
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static void peak(AtomicInteger peak, int value) {
+        int current;
+        while (value > (current = peak.get()) && !peak.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+
+    /**
+     * 模拟慢数据库
+     */
+    private static class SlowCustomerService extends CustomerService {
+
+        @Override
+        public Page<Customer> getCustomerPage(long afterId, int limit) {
+            try {
+                Thread.sleep(DB_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Page<Customer>(Collections.<Customer>emptyList(), null);
+        }
+    }
+
+    private static class OkServlet extends HttpServlet {
+
+        @Override
+        protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+            resp.getWriter().write("ok");
+        }
+    }
+}
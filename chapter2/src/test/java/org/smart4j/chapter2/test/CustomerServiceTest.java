@@ -7,6 +7,7 @@ import org.smart4j.chapter2.helper.DatabaseHelper;
 import org.smart4j.chapter2.model.Customer;
 import org.smart4j.chapter2.service.CustomerService;
 
+import java.sql.ResultSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,6 +26,12 @@ public class CustomerServiceTest {
 
     @Before
     public void init() throws Exception {
+        // 测试库还没有version列时先执行迁移(只执行一次)
+        try (ResultSet rs = DatabaseHelper.getConnection().getMetaData().getColumns(null, null, "customer", "version")) {
+            if (!rs.next()) {
+                DatabaseHelper.executeSqlFile("sql/customer_version.sql");
+            }
+        }
         String file = "sql/customer_init.sql";
         DatabaseHelper.executeSqlFile(file);
     }
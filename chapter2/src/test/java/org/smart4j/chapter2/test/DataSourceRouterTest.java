@@ -0,0 +1,145 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.helper.DataSourceRouter;
+import org.smart4j.chapter2.helper.PooledDataSource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * DataSourceRouter 单元测试(一个主库和两个从库均为H2内存数据库)
+ */
+public class DataSourceRouterTest {
+
+    private DataSourceRouter router;
+
+    @Before
+    public void init() throws Exception {
+        router = DataSourceRouter.create(new Config(newConf("round_robin"), 1), "jdbc");
+        mark(router.getPrimary(), "primary");
+        mark(router.getReplicas().get(0), "replica1");
+        mark(router.getReplicas().get(1), "replica2");
+    }
+
+    @After
+    public void destroy() {
+        router.close();
+    }
+
+    private static Properties newConf(String balance) {
+        Properties conf = new Properties();
+        conf.setProperty("jdbc.driver", "org.h2.Driver");
+        conf.setProperty("jdbc.url", "jdbc:h2:mem:rw_primary;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        conf.setProperty("jdbc.username", "sa");
+        conf.setProperty("jdbc.password", "");
+        conf.setProperty("jdbc.pool.maxTotal", "4");
+        conf.setProperty("jdbc.replica.1.url", "jdbc:h2:mem:rw_replica1;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        conf.setProperty("jdbc.replica.2.url", "jdbc:h2:mem:rw_replica2;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        conf.setProperty("jdbc.replica.2.pool.maxTotal", "2");
+        conf.setProperty("jdbc.replica.balance", balance);
+        conf.setProperty("jdbc.replica.readYourWritesMillis", "200");
+        return conf;
+    }
+
+    /**
+     * 在每个库中写入自己的名字,用于判断读取路由到了哪个库
+     */
+    private static void mark(PooledDataSource dataSource, String name) throws SQLException {
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS db_name (name VARCHAR(20))");
+            stmt.execute("DELETE FROM db_name");
+            stmt.execute("INSERT INTO db_name VALUES ('" + name + "')");
+        }
+    }
+
+    private String read() throws SQLException {
+        try (Connection conn = router.getReadDataSource().getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT name FROM db_name")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    public void inheritTest() {
+        PooledDataSource replica1 = router.getReplicas().get(0);
+        PooledDataSource replica2 = router.getReplicas().get(1);
+        Assert.assertEquals("org.h2.Driver", replica1.getDriverClassName());
+        Assert.assertEquals("sa", replica1.getUsername());
+        Assert.assertEquals(4, replica1.getMaxTotal());
+        Assert.assertEquals(2, replica2.getMaxTotal());
+    }
+
+    @Test
+    public void roundRobinTest() throws Exception {
+        String first = read();
+        String second = read();
+        Assert.assertTrue(first.startsWith("replica"));
+        Assert.assertTrue(second.startsWith("replica"));
+        Assert.assertNotEquals(first, second);
+        Assert.assertEquals(first, read());
+    }
+
+    @Test
+    public void readYourWritesTest() throws Exception {
+        router.markWrite();
+        Assert.assertEquals("primary", read());
+        Thread.sleep(250);
+        Assert.assertTrue(read().startsWith("replica"));
+    }
+
+    @Test
+    public void readYourWritesByTableTest() throws Exception {
+        // 在其他线程写入(异步请求的POST和随后的GET通常不在同一个线程)
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                router.markWrite("UPDATE db_name SET name = ?");
+            }
+        });
+        writer.start();
+        writer.join();
+        Assert.assertSame(router.getPrimary(), router.getReadDataSource("SELECT name FROM db_name"));
+        Assert.assertSame(router.getPrimary(), router.getReadDataSource("SELECT * FROM other o JOIN db_name d ON o.id = d.id"));
+        Assert.assertNotSame(router.getPrimary(), router.getReadDataSource("SELECT * FROM other"));
+        Thread.sleep(250);
+        Assert.assertNotSame(router.getPrimary(), router.getReadDataSource("SELECT name FROM db_name"));
+        // 无法识别表名的写入使所有读取走主库
+        router.markWrite("CALL refresh_all()");
+        Assert.assertSame(router.getPrimary(), router.getReadDataSource("SELECT * FROM other"));
+    }
+
+    @Test
+    public void leastBusyTest() throws Exception {
+        router.close();
+        router = DataSourceRouter.create(new Config(newConf("least_busy"), 1), "jdbc");
+        // 占用replica1的Connection后,读取都应路由到replica2
+        try (Connection busy = router.getReplicas().get(0).getConnection()) {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertSame(router.getReplicas().get(1), router.getReadDataSource());
+            }
+        }
+    }
+
+    @Test
+    public void noReplicaTest() {
+        Properties conf = new Properties();
+        conf.setProperty("jdbc.driver", "org.h2.Driver");
+        conf.setProperty("jdbc.url", "jdbc:h2:mem:rw_single;DB_CLOSE_DELAY=-1");
+        DataSourceRouter single = DataSourceRouter.create(new Config(conf, 1), "jdbc");
+        try {
+            Assert.assertFalse(single.hasReplicas());
+            Assert.assertSame(single.getPrimary(), single.getReadDataSource());
+        } finally {
+            single.close();
+        }
+    }
+}
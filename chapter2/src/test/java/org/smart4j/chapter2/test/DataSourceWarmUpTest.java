@@ -0,0 +1,65 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.helper.DataSourceHelper;
+import org.smart4j.chapter2.helper.PooledDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 连接池预热单元测试(H2内存数据库)
+ */
+public class DataSourceWarmUpTest {
+
+    private PooledDataSource dataSource;
+
+    @Before
+    public void init() throws SQLException {
+        Properties conf = new Properties();
+        conf.setProperty("jdbc.driver", "org.h2.Driver");
+        conf.setProperty("jdbc.url", "jdbc:h2:mem:warm_up;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        conf.setProperty("jdbc.username", "sa");
+        conf.setProperty("jdbc.password", "");
+        conf.setProperty("jdbc.pool.maxTotal", "4");
+        conf.setProperty("jdbc.pool.minIdle", "3");
+        dataSource = DataSourceHelper.createDataSource(new Config(conf, 1), "jdbc");
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS warm_up (id BIGINT PRIMARY KEY, name VARCHAR(20))");
+        }
+    }
+
+    @After
+    public void destroy() throws SQLException {
+        dataSource.close();
+    }
+
+    @Test
+    public void warmUpTest() throws SQLException {
+        List<String> statements = Arrays.asList("SELECT * FROM warm_up WHERE id = ?",
+                "UPDATE warm_up SET name = ? WHERE id = ?", "SELECT * FROM no_such_table");
+        // 3个Connection各预编译2条语句,不存在的表只记录警告
+        Assert.assertEquals(6, DataSourceHelper.warmUp(dataSource, statements));
+        Assert.assertEquals(0, dataSource.getNumActive());
+        Assert.assertEquals(3, dataSource.getNumIdle());
+        Assert.assertEquals(3, dataSource.getBorrowedCount() - 1);
+    }
+
+    @Test
+    public void maxTotalTest() throws SQLException {
+        // minIdle超过maxTotal时最多打开maxTotal个
+        dataSource.setMinIdle(10);
+        Assert.assertEquals(4, DataSourceHelper.warmUp(dataSource, Arrays.asList("SELECT 1")));
+        Assert.assertEquals(4, dataSource.getNumIdle());
+        dataSource.setMinIdle(0);
+        Assert.assertEquals(1, DataSourceHelper.warmUp(dataSource, Arrays.asList("SELECT 1")));
+    }
+}
@@ -0,0 +1,47 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.helper.EntityBinder;
+import org.smart4j.chapter2.model.Customer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * EntityBinder 单元测试
+ */
+public class EntityBinderTest {
+
+    @Test
+    public void bindTest() {
+        EntityBinder<Customer> binder = EntityBinder.get(Customer.class);
+        Assert.assertSame(binder, EntityBinder.get(Customer.class));
+        // id、version不可绑定
+        Assert.assertEquals(Arrays.asList("name", "contact", "telephone", "email", "remark"), binder.getColumns());
+
+        // 结果按列顺序排列,与参数顺序无关;id被忽略
+        Map<String, String[]> parameterMap = new LinkedHashMap<String, String[]>();
+        parameterMap.put("remark", new String[]{"r"});
+        parameterMap.put("id", new String[]{"5"});
+        parameterMap.put("name", new String[]{"n1", "n2"});
+        parameterMap.put("contact", new String[0]);
+        parameterMap.put("email", new String[]{""});
+        Map<String, Object> fieldMap = binder.bind(parameterMap);
+        Assert.assertEquals(Arrays.asList("name", "email", "remark"), new ArrayList<String>(fieldMap.keySet()));
+        Assert.assertEquals(Arrays.<Object>asList("n1", "", "r"), new ArrayList<Object>(fieldMap.values()));
+
+        Assert.assertTrue(binder.bind(new HashMap<String, String[]>()).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownFieldTest() {
+        Map<String, String[]> parameterMap = new HashMap<String, String[]>();
+        parameterMap.put("name", new String[]{"n"});
+        parameterMap.put("name; DROP TABLE customer", new String[]{"x"});
+        EntityBinder.get(Customer.class).bind(parameterMap);
+    }
+}
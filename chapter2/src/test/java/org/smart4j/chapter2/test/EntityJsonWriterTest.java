@@ -0,0 +1,75 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.helper.EntityJsonWriter;
+import org.smart4j.chapter2.model.Customer;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * EntityJsonWriter 单元测试
+ */
+public class EntityJsonWriterTest {
+
+    private static Customer newCustomer(long id, String name) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setName(name);
+        customer.setContact("contact" + id);
+        return customer;
+    }
+
+    @Test
+    public void writeTest() throws Exception {
+        StringWriter out = new StringWriter();
+        EntityJsonWriter.get(Customer.class).write(newCustomer(1, "customer1"), out);
+        // 按字段声明顺序输出,null属性输出null
+        Assert.assertEquals("{\"id\":1,\"name\":\"customer1\",\"contact\":\"contact1\",\"telephone\":null,"
+                + "\"email\":null,\"remark\":null,\"version\":0}", out.toString());
+    }
+
+    @Test
+    public void largeLongTest() throws Exception {
+        // 与ShardRouter.nextId()格式相同的分片id:毫秒时间戳 << 22 | 节点号 << 12 | 序号
+        long shardId = (System.currentTimeMillis() - 1514764800000L) << 22 | 1L << 12 | 1;
+        Assert.assertTrue(shardId > (1L << 53));
+        StringWriter out = new StringWriter();
+        EntityJsonWriter.get(Customer.class).write(newCustomer(shardId, "sharded"), out);
+        Assert.assertTrue(out.toString().startsWith("{\"id\":\"" + shardId + "\",\"name\":\"sharded\""));
+
+        // 安全整数范围内仍输出数值
+        Customer customer = newCustomer((1L << 53) - 1, "max");
+        customer.setVersion(-(1L << 53));
+        out = new StringWriter();
+        EntityJsonWriter.get(Customer.class).write(customer, out);
+        Assert.assertTrue(out.toString().startsWith("{\"id\":9007199254740991,"));
+        Assert.assertTrue(out.toString().endsWith("\"version\":\"-9007199254740992\"}"));
+    }
+
+    @Test
+    public void escapeTest() throws Exception {
+        StringWriter out = new StringWriter();
+        EntityJsonWriter.writeString("a\"b\\c\nd\u0001e 中文", out);
+        Assert.assertEquals("\"a\\\"b\\\\c\\nd\\u0001e\\u2028中文\"", out.toString());
+    }
+
+    @Test
+    public void writeArrayTest() throws Exception {
+        EntityJsonWriter<Customer> writer = EntityJsonWriter.get(Customer.class);
+        Assert.assertSame(writer, EntityJsonWriter.get(Customer.class));
+
+        StringWriter out = new StringWriter();
+        writer.writeArray(Arrays.asList(newCustomer(1, "a"), newCustomer(2, "b")).iterator(), out);
+        String json = out.toString();
+        Assert.assertTrue(json.startsWith("[{\"id\":1,\"name\":\"a\""));
+        Assert.assertTrue(json.contains("},{\"id\":2,\"name\":\"b\""));
+        Assert.assertTrue(json.endsWith("}]"));
+
+        out = new StringWriter();
+        writer.writeArray(Collections.<Customer>emptyList().iterator(), out);
+        Assert.assertEquals("[]", out.toString());
+    }
+}
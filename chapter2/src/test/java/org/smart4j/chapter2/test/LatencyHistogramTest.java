@@ -0,0 +1,52 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.metrics.LatencyHistogram;
+
+/**
+ * LatencyHistogram 单元测试
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void percentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1us ~ 1000us 均匀分布
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(500500000L, histogram.getSum());
+        assertClose(500000, histogram.getPercentile(0.5));
+        assertClose(990000, histogram.getPercentile(0.99));
+        assertClose(999000, histogram.getPercentile(0.999));
+    }
+
+    @Test
+    public void outlierTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 999; i++) {
+            histogram.record(10);
+        }
+        histogram.record(Long.MAX_VALUE);
+        Assert.assertEquals(10, histogram.getPercentile(0.5));
+        Assert.assertEquals(10, histogram.getPercentile(0.999));
+        Assert.assertTrue(histogram.getPercentile(1) > 100000000000L);
+    }
+
+    /**
+     * 分桶的相对误差不超过1/16
+     */
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 16);
+    }
+}
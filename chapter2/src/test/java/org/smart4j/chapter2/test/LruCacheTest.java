@@ -0,0 +1,149 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.cache.CacheStats;
+import org.smart4j.chapter2.cache.LruCache;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LruCache 单元测试
+ */
+public class LruCacheTest {
+
+    @Test
+    public void stampTest() {
+        LruCache<Integer, String> cache = new LruCache<Integer, String>("test", 10, 0);
+
+        // 读穿透期间该key失效,放弃写入
+        long stamp = cache.stamp(1);
+        cache.remove(1);
+        cache.put(1, "stale", stamp);
+        Assert.assertNull(cache.get(1));
+
+        // 其他key失效不影响写入
+        stamp = cache.stamp(1);
+        cache.remove(2);
+        cache.put(1, "v1", stamp);
+        Assert.assertEquals("v1", cache.get(1));
+
+        // 期间缓存被清空,放弃写入
+        stamp = cache.stamp(3);
+        cache.clear();
+        cache.put(3, "stale", stamp);
+        Assert.assertNull(cache.get(3));
+
+        // 新取的stamp可以写入
+        stamp = cache.stamp(3);
+        cache.put(3, "v3", stamp);
+        Assert.assertEquals("v3", cache.get(3));
+        Assert.assertEquals(3, cache.getStats().getInvalidations());
+    }
+
+    @Test
+    public void stampRaceTest() throws Exception {
+        final LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>("test", 10, 0);
+        final AtomicInteger db = new AtomicInteger();
+        final AtomicInteger loads = new AtomicInteger();
+        final int writes = 2000;
+        final CountDownLatch done = new CountDownLatch(1);
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (done.getCount() > 0) {
+                        if (cache.get(1) == null) {
+                            long stamp = cache.stamp(1);
+                            Integer value = db.get();
+                            Thread.yield();
+                            cache.put(1, value, stamp);
+                            loads.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+        // 先写数据库再使缓存失效
+        for (int i = 1; i <= writes; i++) {
+            db.set(i);
+            cache.remove(1);
+            Thread.yield();
+        }
+        done.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        Assert.assertTrue(loads.get() > 0);
+        Integer cached = cache.get(1);
+        Assert.assertTrue("stale value " + cached, cached == null || cached == writes);
+    }
+
+    @Test
+    public void evictionTest() {
+        LruCache<Integer, String> cache = new LruCache<Integer, String>("test", 3, 0);
+        cache.put(1, "v1");
+        cache.put(2, "v2");
+        cache.put(3, "v3");
+        // 访问1后,最久未访问的是2
+        Assert.assertEquals("v1", cache.get(1));
+        cache.put(4, "v4");
+        Assert.assertNull(cache.get(2));
+        Assert.assertEquals("v1", cache.get(1));
+        Assert.assertEquals("v3", cache.get(3));
+        Assert.assertEquals("v4", cache.get(4));
+        Assert.assertEquals(3, cache.size());
+        Assert.assertEquals(1, cache.getStats().getEvictions());
+
+        // 缩小容量时立即淘汰最久未访问的条目
+        cache.setMaxSize(1);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals("v4", cache.get(4));
+        Assert.assertEquals(3, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void segmentEvictionTest() {
+        // 容量不小于1024时分16段,每段容量64
+        LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>("test", 1024, 0);
+        int count = 10000;
+        for (int i = 0; i < count; i++) {
+            cache.put(i, i);
+        }
+        CacheStats stats = cache.getStats();
+        Assert.assertTrue(stats.getSize() <= 1024);
+        Assert.assertTrue(stats.getSize() > 1024 / 2);
+        Assert.assertEquals(count - stats.getSize(), stats.getEvictions());
+        // 最后放入的条目都还在
+        for (int i = count - 16; i < count; i++) {
+            Assert.assertEquals(Integer.valueOf(i), cache.get(i));
+        }
+
+        cache.setMaxSize(160);
+        Assert.assertTrue(cache.size() <= 160);
+        Assert.assertEquals(Integer.valueOf(count - 1), cache.get(count - 1));
+    }
+
+    @Test
+    public void ttlTest() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<Integer, String>("test", 10, 1);
+        cache.put(1, "v1");
+        Assert.assertEquals("v1", cache.get(1));
+
+        // ttl只影响之后放入的条目
+        cache.setTtlSeconds(0);
+        cache.put(2, "v2");
+
+        Thread.sleep(1100);
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals("v2", cache.get(2));
+        CacheStats stats = cache.getStats();
+        Assert.assertEquals(1, stats.getExpirations());
+        Assert.assertEquals(1, stats.getSize());
+        Assert.assertEquals(2, stats.getHits());
+        Assert.assertEquals(1, stats.getMisses());
+    }
+}
@@ -0,0 +1,88 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.smart4j.chapter2.cache.QueryCache;
+
+/**
+ * QueryCache 单元测试
+ */
+public class QueryCacheTest {
+
+    private static final String CUSTOMER_SQL = "SELECT * FROM customer WHERE id = ?";
+    private static final String JOIN_SQL = "SELECT * FROM customer c JOIN orders o ON o.customer_id = c.id";
+    private static final String SUBQUERY_SQL = "SELECT * FROM customer WHERE id IN (SELECT customer_id FROM orders)";
+    private static final String ITEM_SQL = "SELECT * FROM item, orders";
+
+    private QueryCache queryCache;
+
+    @Before
+    public void init() {
+        queryCache = new QueryCache(100, 60);
+        for (String sql : new String[]{CUSTOMER_SQL, JOIN_SQL, SUBQUERY_SQL, ITEM_SQL}) {
+            cache(sql);
+        }
+    }
+
+    private void cache(String sql) {
+        QueryCache.Lookup lookup = queryCache.lookup(String.class, sql, new Object[]{1L});
+        queryCache.put(lookup, "result");
+    }
+
+    private boolean isHit(String sql) {
+        return queryCache.lookup(String.class, sql, new Object[]{1L}).isHit();
+    }
+
+    @Test
+    public void hitTest() {
+        Assert.assertTrue(isHit(CUSTOMER_SQL));
+        Assert.assertEquals("result", queryCache.lookup(String.class, CUSTOMER_SQL, new Object[]{1L}).getValue());
+        // 参数不同
+        Assert.assertFalse(queryCache.lookup(String.class, CUSTOMER_SQL, new Object[]{2L}).isHit());
+        // 没有读取表的语句不缓存
+        Assert.assertNull(queryCache.lookup(String.class, "SELECT 1", new Object[0]));
+    }
+
+    @Test
+    public void invalidateByTableTest() {
+        queryCache.invalidate("UPDATE orders SET status = ? WHERE id = ?");
+        // JOIN、子查询和逗号分隔的FROM列表中的表都会失效
+        Assert.assertTrue(isHit(CUSTOMER_SQL));
+        Assert.assertFalse(isHit(JOIN_SQL));
+        Assert.assertFalse(isHit(SUBQUERY_SQL));
+        Assert.assertFalse(isHit(ITEM_SQL));
+
+        queryCache.invalidate("INSERT INTO `demo`.`Customer` (name) VALUES (?)");
+        Assert.assertFalse(isHit(CUSTOMER_SQL));
+    }
+
+    @Test
+    public void insertSelectTest() {
+        // INSERT ... SELECT只写入目标表
+        queryCache.invalidate("INSERT INTO item SELECT * FROM customer");
+        Assert.assertTrue(isHit(CUSTOMER_SQL));
+        Assert.assertFalse(isHit(ITEM_SQL));
+    }
+
+    @Test
+    public void unknownWriteTest() {
+        // 查询语句不影响缓存
+        queryCache.invalidate(CUSTOMER_SQL);
+        Assert.assertTrue(isHit(CUSTOMER_SQL));
+        // 无法识别表名的写入使全部缓存失效
+        queryCache.invalidate("CALL refresh_all()");
+        Assert.assertFalse(isHit(CUSTOMER_SQL));
+        Assert.assertFalse(isHit(JOIN_SQL));
+        Assert.assertFalse(isHit(ITEM_SQL));
+    }
+
+    @Test
+    public void writeDuringQueryTest() {
+        // 查询期间发生写入,查询结果不放入缓存
+        QueryCache.Lookup lookup = queryCache.lookup(String.class, CUSTOMER_SQL, new Object[]{3L});
+        queryCache.invalidate("DELETE FROM customer WHERE id = ?");
+        queryCache.put(lookup, "stale");
+        Assert.assertFalse(queryCache.lookup(String.class, CUSTOMER_SQL, new Object[]{3L}).isHit());
+    }
+}
@@ -0,0 +1,206 @@
+package org.smart4j.chapter2.test;
+
+import org.apache.commons.dbutils.QueryRunner;
+import org.apache.commons.dbutils.ResultSetHandler;
+import org.apache.commons.dbutils.handlers.BeanHandler;
+import org.apache.commons.dbutils.handlers.BeanListHandler;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.smart4j.chapter2.helper.RowMapperHelper;
+import org.smart4j.chapter2.model.Customer;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * RowMapperHelper 单元测试(H2内存数据库)
+ *      预编译的行映射器与DbUtils的BeanListHandler/BeanHandler映射结果应一致
+ */
+public class RowMapperTest {
+
+    private static final QueryRunner QUERY_RUNNER = new QueryRunner();
+
+    private static Connection conn;
+
+    @BeforeClass
+    public static void init() throws SQLException {
+        conn = DriverManager.getConnection("jdbc:h2:mem:row_mapper;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        QUERY_RUNNER.update(conn, "CREATE TABLE customer (id BIGINT PRIMARY KEY, name VARCHAR(255), contact VARCHAR(255),"
+                + " telephone VARCHAR(255), email VARCHAR(255), remark TEXT, version BIGINT, contact_name VARCHAR(255))");
+        QUERY_RUNNER.update(conn, "INSERT INTO customer VALUES (1, 'customer1', 'Jack', '13512345678', 'jack@gmail.com', 'r1', 3, 'c1')");
+        QUERY_RUNNER.update(conn, "INSERT INTO customer VALUES (2, 'customer2', NULL, NULL, NULL, NULL, NULL, NULL)");
+        QUERY_RUNNER.update(conn, "INSERT INTO customer VALUES (" + ((1L << 60) + 7) + ", '', 'Rose', '010', NULL, '', 0, 'c3')");
+    }
+
+    @AfterClass
+    public static void destroy() throws SQLException {
+        QUERY_RUNNER.update(conn, "DROP TABLE customer");
+        conn.close();
+    }
+
+    private static <T> void assertSameResult(Class<T> entityClass, String sql) throws Exception {
+        List<T> expected = QUERY_RUNNER.query(conn, sql, new BeanListHandler<T>(entityClass));
+        List<T> actual = QUERY_RUNNER.query(conn, sql, RowMapperHelper.getListHandler(entityClass));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSameBean(sql, expected.get(i), actual.get(i));
+        }
+
+        T expectedOne = QUERY_RUNNER.query(conn, sql, new BeanHandler<T>(entityClass));
+        T actualOne = QUERY_RUNNER.query(conn, sql, RowMapperHelper.getHandler(entityClass));
+        assertSameBean(sql, expectedOne, actualOne);
+    }
+
+    private static void assertSameBean(String sql, Object expected, Object actual) throws Exception {
+        for (PropertyDescriptor descriptor : Introspector.getBeanInfo(expected.getClass(), Object.class).getPropertyDescriptors()) {
+            if (descriptor.getReadMethod() != null) {
+                Assert.assertEquals(sql + ": " + descriptor.getName(),
+                        descriptor.getReadMethod().invoke(expected), descriptor.getReadMethod().invoke(actual));
+            }
+        }
+    }
+
+    @Test
+    public void customerTest() throws Exception {
+        Assert.assertNotNull(RowMapperHelper.getMapper(Customer.class));
+        assertSameResult(Customer.class, "SELECT * FROM customer ORDER BY id");
+        assertSameResult(Customer.class, "SELECT id, name FROM customer ORDER BY id");
+        // 列标签大小写
+        assertSameResult(Customer.class, "SELECT id AS ID, name AS \"Name\", email AS \"EMAIL\", version AS Version FROM customer");
+        // 下划线列名不映射,别名映射到属性;重复的列以最后一列为准
+        assertSameResult(Customer.class, "SELECT id, contact_name, contact_name AS contact, name AS remark, remark FROM customer");
+        // 类型转换:数值列映射到字符串属性,字符串列映射到long属性
+        assertSameResult(Customer.class, "SELECT CAST(id AS VARCHAR) AS id, id AS name, 12.5 AS telephone,"
+                + " CAST(version AS INT) AS version FROM customer");
+        // 没有对应属性的列被忽略
+        assertSameResult(Customer.class, "SELECT id, name, 1 AS other, NOW() AS created_time FROM customer");
+    }
+
+    @Test
+    public void typeTest() throws Exception {
+        String sql = "SELECT id, CAST(version AS INT) AS count, CAST(version AS INT) AS score, CAST(version AS DOUBLE) AS amount,"
+                + " version > 0 AS active, CAST(version AS DECIMAL(10, 2)) AS price, name, contact AS fullName,"
+                + " TIMESTAMP '2018-01-02 03:04:05' AS createdAt, TIMESTAMP '2018-01-02 03:04:05' AS updatedAt,"
+                + " CAST(version AS SMALLINT) AS level FROM customer ORDER BY id";
+        assertSameResult(Sample.class, sql);
+        // 基本类型属性遇到NULL时,两者都写入默认值
+        Sample sample = QUERY_RUNNER.query(conn, sql + " OFFSET 1 ROWS", RowMapperHelper.getHandler(Sample.class));
+        Assert.assertEquals(0, sample.getCount());
+        Assert.assertFalse(sample.isActive());
+        Assert.assertNull(sample.getScore());
+        Assert.assertEquals("none", sample.getFullName());
+    }
+
+    /**
+     * 覆盖各种属性类型的实体
+     */
+    public static class Sample {
+
+        private long id = -1;
+        private int count = -1;
+        private Integer score = -1;
+        private double amount = -1;
+        private boolean active = true;
+        private BigDecimal price;
+        private String name;
+        private String fullName = "none";
+        private Timestamp createdAt;
+        private Date updatedAt;
+        private short level = -1;
+
+        public long getId() {
+            return id;
+        }
+
+        public void setId(long id) {
+            this.id = id;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public Integer getScore() {
+            return score;
+        }
+
+        public void setScore(Integer score) {
+            this.score = score;
+        }
+
+        public double getAmount() {
+            return amount;
+        }
+
+        public void setAmount(double amount) {
+            this.amount = amount;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public void setPrice(BigDecimal price) {
+            this.price = price;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        // 只读属性,对应的列被忽略
+        public String getFullName() {
+            return fullName;
+        }
+
+        public Timestamp getCreatedAt() {
+            return createdAt;
+        }
+
+        public void setCreatedAt(Timestamp createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        public Date getUpdatedAt() {
+            return updatedAt;
+        }
+
+        public void setUpdatedAt(Date updatedAt) {
+            this.updatedAt = updatedAt;
+        }
+
+        public short getLevel() {
+            return level;
+        }
+
+        public void setLevel(short level) {
+            this.level = level;
+        }
+    }
+}
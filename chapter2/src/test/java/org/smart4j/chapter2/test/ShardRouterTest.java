@@ -0,0 +1,249 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.smart4j.chapter2.cache.QueryCache;
+import org.smart4j.chapter2.config.Config;
+import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.helper.PooledDataSource;
+import org.smart4j.chapter2.helper.ShardRouter;
+import org.smart4j.chapter2.model.Customer;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * ShardRouter 单元测试(三个分片均为H2内存数据库)
+ */
+public class ShardRouterTest {
+
+    private static final int SHARD_COUNT = 3;
+
+    private static final Comparator<Customer> ID_ORDER = new Comparator<Customer>() {
+        @Override
+        public int compare(Customer c1, Customer c2) {
+            return Long.compare(c1.getId(), c2.getId());
+        }
+    };
+
+    private ShardRouter router;
+
+    /**
+     * DatabaseHelper使用相同的分片(H2内存数据库在同一个JVM中共享)
+     */
+    @BeforeClass
+    public static void initConfig() throws IOException {
+        Properties props = TestConfig.h2("shard_primary");
+        for (int i = 1; i <= SHARD_COUNT; i++) {
+            props.setProperty("jdbc.shard." + i + ".url", "jdbc:h2:mem:shard_" + i + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        }
+        props.setProperty("jdbc.shard.tables", "customer");
+        TestConfig.use(props);
+    }
+
+    @Before
+    public void init() throws Exception {
+        Properties conf = new Properties();
+        conf.setProperty("jdbc.driver", "org.h2.Driver");
+        conf.setProperty("jdbc.username", "sa");
+        conf.setProperty("jdbc.password", "");
+        conf.setProperty("jdbc.url", "jdbc:h2:mem:shard_primary;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        for (int i = 1; i <= SHARD_COUNT; i++) {
+            conf.setProperty("jdbc.shard." + i + ".url", "jdbc:h2:mem:shard_" + i + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        }
+        conf.setProperty("jdbc.shard.tables", "customer");
+        router = ShardRouter.create(new Config(conf, 1), "jdbc");
+        for (PooledDataSource shard : router.getShards()) {
+            try (Connection conn = shard.getConnection(); Statement stmt = conn.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS customer");
+                stmt.execute("CREATE TABLE customer (id BIGINT PRIMARY KEY, name VARCHAR(255), contact VARCHAR(255),"
+                        + " telephone VARCHAR(255), email VARCHAR(255), remark TEXT, version BIGINT NOT NULL DEFAULT 0)");
+            }
+        }
+        List<Map<String, Object>> fieldMapList = new ArrayList<Map<String, Object>>();
+        for (long id = 1; id <= 30; id++) {
+            fieldMapList.add(newFieldMap(id));
+        }
+        Assert.assertEquals(30, router.insertEntities(Customer.class, fieldMapList, 8));
+    }
+
+    @After
+    public void destroy() {
+        router.close();
+    }
+
+    private static Map<String, Object> newFieldMap(long id) {
+        Map<String, Object> fieldMap = new LinkedHashMap<String, Object>();
+        fieldMap.put("id", id);
+        fieldMap.put("name", "customer" + id);
+        fieldMap.put("contact", "contact" + id);
+        return fieldMap;
+    }
+
+    private int count(int shardIndex) throws SQLException {
+        try (Connection conn = router.getShards().get(shardIndex).getConnection(); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM customer")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void distributionTest() throws Exception {
+        Assert.assertFalse(router.isSharded(String.class));
+        Assert.assertTrue(router.isSharded(Customer.class));
+        int total = 0;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            int count = count(i);
+            // 连续id也应分布到每个分片
+            Assert.assertTrue("shard " + i + " has " + count + " rows", count > 0);
+            total += count;
+        }
+        Assert.assertEquals(30, total);
+    }
+
+    @Test
+    public void routeByIdTest() {
+        String sql = "SELECT * FROM customer WHERE id = ?";
+        Customer customer = router.queryEntity(Customer.class, 7, sql, 7);
+        Assert.assertEquals("customer7", customer.getName());
+
+        Map<String, Object> fieldMap = new HashMap<String, Object>();
+        fieldMap.put("contact", "updated");
+        Assert.assertTrue(router.updateEntity(Customer.class, 7, fieldMap));
+        customer = router.queryEntity(Customer.class, 7, sql, 7);
+        Assert.assertEquals("updated", customer.getContact());
+        // 每次更新递增版本号
+        Assert.assertEquals(1, customer.getVersion());
+
+        Assert.assertTrue(router.deleteEntity(Customer.class, 7));
+        Assert.assertNull(router.queryEntity(Customer.class, 7, sql, 7));
+    }
+
+    @Test
+    public void queryCacheTest() {
+        QueryCache queryCache = new QueryCache(100, 60);
+        router.setQueryCache(queryCache);
+        String sql = "SELECT * FROM customer WHERE id = ?";
+        Object[] params = {8L};
+        QueryCache.Lookup lookup = queryCache.lookup(Customer.class, sql, params);
+        queryCache.put(lookup, router.queryEntity(Customer.class, 8, sql, 8));
+        Assert.assertTrue(queryCache.lookup(Customer.class, sql, params).isHit());
+
+        // 分片写入同样使查询缓存失效
+        Map<String, Object> fieldMap = new HashMap<String, Object>();
+        fieldMap.put("contact", "updated");
+        Assert.assertTrue(router.updateEntity(Customer.class, 8, fieldMap));
+        Assert.assertFalse(queryCache.lookup(Customer.class, sql, params).isHit());
+    }
+
+    @Test
+    public void transactionTest() {
+        String sql = "SELECT * FROM customer WHERE id = ?";
+        DatabaseHelper.beginTransaction();
+        try {
+            // 分片写入不能加入主库上的事务,回滚时也不会撤销,因此直接拒绝
+            DatabaseHelper.insertEntity(Customer.class, newFieldMap(100));
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            Map<String, Object> fieldMap = new HashMap<String, Object>();
+            fieldMap.put("contact", "updated");
+            DatabaseHelper.updateEntity(Customer.class, 9, fieldMap);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            DatabaseHelper.rollbackTransaction();
+            DatabaseHelper.closeConnection();
+        }
+        Assert.assertNull(router.queryEntity(Customer.class, 100, sql, 100));
+        Assert.assertEquals("contact9", router.queryEntity(Customer.class, 9, sql, 9).getContact());
+
+        // 事务外正常写入分片
+        Assert.assertTrue(DatabaseHelper.insertEntity(Customer.class, newFieldMap(100)));
+        Assert.assertEquals("customer100", router.queryEntity(Customer.class, 100, sql, 100).getName());
+    }
+
+    @Test
+    public void generatedIdTest() {
+        Map<String, Object> fieldMap = new HashMap<String, Object>();
+        fieldMap.put("name", "generated");
+        Assert.assertTrue(router.insertEntity(Customer.class, fieldMap));
+        List<Customer> customerList = router.queryEntityList(Customer.class, ID_ORDER, 0,
+                "SELECT * FROM customer WHERE name = ?", "generated");
+        Assert.assertEquals(1, customerList.size());
+        Assert.assertTrue(customerList.get(0).getId() > 30);
+
+        Set<Long> ids = new HashSet<Long>();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertTrue(ids.add(router.nextId()));
+        }
+    }
+
+    @Test
+    public void scatterGatherTest() {
+        List<Customer> customerList = router.queryEntityList(Customer.class, ID_ORDER, 0, "SELECT * FROM customer");
+        Assert.assertEquals(30, customerList.size());
+        for (int i = 0; i < customerList.size(); i++) {
+            Assert.assertEquals(i + 1, customerList.get(i).getId());
+        }
+    }
+
+    @Test
+    public void queryByIdsTest() {
+        List<Long> ids = new ArrayList<Long>();
+        for (long id = 1; id <= 40; id += 3) {
+            ids.add(id);
+        }
+        List<Customer> customerList = router.queryEntityListByIds(Customer.class, ids, 4);
+        Collections.sort(customerList, ID_ORDER);
+        // 31 ~ 40不存在
+        Assert.assertEquals(10, customerList.size());
+        for (int i = 0; i < customerList.size(); i++) {
+            Assert.assertEquals(ids.get(i).longValue(), customerList.get(i).getId());
+        }
+    }
+
+    @Test
+    public void pageTest() {
+        String sql = "SELECT * FROM customer WHERE id > ? ORDER BY id LIMIT ?";
+        long afterId = 0;
+        List<Long> ids = new ArrayList<Long>();
+        for (int page = 0; page < 4; page++) {
+            List<Customer> customerList = router.queryEntityList(Customer.class, ID_ORDER, 8, sql, afterId, 8);
+            for (Customer customer : customerList) {
+                ids.add(customer.getId());
+            }
+            if (customerList.isEmpty()) {
+                break;
+            }
+            afterId = customerList.get(customerList.size() - 1).getId();
+        }
+        Assert.assertEquals(30, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Assert.assertEquals(i + 1, ids.get(i).longValue());
+        }
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            Assert.assertTrue(router.getLatency(i).getCount() > 0);
+        }
+    }
+}
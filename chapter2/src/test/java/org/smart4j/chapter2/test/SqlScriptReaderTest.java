@@ -0,0 +1,78 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.util.SqlScriptReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SqlScriptReader 单元测试
+ */
+public class SqlScriptReaderTest {
+
+    private static List<String> read(String script) throws IOException {
+        List<String> statements = new ArrayList<String>();
+        try (SqlScriptReader reader = new SqlScriptReader(new StringReader(script))) {
+            String sql;
+            while ((sql = reader.nextStatement()) != null) {
+                statements.add(sql);
+            }
+        }
+        return statements;
+    }
+
+    @Test
+    public void multiLineStatementTest() throws Exception {
+        List<String> statements = read("CREATE TABLE t (\n  id BIGINT,\n  name VARCHAR(20)\n);\nTRUNCATE t;");
+        Assert.assertEquals(2, statements.size());
+        Assert.assertEquals("CREATE TABLE t (\n  id BIGINT,\n  name VARCHAR(20)\n)", statements.get(0));
+        Assert.assertEquals("TRUNCATE t", statements.get(1));
+    }
+
+    @Test
+    public void quoteTest() throws Exception {
+        List<String> statements = read("INSERT INTO t VALUES ('a;b', 'it''s', 'c\\';d', \"e;f\");\nSELECT `x;y` FROM t");
+        Assert.assertEquals(2, statements.size());
+        Assert.assertEquals("INSERT INTO t VALUES ('a;b', 'it''s', 'c\\';d', \"e;f\")", statements.get(0));
+        Assert.assertEquals("SELECT `x;y` FROM t", statements.get(1));
+    }
+
+    @Test
+    public void commentTest() throws Exception {
+        List<String> statements = read("-- header; comment\n# another; comment\n"
+                + "INSERT INTO t /* inline; */ VALUES (1); -- trailing\n"
+                + "/*!40101 SET NAMES utf8 */;\n/* only a comment */;\n");
+        Assert.assertEquals(2, statements.size());
+        Assert.assertEquals("INSERT INTO t   VALUES (1)", statements.get(0));
+        Assert.assertEquals("/*!40101 SET NAMES utf8 */", statements.get(1));
+    }
+
+    @Test
+    public void doubleDashWithoutSpaceTest() throws Exception {
+        List<String> statements = read("UPDATE t SET a = a--1;\nDELETE FROM t WHERE b = ';' -- done\n;");
+        Assert.assertEquals(2, statements.size());
+        Assert.assertEquals("UPDATE t SET a = a--1", statements.get(0));
+        Assert.assertEquals("DELETE FROM t WHERE b = ';'", statements.get(1));
+    }
+
+    @Test
+    public void delimiterTest() throws Exception {
+        List<String> statements = read("DELIMITER $$\n"
+                + "CREATE PROCEDURE p()\nBEGIN\n  SELECT 1;\n  SELECT 2;\nEND$$\n"
+                + "DELIMITER ;\nCALL p();");
+        Assert.assertEquals(2, statements.size());
+        Assert.assertEquals("CREATE PROCEDURE p()\nBEGIN\n  SELECT 1;\n  SELECT 2;\nEND", statements.get(0));
+        Assert.assertEquals("CALL p()", statements.get(1));
+    }
+
+    @Test
+    public void lastStatementWithoutDelimiterTest() throws Exception {
+        List<String> statements = read("DELETE FROM t;\nDELETE FROM u\n");
+        Assert.assertEquals(2, statements.size());
+        Assert.assertEquals("DELETE FROM u", statements.get(1));
+    }
+}
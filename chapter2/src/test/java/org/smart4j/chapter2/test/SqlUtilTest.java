@@ -0,0 +1,77 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.util.SqlUtil;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * SqlUtil 单元测试
+ */
+public class SqlUtilTest {
+
+    private static Set<String> readTables(String sql) {
+        return SqlUtil.getReadTables(SqlUtil.normalize(sql));
+    }
+
+    private static String writeTable(String sql) {
+        return SqlUtil.getWriteTable(SqlUtil.normalize(sql));
+    }
+
+    private static Set<String> tables(String... tables) {
+        return new LinkedHashSet<String>(Arrays.asList(tables));
+    }
+
+    @Test
+    public void normalizeTest() {
+        Assert.assertEquals("select * from customer where id = ?",
+                SqlUtil.normalize("  SELECT *  FROM Customer\n\t WHERE id = ? ;"));
+        // 引号内保持原样
+        Assert.assertEquals("select * from customer where name = 'A  B;' and \"Col\" = 1",
+                SqlUtil.normalize("SELECT * FROM customer WHERE name = 'A  B;' AND \"Col\" = 1"));
+    }
+
+    @Test
+    public void readTablesTest() {
+        Assert.assertEquals(tables("customer"), readTables("SELECT * FROM customer WHERE id = ?"));
+        Assert.assertEquals(tables(), readTables("SELECT 1"));
+        // JOIN
+        Assert.assertEquals(tables("customer", "orders", "item"), readTables("SELECT * FROM customer c"
+                + " LEFT JOIN orders o ON o.customer_id = c.id INNER JOIN item AS i ON i.order_id = o.id"));
+        // 逗号分隔的FROM列表(有无别名、有无空格)
+        Assert.assertEquals(tables("customer", "orders"), readTables("SELECT * FROM customer, orders WHERE 1 = 1"));
+        Assert.assertEquals(tables("customer", "orders"), readTables("SELECT * FROM customer,orders"));
+        Assert.assertEquals(tables("customer", "orders", "item"),
+                readTables("SELECT * FROM customer c, orders AS o, item i WHERE c.id = o.customer_id"));
+        // 子查询
+        Assert.assertEquals(tables("orders"), readTables("SELECT * FROM (SELECT customer_id FROM orders) t"));
+        Assert.assertEquals(tables("customer", "orders"),
+                readTables("SELECT * FROM customer WHERE id IN (SELECT customer_id FROM orders)"));
+        Assert.assertEquals(tables("customer", "orders"),
+                readTables("SELECT * FROM customer c WHERE EXISTS(SELECT 1 FROM orders o WHERE o.customer_id = c.id)"));
+        // 引号标识符、库名前缀
+        Assert.assertEquals(tables("customer"), readTables("SELECT * FROM `demo`.`Customer`"));
+        Assert.assertEquals(tables("customer"), readTables("SELECT * FROM \"CUSTOMER\" WHERE id = ?"));
+    }
+
+    @Test
+    public void writeTableTest() {
+        Assert.assertEquals("customer", writeTable("INSERT INTO customer (name) VALUES (?)"));
+        Assert.assertEquals("customer", writeTable("insert into customer(name, contact) values (?, ?)"));
+        Assert.assertEquals("customer", writeTable("INSERT IGNORE INTO `demo`.`customer` (name) VALUES (?)"));
+        Assert.assertEquals("customer", writeTable("REPLACE INTO customer (id, name) VALUES (?, ?)"));
+        Assert.assertEquals("customer_archive", writeTable("INSERT INTO customer_archive SELECT * FROM customer"));
+        Assert.assertEquals("customer", writeTable("UPDATE customer SET name = ? WHERE id = ?"));
+        Assert.assertEquals("customer", writeTable("UPDATE LOW_PRIORITY \"Customer\" SET name = ?"));
+        Assert.assertEquals("customer", writeTable("DELETE FROM customer WHERE id = ?"));
+        Assert.assertEquals("customer", writeTable("TRUNCATE TABLE customer"));
+        // 无法识别的写入
+        Assert.assertNull(writeTable("CALL refresh_all()"));
+        Assert.assertNull(writeTable("MERGE INTO customer KEY (id) VALUES (?, ?)"));
+        Assert.assertNull(writeTable("ALTER TABLE customer ADD COLUMN age INT"));
+        Assert.assertNull(writeTable("SELECT * FROM customer"));
+    }
+}
@@ -0,0 +1,42 @@
+package org.smart4j.chapter2.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * 测试配置
+ *      把覆盖项写入临时的外部配置文件,通过系统属性config.file指定给ConfigHelper;
+ *      必须在ConfigHelper初始化之前(@BeforeClass中)调用,每个测试类在独立的JVM中执行(见pom.xml)
+ */
+public final class TestConfig {
+
+    /**
+     * 使用覆盖项(其余配置沿用类路径中的config.properties)
+     */
+    public static void use(Properties overrides) throws IOException {
+        File file = File.createTempFile("config", ".properties");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            overrides.store(out, null);
+        }
+        System.setProperty("config.file", file.getAbsolutePath());
+    }
+
+    /**
+     * 主库为H2内存数据库(MySQL兼容模式)的配置
+     */
+    public static Properties h2(String name) {
+        Properties props = new Properties();
+        props.setProperty("jdbc.driver", "org.h2.Driver");
+        props.setProperty("jdbc.url", "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        props.setProperty("jdbc.username", "sa");
+        props.setProperty("jdbc.password", "");
+        // H2不支持MySQL驱动参数
+        props.setProperty("jdbc.connectionProperties", "");
+        props.setProperty("jdbc.pool.minIdle", "0");
+        return props;
+    }
+}
@@ -0,0 +1,190 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.helper.TransactionCallback;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * DatabaseHelper 事务单元测试(H2内存数据库)
+ *      通过另一个Connection检查数据是否已提交
+ */
+public class TransactionTest {
+
+    private static final String URL = "jdbc:h2:mem:transaction;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private final List<String> events = new CopyOnWriteArrayList<String>();
+
+    @BeforeClass
+    public static void initConfig() throws IOException {
+        TestConfig.use(TestConfig.h2("transaction"));
+    }
+
+    @Before
+    public void init() {
+        try {
+            DatabaseHelper.executeUpdate("CREATE TABLE IF NOT EXISTS tx_test (id BIGINT PRIMARY KEY, name VARCHAR(20))");
+            DatabaseHelper.executeUpdate("DELETE FROM tx_test");
+        } finally {
+            DatabaseHelper.closeConnection();
+        }
+    }
+
+    @After
+    public void destroy() {
+        DatabaseHelper.closeConnection();
+    }
+
+    private static void insert(long id) {
+        DatabaseHelper.executeUpdate("INSERT INTO tx_test (id, name) VALUES (?, ?)", id, "name" + id);
+    }
+
+    /**
+     * 其他Connection看到的(已提交的)行数
+     */
+    private static int committedCount() throws SQLException {
+        try (Connection conn = DriverManager.getConnection(URL, "sa", ""); Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM tx_test")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private Runnable event(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                events.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void nestedCommitTest() throws Exception {
+        DatabaseHelper.beginTransaction();
+        insert(1);
+        DatabaseHelper.beginTransaction();
+        insert(2);
+        // 内层提交不会真正提交
+        DatabaseHelper.commitTransaction();
+        Assert.assertTrue(DatabaseHelper.isInTransaction());
+        Assert.assertEquals(0, committedCount());
+
+        DatabaseHelper.commitTransaction();
+        Assert.assertFalse(DatabaseHelper.isInTransaction());
+        Assert.assertEquals(2, committedCount());
+    }
+
+    @Test
+    public void nestedRollbackTest() throws Exception {
+        DatabaseHelper.beginTransaction();
+        insert(1);
+        DatabaseHelper.beginTransaction();
+        insert(2);
+        // 内层回滚将整个事务标记为只能回滚,外层提交时回滚并抛出异常
+        DatabaseHelper.rollbackTransaction();
+        Assert.assertTrue(DatabaseHelper.isInTransaction());
+        try {
+            DatabaseHelper.commitTransaction();
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertFalse(DatabaseHelper.isInTransaction());
+        Assert.assertEquals(0, committedCount());
+    }
+
+    @Test
+    public void inTransactionTest() throws Exception {
+        Integer result = DatabaseHelper.inTransaction(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction() {
+                insert(1);
+                return 1;
+            }
+        });
+        Assert.assertEquals(1, (int) result);
+        Assert.assertEquals(1, committedCount());
+
+        try {
+            DatabaseHelper.inTransaction(new TransactionCallback<Integer>() {
+                @Override
+                public Integer doInTransaction() {
+                    insert(2);
+                    throw new IllegalArgumentException("fail");
+                }
+            });
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("fail", e.getMessage());
+        }
+        Assert.assertFalse(DatabaseHelper.isInTransaction());
+        Assert.assertEquals(1, committedCount());
+    }
+
+    @Test
+    public void afterCompletionTest() throws Exception {
+        // 不在事务中时不登记
+        Assert.assertFalse(DatabaseHelper.afterCompletion(event("none")));
+
+        DatabaseHelper.beginTransaction();
+        Assert.assertTrue(DatabaseHelper.afterCompletion(event("outer")));
+        DatabaseHelper.beginTransaction();
+        Assert.assertTrue(DatabaseHelper.afterCompletion(event("inner")));
+        insert(1);
+        DatabaseHelper.commitTransaction();
+        // 内层提交时不执行
+        Assert.assertTrue(events.isEmpty());
+        DatabaseHelper.afterCompletion(new Runnable() {
+            @Override
+            public void run() {
+                // 回调执行时已经提交,回调异常不影响其他回调
+                try {
+                    events.add("committed=" + committedCount());
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+                throw new IllegalStateException("callback failure");
+            }
+        });
+        DatabaseHelper.afterCompletion(event("last"));
+        DatabaseHelper.commitTransaction();
+        Assert.assertEquals("[outer, inner, committed=1, last]", events.toString());
+
+        // 回滚后同样执行
+        events.clear();
+        DatabaseHelper.beginTransaction();
+        DatabaseHelper.afterCompletion(event("rollback"));
+        DatabaseHelper.rollbackTransaction();
+        Assert.assertEquals("[rollback]", events.toString());
+    }
+
+    @Test
+    public void closeConnectionTest() throws Exception {
+        DatabaseHelper.beginTransaction();
+        DatabaseHelper.beginTransaction();
+        insert(1);
+        DatabaseHelper.afterCompletion(event("completed"));
+        // 关闭Connection时回滚未结束的事务(包括嵌套的层次)
+        DatabaseHelper.closeConnection();
+        Assert.assertFalse(DatabaseHelper.isInTransaction());
+        Assert.assertEquals(0, committedCount());
+        Assert.assertEquals("[completed]", events.toString());
+
+        // 之后的操作使用新的Connection,自动提交
+        insert(2);
+        Assert.assertEquals(1, committedCount());
+    }
+}
@@ -0,0 +1,115 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.smart4j.chapter2.util.CastUtil;
+import org.smart4j.chapter2.util.Converter;
+import org.smart4j.chapter2.util.TypeConverter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TypeConverter 单元测试
+ */
+public class TypeConverterTest {
+
+    private static final Object[] INPUTS = {
+            "0", "1", "-1", "+1", "123", " 123", "123 ", "", " ", "-", "+", "abc", "12abc", "1.5", "-0.0", ".5", "1.",
+            ".", "1e3", "1E-3", "1.5f", "2d", "0x1p3", "NaN", "-Infinity", "Infinity", "12345678901234567890",
+            "9223372036854775807", "-9223372036854775808", "9223372036854775808", "2147483647", "2147483648",
+            "-2147483648", "-2147483649", "0.1", "3.14159265358979", "3.141592653589793238", "123456789012345.6",
+            "0.00000000000000000000001", "١٢", "true", "TRUE", "True ", "false", "yes",
+            new StringBuilder("42"), 42, 42L, (short) 42, (byte) 42, 3000000000L, 1.5, 2.0, 1.1f, Double.NaN,
+            new BigInteger("42"), new BigInteger("99999999999999999999"), new BigDecimal("42"), new BigDecimal("4.20"),
+            new AtomicLong(7), Boolean.TRUE, Boolean.FALSE, new Object()
+    };
+
+    @Test
+    public void sameAsParseTest() {
+        for (Object input : INPUTS) {
+            String message = "input: [" + input + "] " + input.getClass().getSimpleName();
+            Assert.assertEquals(message, legacyLong(input, -7), CastUtil.castLong(input, -7));
+            Assert.assertEquals(message, legacyInt(input, -7), CastUtil.castInt(input, -7));
+            Assert.assertEquals(message, Double.doubleToLongBits(legacyDouble(input, -7)),
+                    Double.doubleToLongBits(CastUtil.castDouble(input, -7)));
+            Assert.assertEquals(message, Boolean.parseBoolean(String.valueOf(input)), CastUtil.castBoolean(input, true));
+        }
+        Assert.assertEquals(-7, CastUtil.castLong(null, -7));
+        Assert.assertEquals(0, CastUtil.castInt(null));
+    }
+
+    @Test
+    public void parseDoubleTest() {
+        // 快速路径的结果与Double.parseDouble逐位相同
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            String digits = Long.toString(Math.abs(random.nextLong() % 1000000000000000L));
+            int point = random.nextInt(digits.length() + 1);
+            String value = (random.nextBoolean() ? "-" : "") + digits.substring(0, point) + "." + digits.substring(point);
+            Assert.assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)),
+                    Double.doubleToLongBits(TypeConverter.parseDouble(value, Double.NaN)));
+        }
+    }
+
+    @Test
+    public void registryTest() {
+        Assert.assertEquals(Long.valueOf(12), CastUtil.cast("12", Long.class, null));
+        Assert.assertEquals(Long.valueOf(0), CastUtil.cast("0", long.class, 5L));
+        Assert.assertEquals(Long.valueOf(5), CastUtil.cast("x", long.class, 5L));
+        Assert.assertEquals(Integer.valueOf(3), CastUtil.cast(3L, Integer.class, null));
+        Assert.assertNull(CastUtil.cast("1.5x", Double.class, null));
+        Assert.assertEquals("12", CastUtil.cast(12, String.class, null));
+        try {
+            CastUtil.cast("1", StringBuilder.class, null);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // 未注册
+        }
+        TypeConverter.register(StringBuilder.class, new Converter<StringBuilder>() {
+            @Override
+            public StringBuilder convert(Object value, StringBuilder defaultValue) {
+                return new StringBuilder(String.valueOf(value));
+            }
+        });
+        Assert.assertEquals("1", CastUtil.cast(1, StringBuilder.class, null).toString());
+    }
+
+    private static long legacyLong(Object obj, long defaultValue) {
+        String value = String.valueOf(obj);
+        if (value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static int legacyInt(Object obj, int defaultValue) {
+        String value = String.valueOf(obj);
+        if (value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double legacyDouble(Object obj, double defaultValue) {
+        String value = String.valueOf(obj);
+        if (value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
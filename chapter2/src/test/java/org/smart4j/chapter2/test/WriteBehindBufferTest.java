@@ -0,0 +1,277 @@
+package org.smart4j.chapter2.test;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.smart4j.chapter2.helper.DatabaseHelper;
+import org.smart4j.chapter2.helper.WriteBehindBuffer;
+import org.smart4j.chapter2.helper.WriteBehindCallback;
+import org.smart4j.chapter2.model.Customer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * WriteBehindBuffer 单元测试(H2内存数据库)
+ *      窗口设为60秒,只有flush、缓冲区满或关闭时才会写入;回调阻塞时刷写线程停在"正在写入"的状态
+ */
+public class WriteBehindBufferTest {
+
+    private static final long WINDOW_MILLIS = 60000;
+
+    private WriteBehindBuffer buffer;
+    private ExecutorService executor;
+
+    @BeforeClass
+    public static void initConfig() throws IOException {
+        TestConfig.use(TestConfig.h2("write_behind"));
+    }
+
+    @Before
+    public void init() {
+        try {
+            DatabaseHelper.executeUpdate("CREATE TABLE IF NOT EXISTS customer (id BIGINT PRIMARY KEY, name VARCHAR(255),"
+                    + " contact VARCHAR(255), telephone VARCHAR(255), email VARCHAR(255), remark TEXT,"
+                    + " version BIGINT NOT NULL DEFAULT 0)");
+            DatabaseHelper.executeUpdate("DELETE FROM customer");
+            for (long id = 1; id <= 5; id++) {
+                DatabaseHelper.executeUpdate("INSERT INTO customer (id, name, contact) VALUES (?, ?, ?)",
+                        id, "customer" + id, "contact" + id);
+            }
+        } finally {
+            DatabaseHelper.closeConnection();
+        }
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void destroy() {
+        if (buffer != null) {
+            buffer.close();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * 刷写线程调用后阻塞,直到release
+     */
+    private static class BlockingCallback implements WriteBehindCallback {
+
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<Set<Long>> flushedIds = new CopyOnWriteArrayList<Set<Long>>();
+
+        @Override
+        public void afterFlush(Set<Long> ids) {
+            flushedIds.add(new HashSet<Long>(ids));
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Map<String, Object> fieldMap(String column, Object value) {
+        Map<String, Object> fieldMap = new HashMap<String, Object>();
+        fieldMap.put(column, value);
+        return fieldMap;
+    }
+
+    private static Customer customer(long id) {
+        try {
+            return DatabaseHelper.queryEntity(Customer.class, "SELECT * FROM customer WHERE id = ?", id);
+        } finally {
+            DatabaseHelper.closeConnection();
+        }
+    }
+
+    private Future<Boolean> async(Callable<Boolean> task) {
+        return executor.submit(task);
+    }
+
+    private Future<Boolean> flushAsync() {
+        return async(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return buffer.flush();
+            }
+        });
+    }
+
+    private static void assertBlocked(Future<?> future) throws Exception {
+        try {
+            future.get(200, TimeUnit.MILLISECONDS);
+            Assert.fail("should be blocked");
+        } catch (TimeoutException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void coalesceTest() {
+        buffer = new WriteBehindBuffer("test", Customer.class, WINDOW_MILLIS, 100, 5000, null);
+        Assert.assertTrue(buffer.submit(1, fieldMap("name", "name1")));
+        Assert.assertTrue(buffer.submit(1, fieldMap("contact", "updated1")));
+        Assert.assertTrue(buffer.submit(2, fieldMap("name", "name2")));
+        Assert.assertEquals(2, buffer.getPendingCount());
+        // 窗口未结束,尚未写入
+        Assert.assertEquals("customer1", customer(1).getName());
+
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals(0, buffer.getPendingCount());
+        Assert.assertEquals("name1", customer(1).getName());
+        Assert.assertEquals("updated1", customer(1).getContact());
+        Assert.assertEquals("name2", customer(2).getName());
+        Assert.assertEquals(3, buffer.getSubmittedCount());
+        Assert.assertEquals(1, buffer.getCoalescedCount());
+        Assert.assertEquals(2, buffer.getWrittenCount());
+        Assert.assertEquals(1, buffer.getBatchCount());
+    }
+
+    @Test(timeout = 10000)
+    public void backpressureTest() throws Exception {
+        BlockingCallback callback = new BlockingCallback();
+        buffer = new WriteBehindBuffer("test", Customer.class, WINDOW_MILLIS, 1, 200, callback);
+        Assert.assertTrue(buffer.submit(1, fieldMap("name", "name1")));
+        // 缓冲区已满:请求刷写,刷写线程取走id 1后有了空位
+        Assert.assertTrue(buffer.submit(2, fieldMap("name", "name2")));
+        callback.entered.await();
+        Assert.assertEquals(Collections.singleton(1L), callback.flushedIds.get(0));
+
+        // 刷写线程阻塞,新id在timeoutMillis后被拒绝,已缓冲的id仍可合并
+        long start = System.nanoTime();
+        try {
+            buffer.submit(3, fieldMap("name", "name3"));
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+        }
+        Assert.assertTrue(buffer.submit(2, fieldMap("contact", "updated2")));
+
+        callback.release.countDown();
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals("name1", customer(1).getName());
+        Assert.assertEquals("name2", customer(2).getName());
+        Assert.assertEquals("updated2", customer(2).getContact());
+        Assert.assertEquals("customer3", customer(3).getName());
+    }
+
+    @Test(timeout = 10000)
+    public void flushTest() throws Exception {
+        final BlockingCallback callback = new BlockingCallback();
+        buffer = new WriteBehindBuffer("test", Customer.class, WINDOW_MILLIS, 100, 5000, callback);
+        Assert.assertTrue(buffer.submit(1, fieldMap("name", "name1")));
+        Future<Boolean> flushAll = flushAsync();
+        callback.entered.await();
+        Assert.assertTrue(buffer.submit(2, fieldMap("name", "name2")));
+
+        // 不在缓冲中的id直接返回
+        Assert.assertTrue(buffer.flush(3));
+        // 正在写入的id要等这一批写完
+        Future<Boolean> flushOne = async(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return buffer.flush(1);
+            }
+        });
+        assertBlocked(flushOne);
+        assertBlocked(flushAll);
+
+        callback.release.countDown();
+        Assert.assertTrue(flushOne.get());
+        Assert.assertTrue(flushAll.get());
+        Assert.assertEquals("name1", customer(1).getName());
+
+        // 缓冲中的id立即刷写,返回时已写入
+        Assert.assertTrue(buffer.submit(3, fieldMap("name", "name3")));
+        Assert.assertTrue(buffer.flush(3));
+        Assert.assertEquals("name3", customer(3).getName());
+        Assert.assertEquals("name2", customer(2).getName());
+        Assert.assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test(timeout = 10000)
+    public void discardTest() throws Exception {
+        BlockingCallback callback = new BlockingCallback();
+        buffer = new WriteBehindBuffer("test", Customer.class, WINDOW_MILLIS, 100, 5000, callback);
+        Assert.assertTrue(buffer.submit(1, fieldMap("name", "name1")));
+        Future<Boolean> flushAll = flushAsync();
+        callback.entered.await();
+        Assert.assertTrue(buffer.submit(3, fieldMap("name", "name3")));
+
+        Assert.assertTrue(buffer.discard(3));
+        Assert.assertFalse(buffer.discard(4));
+        Assert.assertEquals(0, buffer.getPendingCount());
+        // id 1正在写入,discard等待写完(之后的删除不会被这次写入覆盖)
+        Future<Boolean> discardWriting = async(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return buffer.discard(1);
+            }
+        });
+        assertBlocked(discardWriting);
+
+        callback.release.countDown();
+        Assert.assertFalse(discardWriting.get());
+        Assert.assertTrue(flushAll.get());
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals("name1", customer(1).getName());
+        Assert.assertEquals("customer3", customer(3).getName());
+        Assert.assertEquals(1, buffer.getWrittenCount());
+    }
+
+    @Test(timeout = 10000)
+    public void failureTest() {
+        buffer = new WriteBehindBuffer("test", Customer.class, WINDOW_MILLIS, 100, 5000, null);
+        StringBuilder tooLong = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            tooLong.append('x');
+        }
+        Assert.assertTrue(buffer.submit(1, fieldMap("name", "name1")));
+        Assert.assertTrue(buffer.submit(2, fieldMap("name", tooLong.toString())));
+        Assert.assertTrue(buffer.submit(3, fieldMap("name", "name3")));
+
+        // 整批失败后逐条重试,只丢弃出错的一条
+        Assert.assertFalse(buffer.flush());
+        Assert.assertEquals("name1", customer(1).getName());
+        Assert.assertEquals("customer2", customer(2).getName());
+        Assert.assertEquals("name3", customer(3).getName());
+        Assert.assertEquals(2, buffer.getWrittenCount());
+        Assert.assertEquals(1, buffer.getFailureCount());
+        Assert.assertTrue(buffer.flush());
+    }
+
+    @Test(timeout = 10000)
+    public void closeTest() {
+        buffer = new WriteBehindBuffer("test", Customer.class, WINDOW_MILLIS, 100, 5000, null);
+        Assert.assertTrue(buffer.submit(1, fieldMap("name", "name1")));
+        Assert.assertTrue(buffer.submit(2, fieldMap("name", "name2")));
+
+        // 关闭时写入剩余的更新,之后的提交返回false,由调用方同步写入
+        buffer.close();
+        Assert.assertEquals("name1", customer(1).getName());
+        Assert.assertEquals("name2", customer(2).getName());
+        Assert.assertFalse(buffer.submit(3, fieldMap("name", "name3")));
+        Assert.assertEquals(0, buffer.getPendingCount());
+        Assert.assertTrue(buffer.flush());
+        Assert.assertEquals("customer3", customer(3).getName());
+    }
+}
@@ -1,3 +1,3 @@
 TRUNCATE customer;
-INSERT INTO `customer` VALUES ('1', 'customer1', 'Brave', '13600000000', 'Brave@gmail.com', null);
-INSERT INTO `customer` VALUES ('2', 'customer2', 'BraveWang', '13600000000', 'BraveWang@gmail.com', null);
\ No newline at end of file
+INSERT INTO `customer` (id, name, contact, telephone, email, remark) VALUES ('1', 'customer1', 'Brave', '13600000000', 'Brave@gmail.com', null);
+INSERT INTO `customer` (id, name, contact, telephone, email, remark) VALUES ('2', 'customer2', 'BraveWang', '13600000000', 'BraveWang@gmail.com', null);
\ No newline at end of file